@@ -0,0 +1,33 @@
+package com.redismq.common.compress;
+
+/**
+ * 消息主体压缩算法
+ *
+ * @author hzh
+ * @date 2024/12/12
+ */
+public interface BodyCompressor {
+    
+    /**
+     * 算法名称 对应配置spring.redismq.global-config.compression
+     */
+    String getName();
+    
+    /**
+     * 压缩
+     *
+     * @param data       原始数据
+     * @param dictionary 队列字典 没有配置为null
+     * @return 压缩后的数据
+     */
+    byte[] compress(byte[] data, CompressDictionary dictionary);
+    
+    /**
+     * 解压
+     *
+     * @param data       压缩后的数据
+     * @param dictionary 压缩时使用的字典 没有为null
+     * @return 原始数据
+     */
+    byte[] decompress(byte[] data, CompressDictionary dictionary);
+}
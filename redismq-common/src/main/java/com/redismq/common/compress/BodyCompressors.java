@@ -0,0 +1,176 @@
+package com.redismq.common.compress;
+
+import com.redismq.common.config.GlobalConfig;
+import com.redismq.common.config.GlobalConfigCache;
+import com.redismq.common.exception.RedisMqException;
+import com.redismq.common.pojo.Message;
+import com.redismq.common.serializer.RedisMQStringMapper;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 消息主体压缩。生产者超过阈值的主体压缩后base64存储,消息头记录算法和字典,消费者按消息头透明解压。
+ * 服务端持久化的也是压缩后的主体
+ *
+ * @author hzh
+ * @date 2024/12/12
+ */
+public class BodyCompressors {
+    
+    /**
+     * 消息头中记录压缩算法的key
+     */
+    public static final String HEADER = "redismq.compress";
+    
+    /**
+     * 消息头中记录压缩字典id的key
+     */
+    public static final String HEADER_DICT = "redismq.compressDict";
+    
+    private static final Map<String, BodyCompressor> COMPRESSORS = new ConcurrentHashMap<>();
+    
+    /**
+     * 队列名称->字典
+     */
+    private static volatile Map<String, CompressDictionary> queueDictionaries;
+    
+    /**
+     * 字典id->字典
+     */
+    private static volatile Map<String, CompressDictionary> idDictionaries;
+    
+    static {
+        register(new DeflateBodyCompressor());
+        if (ClassUtils.isPresent("com.github.luben.zstd.Zstd", BodyCompressors.class.getClassLoader())) {
+            register(new ZstdBodyCompressor());
+        }
+    }
+    
+    public static BodyCompressor register(BodyCompressor compressor) {
+        COMPRESSORS.put(compressor.getName(), compressor);
+        return compressor;
+    }
+    
+    public static BodyCompressor get(String name) {
+        BodyCompressor compressor = COMPRESSORS.get(name);
+        if (compressor == null) {
+            throw new RedisMqException("redismq body compressor not found: " + name);
+        }
+        return compressor;
+    }
+    
+    /**
+     * 按配置压缩消息主体 没有开启或者小于阈值不处理
+     */
+    public static void compress(Message message, String queueName) {
+        GlobalConfig globalConfig = GlobalConfigCache.GLOBAL_CONFIG;
+        if (globalConfig == null || StringUtils.isBlank(globalConfig.getCompression()) || message.getBody() == null) {
+            return;
+        }
+        Map<String, Object> header = message.getHeader();
+        if (header != null && header.containsKey(HEADER)) {
+            return;
+        }
+        String body = RedisMQStringMapper.toJsonStr(message.getBody());
+        if (body.length() < globalConfig.getCompressThreshold()) {
+            return;
+        }
+        BodyCompressor compressor = get(globalConfig.getCompression());
+        CompressDictionary dictionary = queueDictionaries().get(queueName);
+        byte[] data = body.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = compressor.compress(data, dictionary);
+        String encoded = Base64.getEncoder().encodeToString(compressed);
+        //压缩后没有变小的不压缩
+        if (encoded.length() >= body.length()) {
+            return;
+        }
+        header = header == null ? new HashMap<>() : header;
+        header.put(HEADER, compressor.getName());
+        if (dictionary != null) {
+            header.put(HEADER_DICT, dictionary.getId());
+        }
+        message.setHeader(header);
+        message.setBody(encoded);
+    }
+    
+    /**
+     * 解压消息主体
+     *
+     * @return 没有压缩返回原消息 压缩过的返回解压后的拷贝,原消息不变
+     */
+    public static Message decompress(Message message) {
+        Map<String, Object> header = message.getHeader();
+        if (header == null || !header.containsKey(HEADER)) {
+            return message;
+        }
+        BodyCompressor compressor = get(header.get(HEADER).toString());
+        CompressDictionary dictionary = null;
+        Object dictId = header.get(HEADER_DICT);
+        if (dictId != null) {
+            dictionary = idDictionaries().get(dictId.toString());
+            if (dictionary == null) {
+                throw new RedisMqException("redismq compress dictionary not found id: " + dictId);
+            }
+        }
+        byte[] data = Base64.getDecoder().decode(message.getBody().toString());
+        byte[] body = compressor.decompress(data, dictionary);
+        Message copy = message.deepClone();
+        copy.getHeader().remove(HEADER);
+        copy.getHeader().remove(HEADER_DICT);
+        copy.setBody(new String(body, StandardCharsets.UTF_8));
+        return copy;
+    }
+    
+    private static Map<String, CompressDictionary> queueDictionaries() {
+        if (queueDictionaries == null) {
+            loadDictionaries();
+        }
+        return queueDictionaries;
+    }
+    
+    private static Map<String, CompressDictionary> idDictionaries() {
+        if (idDictionaries == null) {
+            loadDictionaries();
+        }
+        return idDictionaries;
+    }
+    
+    /**
+     * 加载配置的队列字典 支持classpath:和文件路径
+     */
+    private static synchronized void loadDictionaries() {
+        if (queueDictionaries != null) {
+            return;
+        }
+        Map<String, CompressDictionary> byQueue = new HashMap<>();
+        Map<String, CompressDictionary> byId = new HashMap<>();
+        GlobalConfig globalConfig = GlobalConfigCache.GLOBAL_CONFIG;
+        if (globalConfig != null && !CollectionUtils.isEmpty(globalConfig.getCompressDictionaries())) {
+            DefaultResourceLoader resourceLoader = new DefaultResourceLoader();
+            globalConfig.getCompressDictionaries().forEach((queue, location) -> {
+                Resource resource = resourceLoader.getResource(location);
+                try (InputStream in = resource.getInputStream()) {
+                    CompressDictionary dictionary = new CompressDictionary(StreamUtils.copyToByteArray(in));
+                    byQueue.put(queue, dictionary);
+                    byId.put(dictionary.getId(), dictionary);
+                } catch (IOException e) {
+                    throw new RedisMqException("redismq load compress dictionary error queue: " + queue, e);
+                }
+            });
+        }
+        idDictionaries = byId;
+        queueDictionaries = byQueue;
+    }
+}
@@ -0,0 +1,29 @@
+package com.redismq.common.compress;
+
+import org.springframework.util.DigestUtils;
+
+/**
+ * 压缩字典。id由字典内容计算,写入消息头,消费者按id找到同一份字典
+ *
+ * @author hzh
+ * @date 2024/12/12
+ */
+public class CompressDictionary {
+    
+    private final String id;
+    
+    private final byte[] content;
+    
+    public CompressDictionary(byte[] content) {
+        this.content = content;
+        this.id = DigestUtils.md5DigestAsHex(content).substring(0, 8);
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public byte[] getContent() {
+        return content;
+    }
+}
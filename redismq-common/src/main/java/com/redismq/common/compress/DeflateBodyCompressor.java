@@ -0,0 +1,72 @@
+package com.redismq.common.compress;
+
+import com.redismq.common.exception.RedisMqException;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * jdk自带的deflate压缩 不需要额外依赖,字典作为预置字典使用
+ *
+ * @author hzh
+ * @date 2024/12/12
+ */
+public class DeflateBodyCompressor implements BodyCompressor {
+    
+    public static final String NAME = "deflate";
+    
+    @Override
+    public String getName() {
+        return NAME;
+    }
+    
+    @Override
+    public byte[] compress(byte[] data, CompressDictionary dictionary) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary.getContent());
+            }
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                int len = deflater.deflate(buffer);
+                out.write(buffer, 0, len);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+    
+    @Override
+    public byte[] decompress(byte[] data, CompressDictionary dictionary) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int len = inflater.inflate(buffer);
+                if (len == 0 && inflater.needsDictionary()) {
+                    if (dictionary == null) {
+                        throw new RedisMqException("redismq deflate decompress dictionary not found");
+                    }
+                    inflater.setDictionary(dictionary.getContent());
+                } else if (len == 0 && inflater.needsInput()) {
+                    throw new RedisMqException("redismq deflate decompress data truncated");
+                }
+                out.write(buffer, 0, len);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new RedisMqException("redismq deflate decompress error", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.redismq.common.compress;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * zstd压缩 需要引入zstd-jni。字典可以用zstd --train按队列的样本消息训练
+ *
+ * @author hzh
+ * @date 2024/12/12
+ */
+public class ZstdBodyCompressor implements BodyCompressor {
+    
+    public static final String NAME = "zstd";
+    
+    private static final int LEVEL = 3;
+    
+    /**
+     * 预处理过的字典 按字典id缓存
+     */
+    private final Map<String, ZstdDictCompress> compressDicts = new ConcurrentHashMap<>();
+    
+    private final Map<String, ZstdDictDecompress> decompressDicts = new ConcurrentHashMap<>();
+    
+    @Override
+    public String getName() {
+        return NAME;
+    }
+    
+    @Override
+    public byte[] compress(byte[] data, CompressDictionary dictionary) {
+        if (dictionary == null) {
+            return Zstd.compress(data, LEVEL);
+        }
+        ZstdDictCompress dict = compressDicts
+                .computeIfAbsent(dictionary.getId(), id -> new ZstdDictCompress(dictionary.getContent(), LEVEL));
+        return Zstd.compress(data, dict);
+    }
+    
+    @Override
+    public byte[] decompress(byte[] data, CompressDictionary dictionary) {
+        int size = (int) Zstd.getFrameContentSize(data);
+        if (dictionary == null) {
+            return Zstd.decompress(data, size);
+        }
+        ZstdDictDecompress dict = decompressDicts
+                .computeIfAbsent(dictionary.getId(), id -> new ZstdDictDecompress(dictionary.getContent()));
+        return Zstd.decompress(data, dict, size);
+    }
+}
@@ -33,4 +33,10 @@ public class ConsumserConfig {
      * 如果是current 新注册的group默认是0会从最开始的时候消费
      */
     private OffsetEnum newGroupOffset = OffsetEnum.LATEST;
+    
+    /**
+     * 普通队列累计确认 一次删除连续消费完成的偏移量之前的所有消息,乱序完成的消息单独确认。
+     * 超时放弃等待但还在执行的消息会挡住偏移量,执行完成后才一起删除
+     */
+    private boolean cumulativeAck = false;
 }
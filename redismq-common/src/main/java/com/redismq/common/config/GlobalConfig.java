@@ -3,6 +3,8 @@ package com.redismq.common.config;
 
 import lombok.Data;
 
+import java.util.Map;
+
 
 /**
  * 全局配置
@@ -51,9 +53,41 @@ public class GlobalConfig {
      * 任务阻塞等待轮询时间 ms
      */
     public Long taskWaitTime = 1000L;
+    /**
+     * stream队列没有消息时阻塞读取的时间 ms
+     */
+    public Long streamBlockTime = 2000L;
    /**
      * 最大机器数量
     */
     public Integer maxWorkerIdBits = 8;
+    /**
+     * 消息id格式 decimal十进制或base62定长11位 两种格式可以混用
+     */
+    public String idFormat = "decimal";
+    /**
+     * 消息存储格式 json或compact 读取时两种格式都可以识别 切换时不需要清理旧消息
+     */
+    public String messageCodec = "json";
+    /**
+     * 消息主体压缩算法 deflate或zstd 为空不压缩
+     */
+    public String compression;
+    /**
+     * 消息主体超过这个长度才压缩
+     */
+    public int compressThreshold = 4096;
+    /**
+     * 队列的压缩字典 队列名称->字典位置 支持classpath:和文件路径 生产者和消费者需要配置同一份字典
+     */
+    public Map<String, String> compressDictionaries;
+    /**
+     * 消息主体超过这个长度单独存储 消息中只保留引用 0不开启
+     */
+    public int offloadThreshold = 0;
+    /**
+     * 单独存储的主体分块大小
+     */
+    public int offloadChunkSize = 256 * 1024;
 
 }
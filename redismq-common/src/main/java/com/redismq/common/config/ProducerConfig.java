@@ -2,6 +2,7 @@ package com.redismq.common.config;
 
 
 import com.redismq.common.constant.ProducerAck;
+import com.redismq.common.constant.QueueFullPolicy;
 import lombok.Data;
 
 
@@ -47,5 +48,13 @@ public class ProducerConfig {
      * 生产者异步发送队列大小。小了影响吞吐量，默认10000
      */
     public int producerBasketSize = 10000;
+    /**
+     * 生产者合并发送通道数量,同一个虚拟队列固定落在同一个通道保证顺序。默认cpu核数
+     */
+    public int producerSendLanes = Runtime.getRuntime().availableProcessors();
+    /**
+     * 队列满了的处理策略 默认退避重试,最多等待重试次数*重试间隔
+     */
+    public QueueFullPolicy queueFullPolicy = QueueFullPolicy.BLOCK;
 
 }
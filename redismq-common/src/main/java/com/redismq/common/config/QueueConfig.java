@@ -1,6 +1,7 @@
 package com.redismq.common.config;
 
 import com.redismq.common.constant.AckMode;
+import com.redismq.common.constant.QueueStorage;
 import lombok.Data;
 
 @Data
@@ -37,4 +38,12 @@ public class QueueConfig {
      * 虚拟队列数量
      */
     private Integer virtual = 1;
+    /**
+     * 消息主体编解码器
+     */
+    private String bodyCodec = "json";
+    /**
+     * 存储方式 zset每个分组一份消息id  log虚拟队列共享一个日志
+     */
+    private String storage = QueueStorage.ZSET;
 }
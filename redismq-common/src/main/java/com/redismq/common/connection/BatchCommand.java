@@ -0,0 +1,58 @@
+package com.redismq.common.connection;
+
+import org.springframework.data.redis.core.RedisOperations;
+
+import java.util.List;
+
+/**
+ * 批量命令中的一个命令 同步pipeline和lettuce异步命令共用
+ *
+ * @author hzh
+ * @date 2024/12/15
+ */
+final class BatchCommand {
+    
+    enum Type {
+        ZCARD, ZADD, GET, RPUSH
+    }
+    
+    final Type type;
+    
+    final String key;
+    
+    final String member;
+    
+    final double score;
+    
+    final List<String> values;
+    
+    BatchCommand(Type type, String key, String member, double score, List<String> values) {
+        this.type = type;
+        this.key = key;
+        this.member = member;
+        this.score = score;
+        this.values = values;
+    }
+    
+    /**
+     * 在pipeline中执行
+     */
+    void apply(RedisOperations<String, String> operations) {
+        switch (type) {
+            case ZCARD:
+                operations.opsForZSet().size(key);
+                break;
+            case ZADD:
+                operations.opsForZSet().add(key, member, score);
+                break;
+            case GET:
+                operations.opsForValue().get(key);
+                break;
+            case RPUSH:
+                operations.opsForList().rightPushAll(key, values);
+                break;
+            default:
+                throw new IllegalStateException("unknown batch command " + type);
+        }
+    }
+}
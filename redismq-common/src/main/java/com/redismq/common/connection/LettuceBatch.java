@@ -0,0 +1,101 @@
+package com.redismq.common.connection;
+
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * lettuce原生异步执行批量命令。命令连续写入同一个连接,相当于pipeline,所有结果返回后释放连接。
+ * 单独放在一个类里,没有lettuce依赖时不会加载
+ *
+ * @author hzh
+ * @date 2024/12/15
+ */
+final class LettuceBatch {
+    
+    private LettuceBatch() {
+    }
+    
+    /**
+     * 异步执行
+     *
+     * @return 每个命令的结果 结果类型和同步pipeline一致。不是lettuce连接返回null
+     */
+    @SuppressWarnings("unchecked")
+    static CompletionStage<List<Object>> executeAsync(RedisConnectionFactory connectionFactory,
+            List<BatchCommand> commands) {
+        RedisConnection connection = connectionFactory.getConnection();
+        List<CompletableFuture<Object>> futures = new ArrayList<>(commands.size());
+        try {
+            Object nativeConnection = connection.getNativeConnection();
+            if (!(nativeConnection instanceof RedisClusterAsyncCommands)) {
+                connection.close();
+                return null;
+            }
+            RedisClusterAsyncCommands<byte[], byte[]> async = (RedisClusterAsyncCommands<byte[], byte[]>) nativeConnection;
+            for (BatchCommand command : commands) {
+                futures.add(send(async, command).toCompletableFuture().thenApply(result -> convert(command, result)));
+            }
+        } catch (RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .whenComplete((v, e) -> connection.close())
+                .thenApply(v -> {
+                    List<Object> results = new ArrayList<>(futures.size());
+                    for (CompletableFuture<Object> future : futures) {
+                        results.add(future.join());
+                    }
+                    return results;
+                });
+    }
+    
+    private static RedisFuture<?> send(RedisClusterAsyncCommands<byte[], byte[]> async, BatchCommand command) {
+        byte[] key = bytes(command.key);
+        switch (command.type) {
+            case ZCARD:
+                return async.zcard(key);
+            case ZADD:
+                return async.zadd(key, command.score, bytes(command.member));
+            case GET:
+                return async.get(key);
+            case RPUSH:
+                byte[][] values = new byte[command.values.size()][];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = bytes(command.values.get(i));
+                }
+                return async.rpush(key, values);
+            default:
+                throw new IllegalStateException("unknown batch command " + command.type);
+        }
+    }
+    
+    /**
+     * 和StringRedisTemplate的pipeline结果保持一致 值是字符串,zadd是是否新增
+     */
+    private static Object convert(BatchCommand command, Object result) {
+        if (result == null) {
+            return null;
+        }
+        switch (command.type) {
+            case GET:
+                return new String((byte[]) result, StandardCharsets.UTF_8);
+            case ZADD:
+                return ((Long) result) > 0;
+            default:
+                return result;
+        }
+    }
+    
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,66 @@
+package com.redismq.common.connection;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * lua脚本  sha1只计算一次
+ *
+ * @author hzh
+ * @date 2024/12/05
+ */
+public class LuaScript {
+    
+    /**
+     * 脚本名称
+     */
+    private final String name;
+    
+    /**
+     * 脚本内容
+     */
+    private final String script;
+    
+    /**
+     * 脚本sha1 evalsha使用
+     */
+    private final String sha1;
+    
+    public LuaScript(String name, String script) {
+        this.name = name;
+        this.script = script;
+        this.sha1 = sha1Hex(script);
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public String getScript() {
+        return script;
+    }
+    
+    public String getSha1() {
+        return sha1;
+    }
+    
+    private static String sha1Hex(String script) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest(script.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not supported", e);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return name + "(" + sha1 + ")";
+    }
+}
@@ -0,0 +1,52 @@
+package com.redismq.common.connection;
+
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * redis批量命令。命令先收集,execute时通过pipeline一次发送,结果按添加顺序返回
+ *
+ * @author hzh
+ * @date 2024/12/06
+ */
+public interface RedisBatch {
+    
+    /**
+     * 有序集合大小  结果为Long
+     */
+    RedisBatch zSize(String key);
+    
+    /**
+     * 有序集合添加元素  结果为Boolean
+     */
+    RedisBatch zAdd(String key, Object value, double score);
+    
+    /**
+     * 获取key的值
+     */
+    RedisBatch get(String key);
+    
+    /**
+     * 列表尾部添加元素  结果为Long
+     */
+    RedisBatch rPush(String key, List<String> values);
+    
+    /**
+     * 已经添加的命令数量
+     */
+    int size();
+    
+    /**
+     * 同步执行
+     *
+     * @return 每个命令的结果
+     */
+    List<Object> execute();
+    
+    /**
+     * 异步执行 客户端没有异步api时在线程池中同步执行
+     *
+     * @return 每个命令的结果
+     */
+    CompletionStage<List<Object>> executeAsync();
+}
@@ -15,7 +15,7 @@ import java.util.Set;
 public interface RedisClient {
 
     /**
-     * 执行lua
+     * 执行lua 脚本不缓存,固定的脚本注册到{@link ScriptRegistry}后执行
      *
      * @param lua  lua
      * @param keys 键
@@ -23,6 +23,16 @@ public interface RedisClient {
      * @return {@link Long}
      */
     Long executeLua(String lua,List<String> keys,Object... args);
+    
+    /**
+     * 执行注册的lua 优先evalsha
+     *
+     * @param script 脚本
+     * @param keys   键
+     * @param args   参数
+     * @return {@link Long}
+     */
+    Long executeLua(LuaScript script, List<String> keys, Object... args);
 
     /**
      * 发布订阅
@@ -146,6 +156,16 @@ public interface RedisClient {
      * @return
      */
     Long zSize(String key);
+    
+    /**
+     * 获取列表范围内的元素
+     *
+     * @param key   键
+     * @param start 开始下标
+     * @param end   结束下标 -1表示最后一个
+     * @return {@link List}<{@link String}>
+     */
+    List<String> lRange(String key, long start, long end);
 
     
 
@@ -171,14 +191,38 @@ public interface RedisClient {
      */
     Map<Message, Double> zrangeMessage(String key,String group, double min, double max, long start, long end);
     
+    /**
+     * 消费组读取stream中没有投递过的消息 阻塞读取使用单独的连接
+     *
+     * @param key         stream
+     * @param group       消费组
+     * @param consumer    消费者
+     * @param count       数量
+     * @param blockMillis 没有消息时阻塞的时间 小于等于0不阻塞
+     * @return 消息的字段 按读取顺序
+     */
+    List<Map<String, String>> xReadGroup(String key, String group, String consumer, int count, long blockMillis);
+    
     
     /**
      * lua列表
      *
-     * 返回list的lua
+     * 返回list的lua 脚本不缓存,固定的脚本注册到{@link ScriptRegistry}后执行
      */
     List luaList(String lua, List<String> keys, Object[] args);
     
+    /**
+     * 执行注册的lua 返回list 优先evalsha
+     */
+    List luaList(LuaScript script, List<String> keys, Object[] args);
+    
+    /**
+     * 创建批量命令 一次网络往返执行多个命令
+     *
+     * @return {@link RedisBatch}
+     */
+    RedisBatch batch();
+    
     Boolean exists(String key);
     
     Boolean lock(String key, String s, Duration duration);
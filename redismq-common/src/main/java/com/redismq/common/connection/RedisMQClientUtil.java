@@ -2,17 +2,23 @@ package com.redismq.common.connection;
 
 
 import com.redismq.common.config.GlobalConfigCache;
+import com.redismq.common.constant.QueueStorage;
 import com.redismq.common.constant.RedisMQConstant;
 import com.redismq.common.pojo.Client;
 import com.redismq.common.pojo.Message;
 import com.redismq.common.pojo.PushMessage;
 import com.redismq.common.pojo.Queue;
+import com.redismq.common.serializer.MessageCodecs;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.util.CollectionUtils;
 
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -22,20 +28,30 @@ import java.util.stream.Collectors;
 
 import static com.redismq.common.constant.GlobalConstant.SPLITE;
 import static com.redismq.common.constant.GlobalConstant.V_QUEUE_SPLITE;
-import static com.redismq.common.constant.RedisMQConstant.NAMESPACE;
-import static com.redismq.common.constant.RedisMQConstant.PREFIX;
 import static com.redismq.common.constant.RedisMQConstant.getClientCollection;
 import static com.redismq.common.constant.RedisMQConstant.getGroupCollection;
+import static com.redismq.common.constant.RedisMQConstant.getGroupTopic;
 import static com.redismq.common.constant.RedisMQConstant.getOffsetGroupCollection;
 import static com.redismq.common.constant.RedisMQConstant.getQueueCollection;
 import static com.redismq.common.constant.RedisMQConstant.getRebalanceTopic;
+import static com.redismq.common.constant.RedisMQConstant.getPushTopic;
 import static com.redismq.common.constant.RedisMQConstant.getTopic;
 
 @Slf4j
 public class RedisMQClientUtil {
     
+    /**
+     * 累计确认脚本每次最多删除的消息数量 和ackCumulativeMessage.lua一致
+     */
+    private static final int CUMULATIVE_ACK_BATCH = 100;
+    
     private final RedisClient redisClient;
     
+    /**
+     * 本地缓存的消费者组 发送和确认时不再每次查询
+     */
+    private volatile Set<String> groups;
+    
     public RedisMQClientUtil(RedisClient redisClient) {
         this.redisClient = redisClient;
     }
@@ -117,18 +133,32 @@ public class RedisMQClientUtil {
     }
     
     /**
-     * 获取所有的group
+     * 获取所有的group 读取本地缓存
      * @return
      */
     public Set<String> getGroups() {
+        Set<String> cached = groups;
+        return cached != null ? cached : refreshGroups();
+    }
+    
+    /**
+     * 从redis重新加载group 组注册删除的通知和客户端负载均衡任务会调用
+     */
+    public Set<String> refreshGroups() {
         String groupCollection = getGroupCollection();
         Map<String, Double> doubleMap = redisClient.zRangeWithScores(groupCollection, 0, Long.MAX_VALUE,
                 String.class);
-         if (CollectionUtils.isEmpty(doubleMap)){
-           return new HashSet<>();
-          }
-        return  doubleMap.keySet();
-        
+        Set<String> loaded = CollectionUtils.isEmpty(doubleMap) ? Collections.emptySet()
+                : Collections.unmodifiableSet(new HashSet<>(doubleMap.keySet()));
+        groups = loaded;
+        return loaded;
+    }
+    
+    /**
+     * 通知所有客户端刷新group
+     */
+    public void publishGroupChange(String groupId) {
+        redisClient.convertAndSend(getGroupTopic(), groupId);
     }
     
     
@@ -160,11 +190,6 @@ public class RedisMQClientUtil {
      */
     public Boolean removeMessage(String queueName, String msgId) {
         boolean success =false;
-        String lua = "local result={};"
-                + "local r1 = redis.call('zrem', KEYS[1], ARGV[1]); "
-                + "local r2  = redis.call('hdel', KEYS[2],  ARGV[1]); "
-                + "table.insert(result,r1);table.insert(result,r2);"
-                + "return result;";
         List<String> params=new ArrayList<>();
         String groupId = GlobalConfigCache.CONSUMER_CONFIG.getGroupId();
         queueName= RedisMQConstant.getVQueueNameByVQueue(queueName);
@@ -172,7 +197,7 @@ public class RedisMQClientUtil {
         params.add(queueName + SPLITE + groupId);
         params.add(queueName + ":body");
         Object[] objects = {msgId};
-        List list = redisClient.luaList(lua, params, objects);
+        List list = redisClient.luaList(ScriptRegistry.REMOVE_MESSAGE, params, objects);
         if (!CollectionUtils.isEmpty(list)){
             long count = list.stream().mapToInt(value -> Integer.parseInt(value.toString())).count();
             success = count >= 1;
@@ -188,24 +213,6 @@ public class RedisMQClientUtil {
      */
     public Boolean ackMessage(String queueName, String msgId,long offset) {
         boolean success =false;
-        String lua = "local result={};\n" + "local messageIdQueue=KEYS[1];\n" + "local queueGroups= KEYS[3];\n"
-                + "local offsetGroup= KEYS[4];\n" + "local orginalQueueName =KEYS[5];\n"
-                + "local otherMessageIdQueues =KEYS[6];\n" + "local diffMax =KEYS[7];\n" + "local msgOffset =KEYS[8];\n"
-                + "\n" + "local r1 = redis.call('zrem', messageIdQueue, ARGV[1]);\n" + "table.insert(result,r1);\n"
-                + "\n" + "local currentOffset = redis.call('ZSCORE', offsetGroup,orginalQueueName);\n"
-                + "if currentOffset and msgOffset and  tonumber(msgOffset) > tonumber(currentOffset) then\n"
-                + "    redis.call('zadd', offsetGroup, msgOffset,orginalQueueName);\n" + "end\n" + "\n"
-                + "local groupAck = true;\n" + "for queueGroup in queueGroups:gmatch(\"([^,]+)\") do\n"
-                + "    local res = redis.call('ZSCORE', queueGroup, ARGV[1]);\n" + "    if res then\n"
-                + "        groupAck = false;\n" + "    end\n" + "end\n" + "\n" + "if groupAck then\n"
-                + "    local r2  = redis.call('hdel', KEYS[2],  ARGV[1]);\n" + "    table.insert(result,r2);\n"
-                + "end\n" + "local size = redis.call('HLEN',KEYS[2]);\n" + "if size>0 then\n"
-                + "    for msgQueue in otherMessageIdQueues:gmatch(\"([^,]+)\") do\n"
-                + "        local  data = redis.call('ZRANGEBYSCORE',msgQueue,0,currentOffset - (tonumber(diffMax)-1));\n"
-                + "        for i, messageId in ipairs(data) do\n"
-                + "            redis.call('zrem',msgQueue,messageId);\n"
-                + "            local r2  = redis.call('hdel', KEYS[2],  messageId);\n"
-                + "            table.insert(result,r2);\n" + "        end\n" + "    end\n" + "end\n" + "return result;";
         List<String> keys = new ArrayList<>();
         String orginalQueueName = RedisMQConstant.getQueueNameByVirtual(queueName);
         
@@ -238,7 +245,7 @@ public class RedisMQClientUtil {
      
         
         Object[] objects = {msgId,offset};
-        List list = redisClient.luaList(lua, keys, objects);
+        List list = redisClient.luaList(ScriptRegistry.ACK_MESSAGE, keys, objects);
         if (!CollectionUtils.isEmpty(list)){
             long count = list.stream().mapToInt(value -> Integer.parseInt(value.toString())).count();
             success = count >= 1;
@@ -255,27 +262,61 @@ public class RedisMQClientUtil {
      */
     public Boolean ackBatchMessage(String queueName, String msgIds,long msgOffset) {
         boolean success =false;
-        String lua = "local result={};\n" + "local messageIdQueue=KEYS[1];\n" + "local queueGroups= KEYS[3];\n"
-                + "local offsetGroup= KEYS[4];\n" + "local orginalQueueName =KEYS[5];\n"
-                + "local otherMessageIdQueues =KEYS[6];\n" + "local diffMax =KEYS[7];\n" + "\n"
-                + "local msgIds = ARGV[1];\n" + "local msgOffset = ARGV[2];\n" + "\n"
-                + "local currentOffset = redis.call('ZSCORE', offsetGroup,orginalQueueName);\n" + "\n"
-                + "for msgId in msgIds:gmatch(\"([^,]+)\") do\n"
-                + "local r1 = redis.call('zrem', messageIdQueue, msgId);\n" + "table.insert(result,r1);\n" + "\n"
-                + "local groupAck = true;\n" + "for queueGroup in queueGroups:gmatch(\"([^,]+)\") do\n"
-                + "    local res = redis.call('ZSCORE', queueGroup, msgId);\n" + "    if res then\n"
-                + "        groupAck = false;\n" + "    end\n" + "end\n" + "\n" + "if groupAck then\n"
-                + "    local r2  = redis.call('hdel', KEYS[2],  msgId);\n" + "    table.insert(result,r2);\n" + "end\n"
-                + "local size = redis.call('HLEN',KEYS[2]);\n" + "if size>0 then\n"
-                + "    for msgQueue in otherMessageIdQueues:gmatch(\"([^,]+)\") do\n"
-                + "        local  data = redis.call('ZRANGEBYSCORE',msgQueue,0,currentOffset - (tonumber(diffMax)-1));\n"
-                + "        for i, messageId in ipairs(data) do\n"
-                + "            redis.call('zrem',msgQueue,messageId);\n"
-                + "            local r2  = redis.call('hdel', KEYS[2],  messageId);\n"
-                + "            table.insert(result,r2);\n" + "        end\n" + "    end\n" + "end\n" + "end\n" + "\n"
-                + "if currentOffset and msgOffset and  (tonumber(msgOffset) > tonumber(currentOffset)) then\n"
-                + "    redis.call('zadd', offsetGroup, msgOffset,orginalQueueName);\n" + "end\n" + "\n"
-                + "return result;\n";
+        List<String> keys = ackKeys(queueName);
+        
+        //msgOffset 所有消息最大偏移量
+        Object[] objects = {msgIds,msgOffset};
+        List list = redisClient.luaList(ScriptRegistry.ACK_BATCH_MESSAGE, keys, objects);
+        if (!CollectionUtils.isEmpty(list)){
+            long count = list.stream().mapToInt(value -> Integer.parseInt(value.toString())).count();
+            success = count >= 1;
+        }
+        if (!success){
+            log.error("remove message failed, queueName:{} messageIds:{}",queueName,msgIds);
+        }
+        return success;
+    }
+    
+    /**
+     * 累计ack消息 普通队列分数就是偏移量。
+     * 脚本每次最多删除一批偏移量范围内的消息,满一批时继续调用,单次脚本不会长时间阻塞redis。
+     * 范围内的消息比本次投递的多时,说明有偏移量更小的消息晚写入还没有拉取,脚本只按id删除本次投递的消息
+     *
+     * @param queueName 虚拟队列
+     * @param ackOffset 连续消费完成的偏移量 -1没有
+     * @param minOffset 本次确认范围内投递的最小偏移量
+     * @param rangeIds  本次确认范围内投递的消息id 偏移量在minOffset和ackOffset之间
+     * @param msgIds    乱序完成的消息id 逗号分隔
+     */
+    public Boolean ackCumulativeMessage(String queueName, long ackOffset, long minOffset, List<String> rangeIds,
+            String msgIds) {
+        boolean success =false;
+        List<String> keys = ackKeys(queueName);
+        String ids = String.join(",", rangeIds);
+        int count = rangeIds.size();
+        List list = redisClient.luaList(ScriptRegistry.ACK_CUMULATIVE_MESSAGE, keys,
+                new Object[] {ackOffset, msgIds, minOffset, count, ids});
+        while (!CollectionUtils.isEmpty(list)) {
+            success = true;
+            long removed = Long.parseLong(list.get(0).toString());
+            if (removed < CUMULATIVE_ACK_BATCH) {
+                break;
+            }
+            //乱序完成的消息第一次已经删除 已经删除的不再计入投递数量
+            count -= removed;
+            list = redisClient.luaList(ScriptRegistry.ACK_CUMULATIVE_MESSAGE, keys,
+                    new Object[] {ackOffset, "", minOffset, count, ids});
+        }
+        if (!success){
+            log.error("remove message failed, queueName:{} ackOffset:{} messageIds:{}",queueName,ackOffset,msgIds);
+        }
+        return success;
+    }
+    
+    /**
+     * ack脚本的key
+     */
+    private List<String> ackKeys(String queueName) {
         List<String> keys = new ArrayList<>();
         String orginalQueueName = RedisMQConstant.getQueueNameByVirtual(queueName);
         
@@ -305,16 +346,169 @@ public class RedisMQClientUtil {
         keys.add(offsetGroups);
         //key7 除当前队列外所有其他队列的消息id队列
         keys.add(GlobalConfigCache.CONSUMER_CONFIG.getGroupOffsetLowMax().toString());
-        
-        //msgOffset 所有消息最大偏移量
-        Object[] objects = {msgIds,msgOffset};
-        List list = redisClient.luaList(lua, keys, objects);
-        if (!CollectionUtils.isEmpty(list)){
-            long count = list.stream().mapToInt(value -> Integer.parseInt(value.toString())).count();
-            success = count >= 1;
+        return keys;
+    }
+    
+    /**
+     * 从共享日志拉取消息 拉取到的消息id记录到分组消费中的集合,ack后提交游标
+     *
+     * @param queueName   虚拟队列
+     * @param delivered   本次拉取已经投递的偏移量 -1先重新投递上次没有确认的消息
+     * @param pullSize    拉取数量
+     * @param startOffset 分组没有游标时的起始偏移量
+     * @param resetOffset 起始偏移量是否优先于游标
+     */
+    public List<Message> pullLogMessage(String queueName, long delivered, int pullSize, long startOffset,
+            boolean resetOffset) {
+        queueName = RedisMQConstant.getVQueueNameByVQueue(queueName);
+        String groupId = GlobalConfigCache.CONSUMER_CONFIG.getGroupId();
+        List<String> keys = new ArrayList<>();
+        keys.add(queueName + ":log");
+        keys.add(queueName + ":body");
+        keys.add(queueName + ":pending" + SPLITE + groupId);
+        keys.add(queueName + ":cursor");
+        Object[] objects = {groupId, delivered, pullSize, startOffset, resetOffset ? 1 : 0};
+        List list = redisClient.luaList(ScriptRegistry.PULL_LOG_MESSAGE, keys, objects);
+        List<Message> messages = new ArrayList<>();
+        if (CollectionUtils.isEmpty(list)) {
+            return messages;
         }
-        if (!success){
-            log.error("remove message failed, queueName:{} messageIds:{}",queueName,msgIds);
+        for (int i = 0; i < list.size(); i += 2) {
+            messages.add(MessageCodecs.decode(list.get(i).toString()));
+        }
+        return messages;
+    }
+    
+    /**
+     * 共享日志当前最大的偏移量 偏移量在虚拟队列内分配
+     *
+     * @param queueName 虚拟队列
+     */
+    public long getLogOffset(String queueName) {
+        Object offset = redisClient.get(RedisMQConstant.getVQueueNameByVQueue(queueName) + ":offset");
+        return offset == null ? 0L : Long.parseLong(offset.toString());
+    }
+    
+    /**
+     * 共享日志ack 提交分组游标,所有分组都经过的消息删除。
+     * 游标只保存在虚拟队列内,脚本的key都在同一个slot
+     *
+     * @param queueName 虚拟队列
+     * @param ackOffset 连续消费完成的偏移量 -1没有
+     * @param msgIds    单独确认的消息id 逗号分隔
+     */
+    public Boolean ackLogMessage(String queueName, long ackOffset, String msgIds) {
+        String virtualQueue = queueName;
+        queueName = RedisMQConstant.getVQueueNameByVQueue(queueName);
+        String groupId = GlobalConfigCache.CONSUMER_CONFIG.getGroupId();
+        List<String> keys = new ArrayList<>();
+        keys.add(queueName + ":pending" + SPLITE + groupId);
+        keys.add(queueName + ":body");
+        keys.add(queueName + ":cursor");
+        keys.add(queueName + ":log");
+        String groups = String.join(",", getGroups());
+        Object[] objects = {groupId, ackOffset, msgIds, groups,
+                GlobalConfigCache.CONSUMER_CONFIG.getGroupOffsetLowMax()};
+        List list = redisClient.luaList(ScriptRegistry.ACK_LOG_MESSAGE, keys, objects);
+        boolean success = !CollectionUtils.isEmpty(list);
+        if (success && list.size() > 1) {
+            //清理的消息中主体单独存储的 脚本不操作没有声明的key
+            deletePayloads(((List<Object>) list).subList(1, list.size()).stream()
+                    .map(id -> RedisMQConstant.getPayloadKey(virtualQueue, id.toString()))
+                    .collect(Collectors.toList()));
+        }
+        if (!success) {
+            log.error("ack log message failed, queueName:{} ackOffset:{} messageIds:{}", queueName, ackOffset, msgIds);
+        }
+        return success;
+    }
+    
+    /**
+     * 创建stream消费组
+     *
+     * @param queueName 虚拟队列
+     * @param latest    新的消费组是否从最新的消息开始
+     * @param reset     已经存在的消费组是否重置到起始位置
+     */
+    public void createStreamGroup(String queueName, boolean latest, boolean reset) {
+        queueName = RedisMQConstant.getVQueueNameByVQueue(queueName);
+        redisClient.executeLua(ScriptRegistry.CREATE_STREAM_GROUP, Collections.singletonList(queueName + ":stream"),
+                GlobalConfigCache.CONSUMER_CONFIG.getGroupId(), latest ? "$" : "0", reset ? 1 : 0);
+    }
+    
+    /**
+     * 消费组读取stream中新的消息
+     *
+     * @param queueName   虚拟队列
+     * @param consumer    消费者
+     * @param pullSize    拉取数量
+     * @param blockMillis 没有消息时阻塞的时间 小于等于0不阻塞
+     */
+    public List<Message> pullStreamMessage(String queueName, String consumer, int pullSize, long blockMillis) {
+        queueName = RedisMQConstant.getVQueueNameByVQueue(queueName);
+        List<Map<String, String>> records = redisClient.xReadGroup(queueName + ":stream",
+                GlobalConfigCache.CONSUMER_CONFIG.getGroupId(), consumer, pullSize, blockMillis);
+        List<Message> messages = new ArrayList<>();
+        for (Map<String, String> record : records) {
+            String body = record.get("body");
+            if (body != null) {
+                messages.add(MessageCodecs.decode(body));
+            }
+        }
+        return messages;
+    }
+    
+    /**
+     * 认领stream中空闲超过指定时间没有确认的消息
+     *
+     * @param queueName 虚拟队列
+     * @param consumer  消费者
+     * @param minIdle   最小空闲时间
+     * @param startId   开始的id 第一次0-0
+     * @param count     数量
+     * @return 下一次开始的id 0-0表示扫描完成,和认领到的消息
+     */
+    public Pair<String, List<Message>> claimStreamMessage(String queueName, String consumer, long minIdle,
+            String startId, int count) {
+        queueName = RedisMQConstant.getVQueueNameByVQueue(queueName);
+        Object[] objects = {GlobalConfigCache.CONSUMER_CONFIG.getGroupId(), consumer, minIdle, startId, count};
+        List list = redisClient.luaList(ScriptRegistry.CLAIM_STREAM_MESSAGE,
+                Collections.singletonList(queueName + ":stream"), objects);
+        List<Message> messages = new ArrayList<>();
+        if (CollectionUtils.isEmpty(list)) {
+            return Pair.of("0-0", messages);
+        }
+        for (int i = 1; i < list.size(); i++) {
+            messages.add(MessageCodecs.decode(list.get(i).toString()));
+        }
+        return Pair.of(list.get(0).toString(), messages);
+    }
+    
+    /**
+     * stream ack 所有分组都确认的消息删除。分组的位置由stream本身维护,脚本只操作stream
+     *
+     * @param queueName 虚拟队列
+     * @param offsets   确认的消息偏移量
+     */
+    public Boolean ackStreamMessage(String queueName, Collection<Long> offsets) {
+        String virtualQueue = queueName;
+        queueName = RedisMQConstant.getVQueueNameByVQueue(queueName);
+        String groupId = GlobalConfigCache.CONSUMER_CONFIG.getGroupId();
+        List<Object> params = new ArrayList<>();
+        params.add(groupId);
+        params.add(GlobalConfigCache.CONSUMER_CONFIG.getGroupOffsetLowMax());
+        params.addAll(offsets);
+        List list = redisClient.luaList(ScriptRegistry.ACK_STREAM_MESSAGE,
+                Collections.singletonList(queueName + ":stream"), params.toArray());
+        boolean success = !CollectionUtils.isEmpty(list);
+        if (success && list.size() > 1) {
+            //清理的消息中主体单独存储的 脚本不操作没有声明的key
+            deletePayloads(((List<Object>) list).subList(1, list.size()).stream()
+                    .map(id -> RedisMQConstant.getPayloadKey(virtualQueue, id.toString()))
+                    .collect(Collectors.toList()));
+        }
+        if (!success) {
+            log.error("ack stream message failed, queueName:{} offsets:{}", queueName, offsets);
         }
         return success;
     }
@@ -380,6 +574,54 @@ public class RedisMQClientUtil {
         return redisClient.zSize(queueName);
     }
     
+    /**
+     * 批量获取队列大小 一次pipeline
+     */
+    public List<Long> queueSizes(List<String> vQueues) {
+        RedisBatch batch = redisClient.batch();
+        vQueues.forEach(vQueue -> batch.zSize(RedisMQConstant.getVQueueNameByVQueue(vQueue)));
+        return batch.execute().stream().map(size -> size == null ? 0L : ((Number) size).longValue())
+                .collect(Collectors.toList());
+    }
+    
+    /**
+     * 写入单独存储的消息主体 一次pipeline
+     *
+     * @param payloads 主体key->分块
+     */
+    public void putPayloads(Map<String, List<String>> payloads) {
+        RedisBatch batch = redisClient.batch();
+        payloads.forEach(batch::rPush);
+        batch.execute();
+    }
+    
+    /**
+     * 删除单独存储的消息主体 发送失败时清理
+     */
+    public void deletePayloads(Collection<String> keys) {
+        redisClient.delete(keys);
+    }
+    
+    /**
+     * 读取单独存储的消息主体
+     *
+     * @return 主体 已经被删除返回null
+     */
+    public String getPayload(String virtualQueue, String msgId) {
+        List<String> chunks = redisClient.lRange(RedisMQConstant.getPayloadKey(virtualQueue, msgId), 0, -1);
+        if (CollectionUtils.isEmpty(chunks)) {
+            return null;
+        }
+        return chunks.size() == 1 ? chunks.get(0) : String.join("", chunks);
+    }
+    
+    /**
+     * 创建批量命令
+     */
+    public RedisBatch batch() {
+        return redisClient.batch();
+    }
+    
     /**
      * 锁定指定key
      */
@@ -409,7 +651,9 @@ public class RedisMQClientUtil {
      * 发布拉取消息的topic
      */
     public void publishPullMessage(PushMessage pushMessage) {
-        redisClient.convertAndSend(getTopic(), pushMessage);
+        // 只通知到虚拟队列自己的通道,只有分配到该虚拟队列的客户端会收到
+        String vQueue = StringUtils.substringBetween(pushMessage.getQueue(), "{", "}");
+        redisClient.convertAndSend(vQueue == null ? getTopic() : getPushTopic(vQueue), pushMessage);
     }
     
     /**
@@ -423,8 +667,25 @@ public class RedisMQClientUtil {
         return redisClient.executeLua(lua, keys, args);
     }
     
+    public Long executeLua(LuaScript script, List<String> keys, Object... args) {
+        return redisClient.executeLua(script, keys, args);
+    }
+    
+    /**
+     * 整批分配队列偏移量 超过当前时间戳重新计数
+     *
+     * @param queueName 队列
+     * @param count     数量
+     * @return 本批次最大的偏移量 失败返回null
+     */
+    public Long allocateOffset(String queueName, int count) {
+        return redisClient.executeLua(ScriptRegistry.ALLOCATE_OFFSET,
+                Collections.singletonList(RedisMQConstant.getQueueOffset(queueName)), count,
+                System.currentTimeMillis());
+    }
+    
     public Long getQueueMaxOffset(String queueName){
-        String queueOffset = PREFIX + NAMESPACE + SPLITE + "QUEUE_OFFSET" + SPLITE + queueName;
+        String queueOffset = RedisMQConstant.getQueueOffset(queueName);
         Object obj = redisClient.get(queueOffset);
         if (obj==null){
             return 0L;
@@ -441,7 +702,10 @@ public class RedisMQClientUtil {
      * 注册所有的消费组
      */
     public void registerGroup() {
-        redisClient.zAdd(getGroupCollection(),GlobalConfigCache.CONSUMER_CONFIG.getGroupId(),System.currentTimeMillis());
+        String groupId = GlobalConfigCache.CONSUMER_CONFIG.getGroupId();
+        redisClient.zAdd(getGroupCollection(), groupId, System.currentTimeMillis());
+        refreshGroups();
+        publishGroupChange(groupId);
     }
     
     /**
@@ -472,16 +736,47 @@ public class RedisMQClientUtil {
     
     public void deleteGroup(String groupId) {
         redisClient.zRemove(getGroupCollection(),groupId);
+        refreshGroups();
+        publishGroupChange(groupId);
         String offsetGroupCollection = getOffsetGroupCollection(groupId);
         redisClient.delete(offsetGroupCollection);
+        deleteGroupMessage(groupId);
+    }
+    
+    /**
+     * 删除分组在所有虚拟队列里的消息 释放消息体的引用。
+     * 生产者本地缓存的分组刷新之前还会往已删除的分组写入并计数,删除分组后需要等缓存刷新再清理一次
+     */
+    public void deleteGroupMessage(String groupId) {
         //查找所有队列的虚拟队列。删除队列内的消息
         Set<Queue> queueList = getQueueList();
         for (Queue queue : queueList) {
             Integer virtual = queue.getVirtual();
             for (Integer i = 0; i < virtual; i++) {
-                String vQueueName = queue.getQueueName() + V_QUEUE_SPLITE + i;
-                //队列的分组
-                redisClient.delete(vQueueName + groupId);
+                String vQueueName = RedisMQConstant.getVQueueNameByVQueue(queue.getQueueName() + V_QUEUE_SPLITE + i);
+                //stream删除消费组
+                if (QueueStorage.isStream(queue.getStorage())) {
+                    redisClient.executeLua(ScriptRegistry.DESTROY_STREAM_GROUP,
+                            Collections.singletonList(vQueueName + ":stream"), groupId);
+                    continue;
+                }
+                //共享日志只删除分组的游标和消费中的消息id
+                if (QueueStorage.isLog(queue.getStorage())) {
+                    redisClient.executeLua(ScriptRegistry.DELETE_LOG_GROUP,
+                            Arrays.asList(vQueueName + ":cursor", vQueueName + ":pending" + SPLITE + groupId),
+                            groupId);
+                    continue;
+                }
+                //队列的分组 分批删除 释放消息体的引用
+                List<String> keys = new ArrayList<>();
+                keys.add(vQueueName + SPLITE + groupId);
+                keys.add(vQueueName + ":body");
+                keys.add(getGroups().stream().filter(g -> !g.equals(groupId)).map(g -> vQueueName + SPLITE + g)
+                        .collect(Collectors.joining(",")));
+                Long count;
+                do {
+                    count = redisClient.executeLua(ScriptRegistry.DELETE_GROUP_MESSAGE, keys, 1000);
+                } while (count != null && count > 0);
             }
         }
         
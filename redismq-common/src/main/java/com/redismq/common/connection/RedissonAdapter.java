@@ -1,12 +1,17 @@
 package com.redismq.common.connection;
 
 import com.redismq.common.pojo.Message;
+import com.redismq.common.serializer.MessageCodecs;
 import com.redismq.common.serializer.RedisMQStringMapper;
 import org.redisson.api.RLock;
 import org.redisson.api.RScoredSortedSet;
 import org.redisson.api.RScript;
 import org.redisson.api.RSet;
+import org.redisson.api.RStream;
+import org.redisson.api.StreamMessageId;
 import org.redisson.api.RedissonClient;
+import org.redisson.api.RList;
+import org.redisson.api.stream.StreamReadGroupArgs;
 import org.redisson.client.codec.StringCodec;
 import org.redisson.client.protocol.ScoredEntry;
 import org.springframework.util.CollectionUtils;
@@ -34,7 +39,7 @@ public class RedissonAdapter implements RedisClient {
     }
 
     /**
-     * 执行lua
+     * 执行lua 字符串脚本不缓存,固定的脚本注册到ScriptRegistry
      *
      * @param lua  lua
      * @param keys 键
@@ -42,13 +47,38 @@ public class RedissonAdapter implements RedisClient {
      */
     @Override
     public Long executeLua(String lua, List<String> keys, Object... args) {
-        String[] array = Arrays.stream(args).filter(Objects::nonNull).map(RedisMQStringMapper::toJsonStr)
-                .toArray(a -> new String[args.length]);
-        
         Object eval = redissonClient.getScript().eval(RScript.Mode.READ_WRITE, lua, RScript.ReturnType.INTEGER,
-                keys.stream().map(a -> (Object) a).collect(Collectors.toList()), array);
+                new ArrayList<>(keys), (Object[]) toArgs(args));
+        return Long.parseLong(eval.toString());
+    }
+    
+    @Override
+    public Long executeLua(LuaScript script, List<String> keys, Object... args) {
+        Object eval = evalSha(script, RScript.ReturnType.INTEGER, keys, args);
         return Long.parseLong(eval.toString());
     }
+    
+    /**
+     * evalsha执行 redis重启或者脚本被flush后返回NOSCRIPT,使用eval执行一次,redis会重新缓存脚本
+     */
+    private <R> R evalSha(LuaScript script, RScript.ReturnType returnType, List<String> keys, Object[] args) {
+        String[] array = toArgs(args);
+        List<Object> keyList = new ArrayList<>(keys);
+        RScript rScript = redissonClient.getScript();
+        try {
+            return rScript.evalSha(RScript.Mode.READ_WRITE, script.getSha1(), returnType, keyList, (Object[]) array);
+        } catch (RuntimeException e) {
+            if (!ScriptRegistry.isNoScript(e)) {
+                throw e;
+            }
+            return rScript.eval(RScript.Mode.READ_WRITE, script.getScript(), returnType, keyList, (Object[]) array);
+        }
+    }
+    
+    private static String[] toArgs(Object[] args) {
+        return Arrays.stream(args).filter(Objects::nonNull).map(RedisMQStringMapper::toJsonStr)
+                .toArray(a -> new String[args.length]);
+    }
 
     /**
      * 阻塞redis获取set集合中所有的元素
@@ -251,6 +281,12 @@ public class RedissonAdapter implements RedisClient {
         int size = redissonClient.getScoredSortedSet(key).size();
         return (long) size;
     }
+    
+    @Override
+    public List<String> lRange(String key, long start, long end) {
+        RList<String> list = redissonClient.getList(key, StringCodec.INSTANCE);
+        return list.range((int) start, (int) end);
+    }
 
 
     /**
@@ -264,13 +300,6 @@ public class RedissonAdapter implements RedisClient {
     
     @Override
     public Map<Message, Double> zrangeMessage(String key,String group,double min, double max, long start, long end) {
-        String lua =
-                "local data = redis.call('zrangebyscore', KEYS[2],ARGV[1], ARGV[2],'WITHSCORES', 'LIMIT', ARGV[3], ARGV[4]);\n"
-                        + "\n" + "local result = {}\n" + "for i=1, #data, 2 do\n"
-                        + "    local message = redis.call('hget', KEYS[1] .. ':body',data[i]);\n"
-                        + "    if (message) then\n" + "        table.insert(result,message);\n"
-                        + "        table.insert(result,data[i+1]);\n" + "    else\n"
-                        + "        redis.call('zrem', KEYS[2],  data[i]);\n" + "    end\n" + "end\n" + "return result;";
         List<String> keys= new ArrayList<>();
         keys.add(key);
         keys.add(key+":"+group);
@@ -280,24 +309,41 @@ public class RedissonAdapter implements RedisClient {
         array[1] = max == 0D ? Double.MAX_VALUE : max;
         array[2] = start;
         array[3] = end == 0L ? Long.MAX_VALUE : end;
-        List list = luaList(lua, keys, array);
+        List list = luaList(ScriptRegistry.ZRANGE_MESSAGE, keys, array);
         Map<Message, Double> newMap = new LinkedHashMap<>();
         for (int i = 0; i < list.size(); i += 2) {
             Object msgObj = list.get(i);
-            Message message = RedisMQStringMapper.toBean(msgObj.toString(), Message.class);
+            Message message = MessageCodecs.decode(msgObj.toString());
             Object scope = list.get(i + 1);
             newMap.put(message, Double.valueOf(scope.toString()));
         }
         return newMap;
     }
     
+    @Override
+    public List<Map<String, String>> xReadGroup(String key, String group, String consumer, int count,
+            long blockMillis) {
+        RStream<String, String> stream = redissonClient.getStream(key, StringCodec.INSTANCE);
+        StreamReadGroupArgs args = StreamReadGroupArgs.neverDelivered().count(count);
+        if (blockMillis > 0) {
+            args = args.timeout(Duration.ofMillis(blockMillis));
+        }
+        Map<StreamMessageId, Map<String, String>> records = stream.readGroup(group, consumer, args);
+        if (CollectionUtils.isEmpty(records)) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(records.values());
+    }
+    
     @Override
     public List luaList(String lua, List<String> keys, Object[] args) {
-        String[] array = Arrays.stream(args).filter(Objects::nonNull).map(RedisMQStringMapper::toJsonStr)
-                .toArray(a -> new String[args.length]);
-        List eval = redissonClient.getScript().eval(RScript.Mode.READ_WRITE, lua, RScript.ReturnType.MULTI,
-                keys.stream().map(a -> (Object) a).collect(Collectors.toList()), array);
-        return eval;
+        return redissonClient.getScript().eval(RScript.Mode.READ_WRITE, lua, RScript.ReturnType.MULTI,
+                new ArrayList<>(keys), (Object[]) toArgs(args));
+    }
+    
+    @Override
+    public List luaList(LuaScript script, List<String> keys, Object[] args) {
+        return evalSha(script, RScript.ReturnType.MULTI, keys, args);
     }
     
     @Override
@@ -329,4 +375,9 @@ public class RedissonAdapter implements RedisClient {
         RLock lock = redissonClient.getLock(key);
         return lock.isLocked();
     }
+    
+    @Override
+    public RedisBatch batch() {
+        return new RedissonBatch(redissonClient);
+    }
 }
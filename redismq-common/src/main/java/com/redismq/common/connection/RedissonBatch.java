@@ -0,0 +1,78 @@
+package com.redismq.common.connection;
+
+import com.redismq.common.serializer.RedisMQStringMapper;
+import org.redisson.api.BatchResult;
+import org.redisson.api.RBatch;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * redisson批量命令 基于RBatch
+ *
+ * @author hzh
+ * @date 2024/12/06
+ */
+public class RedissonBatch implements RedisBatch {
+    
+    private final RBatch batch;
+    
+    private int size;
+    
+    public RedissonBatch(RedissonClient redissonClient) {
+        this.batch = redissonClient.createBatch();
+    }
+    
+    @Override
+    public RedisBatch zSize(String key) {
+        batch.getScoredSortedSet(key).sizeAsync();
+        size++;
+        return this;
+    }
+    
+    @Override
+    public RedisBatch zAdd(String key, Object value, double score) {
+        batch.getScoredSortedSet(key).addAsync(score, RedisMQStringMapper.toJsonStr(value));
+        size++;
+        return this;
+    }
+    
+    @Override
+    public RedisBatch get(String key) {
+        batch.getBucket(key).getAsync();
+        size++;
+        return this;
+    }
+    
+    @Override
+    public RedisBatch rPush(String key, List<String> values) {
+        batch.<String>getList(key, StringCodec.INSTANCE).addAllAsync(values);
+        size++;
+        return this;
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public List<Object> execute() {
+        if (size == 0) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(batch.execute().getResponses());
+    }
+    
+    @Override
+    public CompletionStage<List<Object>> executeAsync() {
+        if (size == 0) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        return batch.executeAsync().thenApply(result -> new ArrayList<>(((BatchResult<?>) result).getResponses()));
+    }
+}
@@ -0,0 +1,144 @@
+package com.redismq.common.connection;
+
+import com.redismq.common.exception.RedisMqException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * lua脚本注册中心。启动时从classpath的lua目录加载脚本并缓存sha1,各个RedisClient通过evalsha执行,
+ * redis返回NOSCRIPT时再用eval重新加载
+ *
+ * @author hzh
+ * @date 2024/12/05
+ */
+public final class ScriptRegistry {
+    
+    private static final String LUA_PATH = "lua/";
+    
+    /**
+     * 写入消息
+     */
+    public static final LuaScript PUT_MESSAGE = load("putMessage");
+    
+    /**
+     * 分配队列偏移量
+     */
+    public static final LuaScript ALLOCATE_OFFSET = load("allocateOffset");
+    
+    /**
+     * ack单条消息
+     */
+    public static final LuaScript ACK_MESSAGE = load("ackMessage");
+    
+    /**
+     * 批量ack消息
+     */
+    public static final LuaScript ACK_BATCH_MESSAGE = load("ackBatchMessage");
+    
+    /**
+     * 按偏移量累计ack消息
+     */
+    public static final LuaScript ACK_CUMULATIVE_MESSAGE = load("ackCumulativeMessage");
+    
+    /**
+     * 写入共享日志
+     */
+    public static final LuaScript PUT_LOG_MESSAGE = load("putLogMessage");
+    
+    /**
+     * 从共享日志拉取消息
+     */
+    public static final LuaScript PULL_LOG_MESSAGE = load("pullLogMessage");
+    
+    /**
+     * 共享日志ack 提交分组游标
+     */
+    public static final LuaScript ACK_LOG_MESSAGE = load("ackLogMessage");
+    
+    /**
+     * 共享日志删除分组的游标
+     */
+    public static final LuaScript DELETE_LOG_GROUP = load("deleteLogGroup");
+    
+    /**
+     * 写入stream
+     */
+    public static final LuaScript PUT_STREAM_MESSAGE = load("putStreamMessage");
+    
+    /**
+     * 创建stream消费组
+     */
+    public static final LuaScript CREATE_STREAM_GROUP = load("createStreamGroup");
+    
+    /**
+     * 删除stream消费组
+     */
+    public static final LuaScript DESTROY_STREAM_GROUP = load("destroyStreamGroup");
+    
+    /**
+     * 认领stream中超时没有确认的消息
+     */
+    public static final LuaScript CLAIM_STREAM_MESSAGE = load("claimStreamMessage");
+    
+    /**
+     * stream ack 清理所有分组都确认的消息
+     */
+    public static final LuaScript ACK_STREAM_MESSAGE = load("ackStreamMessage");
+    
+    /**
+     * 删除消息
+     */
+    public static final LuaScript REMOVE_MESSAGE = load("removeMessage");
+    
+    /**
+     * 分批删除分组的消息
+     */
+    public static final LuaScript DELETE_GROUP_MESSAGE = load("deleteGroupMessage");
+    
+    /**
+     * 虚拟队列锁续期
+     */
+    public static final LuaScript LIFE_EXTENSION = load("lifeExtension");
+    
+    /**
+     * 范围获取消息
+     */
+    public static final LuaScript ZRANGE_MESSAGE = load("zrangeMessage");
+    
+    private ScriptRegistry() {
+    }
+    
+    private static LuaScript load(String name) {
+        String path = LUA_PATH + name + ".lua";
+        try (InputStream in = ScriptRegistry.class.getClassLoader().getResourceAsStream(path)) {
+            if (in == null) {
+                throw new RedisMqException("RedisMQ lua script not found: " + path);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+            }
+            return new LuaScript(name, new String(out.toByteArray(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new RedisMqException("RedisMQ load lua script error: " + path, e);
+        }
+    }
+    
+    /**
+     * 是否脚本未加载异常
+     */
+    public static boolean isNoScript(Throwable e) {
+        while (e != null) {
+            if (e.getMessage() != null && e.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+            e = e.getCause();
+        }
+        return false;
+    }
+}
@@ -1,7 +1,13 @@
 package com.redismq.common.connection;
 
 import com.redismq.common.pojo.Message;
+import com.redismq.common.serializer.MessageCodecs;
 import com.redismq.common.serializer.RedisMQStringMapper;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
@@ -9,9 +15,9 @@ import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.util.CollectionUtils;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -19,19 +25,60 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 public class StringRedisTemplateAdapter implements RedisClient {
     
     private final StringRedisTemplate stringRedisTemplate;
     
+    private final Map<String, DefaultRedisScript<Long>> longScripts = new ConcurrentHashMap<>();
+    
+    private final Map<String, DefaultRedisScript<List>> listScripts = new ConcurrentHashMap<>();
+    
+    /**
+     * 不是lettuce连接时异步批量命令执行的线程池
+     */
+    private final Executor batchExecutor;
+    
     public StringRedisTemplateAdapter(StringRedisTemplate stringRedisTemplate) {
+        this(stringRedisTemplate, defaultBatchExecutor());
+    }
+    
+    public StringRedisTemplateAdapter(StringRedisTemplate stringRedisTemplate, Executor batchExecutor) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.batchExecutor = batchExecutor;
+    }
+    
+    private static Executor defaultBatchExecutor() {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new ThreadFactory() {
+            
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+            
+            private static final String NAME_PREFIX = "REDISMQ-REDIS-BATCH-";
+            
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, NAME_PREFIX + threadNumber.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
     
     
     /**
-     * 执行lua
+     * 执行lua 字符串脚本不缓存,固定的脚本注册到ScriptRegistry
      *
      * @param lua  lua
      * @param keys 键
@@ -39,14 +86,25 @@ public class StringRedisTemplateAdapter implements RedisClient {
      */
     @Override
     public Long executeLua(String lua, List<String> keys, Object... args) {
-        String[] array = Arrays.stream(args).filter(Objects::nonNull).map(RedisMQStringMapper::toJsonStr)
-                .toArray(a -> new String[args.length]);
-        
-        DefaultRedisScript<Long> redisScript = new DefaultRedisScript<>(lua, Long.class);
-        Long execute = stringRedisTemplate.execute(redisScript, keys, array);
+        return stringRedisTemplate.execute(new DefaultRedisScript<>(lua, Long.class), keys, toArgs(args));
+    }
+    
+    /**
+     * DefaultRedisScript执行时先evalsha,NOSCRIPT时自动eval。这里缓存脚本对象避免每次重新计算sha1
+     */
+    @Override
+    public Long executeLua(LuaScript script, List<String> keys, Object... args) {
+        DefaultRedisScript<Long> redisScript = longScripts
+                .computeIfAbsent(script.getSha1(), sha -> new DefaultRedisScript<>(script.getScript(), Long.class));
+        Long execute = stringRedisTemplate.execute(redisScript, keys, (Object[]) toArgs(args));
         return execute;
     }
     
+    private static String[] toArgs(Object[] args) {
+        return Arrays.stream(args).filter(Objects::nonNull).map(RedisMQStringMapper::toJsonStr)
+                .toArray(a -> new String[args.length]);
+    }
+    
     /**
      * 阻塞redis获取set集合中所有的元素
      */
@@ -109,7 +167,7 @@ public class StringRedisTemplateAdapter implements RedisClient {
     
     @Override
     public Object get(String key) {
-        return null;
+        return stringRedisTemplate.opsForValue().get(key);
     }
     
     
@@ -225,6 +283,11 @@ public class StringRedisTemplateAdapter implements RedisClient {
         return stringRedisTemplate.opsForZSet().size(key);
     }
     
+    @Override
+    public List<String> lRange(String key, long start, long end) {
+        return stringRedisTemplate.opsForList().range(key, start, end);
+    }
+    
     
     /**
      * 根据指定的score值的范围来移除成员
@@ -244,36 +307,56 @@ public class StringRedisTemplateAdapter implements RedisClient {
      */
     @Override
     public Map<Message, Double> zrangeMessage(String key,String group, double min, double max, long start, long end) {
-        String lua =
-                "local data = redis.call('zrangebyscore', KEYS[1],ARGV[1], ARGV[2],'WITHSCORES', 'LIMIT', ARGV[3], ARGV[4]);\n"
-                        + "\n" + "local result = {}\n" + "for i=1, #data, 2 do\n"
-                        + "    local message = redis.call('hget', KEYS[1] .. ':body',data[i]);\n"
-                        + "    if (message) then\n" + "        table.insert(result,message);\n"
-                        + "        table.insert(result,data[i+1]);\n" + "    else\n"
-                        + "        redis.call('zrem', KEYS[1],  data[i]);\n" + "    end\n" + "end\n" + "return result;";
+        List<String> keys = new ArrayList<>();
+        keys.add(key);
+        keys.add(key + ":" + group);
         Object[] array = new Object[4];
         array[0] = min;
         array[1] = max == 0D ? Double.MAX_VALUE : max;
         array[2] = start;
         array[3] = end == 0L ? Long.MAX_VALUE : end;
-        List list = luaList(lua, Collections.singletonList(key), array);
+        List list = luaList(ScriptRegistry.ZRANGE_MESSAGE, keys, array);
         Map<Message, Double> newMap = new LinkedHashMap<>();
         for (int i = 0; i < list.size(); i += 2) {
             Object msgObj = list.get(i);
-            Message message = RedisMQStringMapper.toBean(msgObj.toString(), Message.class);
+            Message message = MessageCodecs.decode(msgObj.toString());
             Object scope = list.get(i + 1);
             newMap.put(message, Double.valueOf(scope.toString()));
         }
         return newMap;
     }
     
+    @Override
+    public List<Map<String, String>> xReadGroup(String key, String group, String consumer, int count,
+            long blockMillis) {
+        StreamReadOptions options = StreamReadOptions.empty().count(count);
+        if (blockMillis > 0) {
+            options = options.block(Duration.ofMillis(blockMillis));
+        }
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .read(Consumer.from(group, consumer), options, StreamOffset.create(key, ReadOffset.lastConsumed()));
+        List<Map<String, String>> list = new ArrayList<>();
+        if (CollectionUtils.isEmpty(records)) {
+            return list;
+        }
+        for (MapRecord<String, Object, Object> record : records) {
+            Map<String, String> fields = new LinkedHashMap<>();
+            record.getValue().forEach((k, v) -> fields.put(k.toString(), v.toString()));
+            list.add(fields);
+        }
+        return list;
+    }
+    
     @Override
     public List luaList(String lua, List<String> keys, Object[] args) {
-        String[] array = Arrays.stream(args).filter(Objects::nonNull).map(RedisMQStringMapper::toJsonStr)
-                .toArray(a -> new String[args.length]);
-        
-        DefaultRedisScript<List> redisScript = new DefaultRedisScript<>(lua, List.class);
-        List execute = stringRedisTemplate.execute(redisScript, keys, array);
+        return stringRedisTemplate.execute(new DefaultRedisScript<>(lua, List.class), keys, toArgs(args));
+    }
+    
+    @Override
+    public List luaList(LuaScript script, List<String> keys, Object[] args) {
+        DefaultRedisScript<List> redisScript = listScripts
+                .computeIfAbsent(script.getSha1(), sha -> new DefaultRedisScript<>(script.getScript(), List.class));
+        List execute = stringRedisTemplate.execute(redisScript, keys, (Object[]) toArgs(args));
         return execute;
     }
     
@@ -299,4 +382,9 @@ public class StringRedisTemplateAdapter implements RedisClient {
         return stringRedisTemplate.hasKey(key);
     }
     
+    
+    @Override
+    public RedisBatch batch() {
+        return new StringRedisTemplateBatch(stringRedisTemplate, batchExecutor);
+    }
 }
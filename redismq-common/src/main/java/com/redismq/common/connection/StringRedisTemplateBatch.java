@@ -0,0 +1,109 @@
+package com.redismq.common.connection;
+
+import com.redismq.common.serializer.RedisMQStringMapper;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.util.ClassUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * StringRedisTemplate批量命令 基于executePipelined,lettuce和jedis都使用各自的pipeline实现
+ *
+ * @author hzh
+ * @date 2024/12/06
+ */
+public class StringRedisTemplateBatch implements RedisBatch {
+    
+    private static final boolean LETTUCE_PRESENT = ClassUtils
+            .isPresent("io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands",
+                    StringRedisTemplateBatch.class.getClassLoader());
+    
+    private final StringRedisTemplate stringRedisTemplate;
+    
+    /**
+     * 不是lettuce连接时执行同步pipeline的线程池
+     */
+    private final Executor executor;
+    
+    private final List<BatchCommand> commands = new ArrayList<>();
+    
+    public StringRedisTemplateBatch(StringRedisTemplate stringRedisTemplate, Executor executor) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.executor = executor;
+    }
+    
+    @Override
+    public RedisBatch zSize(String key) {
+        commands.add(new BatchCommand(BatchCommand.Type.ZCARD, key, null, 0, null));
+        return this;
+    }
+    
+    @Override
+    public RedisBatch zAdd(String key, Object value, double score) {
+        String member = RedisMQStringMapper.toJsonStr(value);
+        commands.add(new BatchCommand(BatchCommand.Type.ZADD, key, member, score, null));
+        return this;
+    }
+    
+    @Override
+    public RedisBatch get(String key) {
+        commands.add(new BatchCommand(BatchCommand.Type.GET, key, null, 0, null));
+        return this;
+    }
+    
+    @Override
+    public RedisBatch rPush(String key, List<String> values) {
+        commands.add(new BatchCommand(BatchCommand.Type.RPUSH, key, null, 0, values));
+        return this;
+    }
+    
+    @Override
+    public int size() {
+        return commands.size();
+    }
+    
+    @Override
+    public List<Object> execute() {
+        if (commands.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (BatchCommand command : commands) {
+                    command.apply(ops);
+                }
+                return null;
+            }
+        });
+    }
+    
+    /**
+     * lettuce连接直接使用原生的异步命令,不占用线程。其他连接没有异步api,
+     * 同步pipeline在指定的线程池里执行,会阻塞线程池的一个线程直到返回
+     */
+    @Override
+    public CompletionStage<List<Object>> executeAsync() {
+        if (commands.isEmpty()) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        RedisConnectionFactory connectionFactory = stringRedisTemplate.getRequiredConnectionFactory();
+        if (LETTUCE_PRESENT) {
+            CompletionStage<List<Object>> stage = LettuceBatch.executeAsync(connectionFactory, commands);
+            if (stage != null) {
+                return stage;
+            }
+        }
+        return CompletableFuture.supplyAsync(this::execute, executor);
+    }
+}
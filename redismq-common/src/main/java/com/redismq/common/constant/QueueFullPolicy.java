@@ -0,0 +1,30 @@
+package com.redismq.common.constant;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 队列满了的处理策略
+ *
+ * @author hzh
+ * @date 2024/12/15
+ */
+@Getter
+@AllArgsConstructor
+public enum QueueFullPolicy {
+
+    /**
+     * 直接失败
+     */
+    FAIL_FAST("failFast"),
+    /**
+     * 退避后重新写入 超过重试次数*重试间隔后失败。等待期间不阻塞其他队列的发送
+     */
+    BLOCK("block"),
+    /**
+     * 只保存到服务端的消息存储 状态是失败 可以从服务端查询后补发。发送结果是MessageSpilledException,没有服务端时直接失败
+     */
+    SPILL("spill");
+
+    private final String name;
+}
@@ -0,0 +1,30 @@
+package com.redismq.common.constant;
+
+/**
+ * 队列存储方式
+ *
+ * @author hzh
+ * @date 2024/12/15
+ */
+public class QueueStorage {
+    /**
+     * 每个消费组一个消息id的zset 写入时复制到所有分组
+     */
+    public static final String ZSET = "zset";
+    /**
+     * 虚拟队列一个共享的偏移量日志 分组只保存提交的游标和消费中的消息id。延时队列不支持
+     */
+    public static final String LOG = "log";
+    /**
+     * redis stream 消费组对应XGROUP 阻塞读取不需要拉取通知。延时队列不支持,需要redis 6.2以上
+     */
+    public static final String STREAM = "stream";
+    
+    public static boolean isLog(String storage) {
+        return LOG.equals(storage);
+    }
+    
+    public static boolean isStream(String storage) {
+        return STREAM.equals(storage);
+    }
+}
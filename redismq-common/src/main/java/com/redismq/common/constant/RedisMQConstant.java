@@ -43,6 +43,11 @@ public class RedisMQConstant {
      */
     public static final String REBALANCE_TOPIC = "REBALANCE_TOPIC";
     
+    /**
+     * 消费者组变更的topic
+     */
+    public static final String GROUP_TOPIC = "GROUP_TOPIC";
+    
     /**
      * 客户端
      */
@@ -109,6 +114,10 @@ public class RedisMQConstant {
         return PREFIX + NAMESPACE + SPLITE + SERVER;
     }
     
+    public static String getQueueOffset(String queueName) {
+        return PREFIX + NAMESPACE + SPLITE + "QUEUE_OFFSET" + SPLITE + queueName;
+    }
+    
     public static String getVQueueNameByVQueue(String queue) {
         if (!StringUtils.startsWith(queue, PREFIX + NAMESPACE + SPLITE)) {
             return PREFIX + NAMESPACE + SPLITE + "{" + queue + "}";
@@ -116,6 +125,13 @@ public class RedisMQConstant {
         return queue;
     }
     
+    /**
+     * 单独存储的消息主体 和虚拟队列相同的hash tag
+     */
+    public static String getPayloadKey(String virtualQueue, String msgId) {
+        return getVQueueNameByVQueue(virtualQueue) + SPLITE + "payload" + SPLITE + msgId;
+    }
+    
     public static String getDeadQueueNameByQueue(String queue) {
         if (!StringUtils.startsWith(queue, PREFIX + NAMESPACE + DEAD_NAME + SPLITE)) {
             return PREFIX + NAMESPACE + DEAD_NAME + SPLITE + "{" + queue + "}";
@@ -127,10 +143,24 @@ public class RedisMQConstant {
         return PREFIX + NAMESPACE + SPLITE + TOPIC;
     }
     
+    /**
+     * 虚拟队列的消息通知通道。带上和虚拟队列相同的hash tag,集群下和队列数据落在同一个slot
+     *
+     * @param virtualQueue 虚拟队列
+     * @return {@link String}
+     */
+    public static String getPushTopic(String virtualQueue) {
+        return PREFIX + NAMESPACE + SPLITE + TOPIC + SPLITE + "{" + virtualQueue + "}";
+    }
+    
     public static String getServerTopic() {
         return PREFIX + NAMESPACE + SPLITE + SERVERS;
     }
     
+    public static String getGroupTopic() {
+        return PREFIX + NAMESPACE + SPLITE + GROUP_TOPIC;
+    }
+    
     public static String getRebalanceTopic(String groupId) {
         return PREFIX + NAMESPACE + SPLITE + REBALANCE_TOPIC +SPLITE+groupId;
     }
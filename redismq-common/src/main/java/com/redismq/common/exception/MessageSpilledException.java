@@ -0,0 +1,13 @@
+package com.redismq.common.exception;
+
+/**
+ * 队列满了消息只保存到服务端的消息存储 没有写入redis,可以从服务端查询后补发
+ *
+ * @author hzh
+ * @date 2024/12/15
+ */
+public class MessageSpilledException extends QueueFullException {
+    public MessageSpilledException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,115 @@
+package com.redismq.common.offload;
+
+import com.redismq.common.config.GlobalConfig;
+import com.redismq.common.config.GlobalConfigCache;
+import com.redismq.common.connection.RedisMQClientUtil;
+import com.redismq.common.constant.RedisMQConstant;
+import com.redismq.common.exception.RedisMqException;
+import com.redismq.common.pojo.Message;
+import com.redismq.common.serializer.RedisMQStringMapper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 大消息主体单独存储。超过阈值的主体分块写入虚拟队列下单独的列表key,消息里只保留引用,
+ * 拉取消息的lua脚本和服务端持久化都不再携带主体。消费者在监听方法第一次获取主体时才读取
+ *
+ * @author hzh
+ * @date 2024/12/13
+ */
+public class BodyOffloads {
+    
+    /**
+     * 消息头中记录主体分块数量的key
+     */
+    public static final String HEADER = "redismq.payload";
+    
+    /**
+     * 拆出超过阈值的消息主体 消息主体置空并在消息头记录引用
+     *
+     * @param messages 消息
+     * @return 消息->原始主体对象 没有开启或者都没有超过阈值返回空
+     */
+    public static Map<Message, Object> offload(List<Message> messages) {
+        GlobalConfig globalConfig = GlobalConfigCache.GLOBAL_CONFIG;
+        Map<Message, Object> offloaded = new IdentityHashMap<>();
+        if (globalConfig == null || globalConfig.getOffloadThreshold() <= 0) {
+            return offloaded;
+        }
+        for (Message message : messages) {
+            Object original = message.getBody();
+            if (original == null) {
+                continue;
+            }
+            String body = RedisMQStringMapper.toJsonStr(original);
+            if (body.length() < globalConfig.getOffloadThreshold()) {
+                continue;
+            }
+            offloaded.put(message, original);
+            Map<String, Object> header = message.getHeader() == null ? new HashMap<>() : message.getHeader();
+            header.put(HEADER, chunkCount(body, globalConfig.getOffloadChunkSize()));
+            message.setHeader(header);
+            message.setBody(null);
+        }
+        return offloaded;
+    }
+    
+    /**
+     * 按分块大小拆分主体
+     *
+     * @param virtualQueue 虚拟队列
+     * @param offloaded    消息->原始主体对象
+     * @return 主体key->分块
+     */
+    public static Map<String, List<String>> chunks(String virtualQueue, Map<Message, Object> offloaded) {
+        int chunkSize = GlobalConfigCache.GLOBAL_CONFIG.getOffloadChunkSize();
+        Map<String, List<String>> payloads = new LinkedHashMap<>();
+        offloaded.forEach((message, original) -> {
+            String body = RedisMQStringMapper.toJsonStr(original);
+            List<String> chunks = new ArrayList<>();
+            for (int i = 0; i < body.length(); i += chunkSize) {
+                chunks.add(body.substring(i, Math.min(body.length(), i + chunkSize)));
+            }
+            payloads.put(RedisMQConstant.getPayloadKey(virtualQueue, message.getId()), chunks);
+        });
+        return payloads;
+    }
+    
+    /**
+     * 发送失败时还原消息主体 还原的是原始对象,重试时和第一次发送的主体类型一致
+     */
+    public static void restore(Map<Message, Object> offloaded) {
+        offloaded.forEach((message, body) -> {
+            message.getHeader().remove(HEADER);
+            message.setBody(body);
+        });
+    }
+    
+    /**
+     * 单独存储主体的消息设置延迟加载 监听方法获取主体时才读取redis
+     */
+    public static void lazyLoad(Message message, RedisMQClientUtil redisMQClientUtil) {
+        Map<String, Object> header = message.getHeader();
+        if (header == null || !header.containsKey(HEADER) || message.getBodyLoader() != null) {
+            return;
+        }
+        String virtualQueue = message.getVirtualQueueName();
+        String msgId = message.getId();
+        message.setBodyLoader(() -> {
+            String body = redisMQClientUtil.getPayload(virtualQueue, msgId);
+            if (body == null) {
+                throw new RedisMqException("redismq message payload not found msgId: " + msgId);
+            }
+            return body;
+        });
+    }
+    
+    private static int chunkCount(String body, int chunkSize) {
+        return (body.length() + chunkSize - 1) / chunkSize;
+    }
+}
@@ -0,0 +1,42 @@
+package com.redismq.common.pojo;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量发送结果。按虚拟队列分组写入,一组失败不影响其他组
+ *
+ * @author hzh
+ * @date 2024/12/15
+ */
+@Data
+public class BatchSendResult {
+
+    /**
+     * 发送成功的消息结果 按写入顺序
+     */
+    private List<SendResult> sendResults = new ArrayList<>();
+
+    /**
+     * 发送失败的消息 可以直接重新发送
+     */
+    private List<Message> failedMessages = new ArrayList<>();
+
+    /**
+     * 是否全部发送成功
+     */
+    public boolean isAllSuccess() {
+        return failedMessages.isEmpty();
+    }
+
+    /**
+     * 合并另一个批次的结果
+     */
+    public BatchSendResult merge(BatchSendResult other) {
+        sendResults.addAll(other.getSendResults());
+        failedMessages.addAll(other.getFailedMessages());
+        return this;
+    }
+}
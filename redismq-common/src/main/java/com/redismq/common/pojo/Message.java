@@ -1,12 +1,15 @@
 package com.redismq.common.pojo;
 
 import com.redismq.common.serializer.RedisMQStringMapper;
-import lombok.AllArgsConstructor;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import lombok.Data;
-import org.springframework.beans.BeanUtils;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 import java.io.Serializable;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * @Author: hzh
@@ -14,10 +17,25 @@ import java.util.Map;
  * 消息体
  */
 @Data
-@AllArgsConstructor
+@EqualsAndHashCode(doNotUseGetters = true)
+@ToString(doNotUseGetters = true)
 public class Message implements Serializable {
     public Message() {
     }
+    
+    public Message(Object body, String id, String key, String queue, String tag, String virtualQueueName, Long offset,
+            Long executeScope, Long executeTime, Map<String, Object> header) {
+        this.body = body;
+        this.id = id;
+        this.key = key;
+        this.queue = queue;
+        this.tag = tag;
+        this.virtualQueueName = virtualQueueName;
+        this.offset = offset;
+        this.executeScope = executeScope;
+        this.executeTime = executeTime;
+        this.header = header;
+    }
     // Person 的构造函数私有化
     private Message(Builder builder) {
         this.body = builder.body;
@@ -30,26 +48,74 @@ public class Message implements Serializable {
     
     private static final long serialVersionUID = 1L;
 
+    /**
+     * 拷贝消息。逐个字段复制不走反射,消息头复制一份,消息主体共享引用
+     *
+     * @return {@link Message}
+     */
     public Message deepClone() {
         Message outer = new Message();
-        try { // 将该对象序列化成流,因为写在流里的是对象的一个拷贝，而原对象仍然存在于JVM里面。所以利用这个特性可以实现对象的深拷贝
-            BeanUtils.copyProperties(this,outer);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        outer.body = this.body;
+        outer.rawBody = this.rawBody;
+        outer.bodyLoader = this.bodyLoader;
+        outer.id = this.id;
+        outer.key = this.key;
+        outer.queue = this.queue;
+        outer.tag = this.tag;
+        outer.virtualQueueName = this.virtualQueueName;
+        outer.offset = this.offset;
+        outer.executeScope = this.executeScope;
+        outer.executeTime = this.executeTime;
+        outer.header = this.header == null ? null : new HashMap<>(this.header);
         return outer;
     }
     public <T> T parseJavaBean(Class<T> tClass){
+        if (body == null && rawBody != null) {
+            return RedisMQStringMapper.toBean(rawBody, tClass);
+        }
+        Object body = getBody();
         if (body.getClass().equals(tClass)){
             return (T) body;
         }
         return RedisMQStringMapper.toBean((String)body,tClass);
     }
+    
+    /**
+     * 消息主体 拉取的对象类型主体第一次获取时才转成字符串
+     */
+    public Object getBody() {
+        if (body == null && rawBody != null) {
+            body = RedisMQStringMapper.toJsonStr(rawBody);
+        }
+        if (body == null && bodyLoader != null) {
+            body = bodyLoader.get();
+            bodyLoader = null;
+        }
+        return body;
+    }
+    
+    public void setBody(Object body) {
+        this.body = body;
+        this.rawBody = null;
+        this.bodyLoader = null;
+    }
 
     /**
      * 消息主体  消息都会转为字符串存储
      */
     private Object body;
+    
+    /**
+     * 拉取时还没有解析的消息主体 可以按监听方法的参数类型直接绑定
+     */
+    @ToString.Exclude
+    private transient TokenBuffer rawBody;
+    
+    /**
+     * 单独存储的消息主体 第一次获取主体时加载。打印日志不能触发加载
+     */
+    @ToString.Exclude
+    private transient Supplier<Object> bodyLoader;
 
     /**
      * 消息id
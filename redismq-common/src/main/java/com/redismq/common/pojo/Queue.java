@@ -55,4 +55,14 @@ public class Queue {
      * 虚拟队列数量
      */
     private Integer queueMaxSize;
+    
+    /**
+     * 消息主体编解码器 json kryo或自定义注册的名称
+     */
+    private String bodyCodec;
+    
+    /**
+     * 存储方式 zset或log 延时队列只能使用zset
+     */
+    private String storage;
 }
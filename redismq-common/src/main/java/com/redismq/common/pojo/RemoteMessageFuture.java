@@ -1,5 +1,7 @@
 package com.redismq.common.pojo;
 
+import io.netty.util.Timeout;
+
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -12,6 +14,7 @@ public class RemoteMessageFuture {
     private long timeout;
     private long start = System.currentTimeMillis();
     private transient CompletableFuture<Object> origin = new CompletableFuture<>();
+    private transient volatile Timeout timeoutHandle;
 
     /**
      * Is timeout boolean.
@@ -60,6 +63,22 @@ public class RemoteMessageFuture {
      */
     public void setResultMessage(Object obj) {
         origin.complete(obj);
+        Timeout handle = timeoutHandle;
+        if (handle != null) {
+            handle.cancel();
+        }
+    }
+
+    /**
+     * Sets the timer wheel handle, cancelled once a result is set.
+     *
+     * @param timeoutHandle the timeout handle
+     */
+    public void setTimeoutHandle(Timeout timeoutHandle) {
+        this.timeoutHandle = timeoutHandle;
+        if (origin.isDone()) {
+            timeoutHandle.cancel();
+        }
     }
 
     /**
@@ -0,0 +1,42 @@
+package com.redismq.common.pojo;
+
+import lombok.Data;
+
+/**
+ * 发送结果
+ *
+ * @author hzh
+ * @date 2024/12/02
+ */
+@Data
+public class SendResult {
+
+    /**
+     * 消息id
+     */
+    private String msgId;
+
+    /**
+     * 队列
+     */
+    private String queue;
+
+    /**
+     * 虚拟队列名称
+     */
+    private String virtualQueueName;
+
+    /**
+     * 消息偏移量
+     */
+    private Long offset;
+
+    public static SendResult of(Message message) {
+        SendResult sendResult = new SendResult();
+        sendResult.setMsgId(message.getId());
+        sendResult.setQueue(message.getQueue());
+        sendResult.setVirtualQueueName(message.getVirtualQueueName());
+        sendResult.setOffset(message.getOffset());
+        return sendResult;
+    }
+}
@@ -0,0 +1,32 @@
+package com.redismq.common.serializer;
+
+/**
+ * 消息主体编解码器。按队列配置,编码后的主体以字符串存储,编解码器名称写入消息头
+ *
+ * @author hzh
+ * @date 2024/12/11
+ */
+public interface BodyCodec {
+    
+    /**
+     * 编解码器名称 对应队列配置bodyCodec
+     */
+    String getName();
+    
+    /**
+     * 编码消息主体
+     *
+     * @param body 消息主体
+     * @return 编码后的字符串
+     */
+    String encode(Object body);
+    
+    /**
+     * 解码成监听方法的参数类型
+     *
+     * @param data 编码后的字符串
+     * @param type 参数类型 Object表示使用编码时的类型
+     * @return 消息主体
+     */
+    <T> T decode(String data, Class<T> type);
+}
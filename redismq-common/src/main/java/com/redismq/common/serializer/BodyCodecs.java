@@ -0,0 +1,83 @@
+package com.redismq.common.serializer;
+
+import com.redismq.common.exception.RedisMqException;
+import com.redismq.common.pojo.Message;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.util.ClassUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 消息主体编解码器管理
+ *
+ * @author hzh
+ * @date 2024/12/11
+ */
+public class BodyCodecs {
+    
+    /**
+     * 消息头中记录主体编解码器的key
+     */
+    public static final String HEADER = "redismq.bodyCodec";
+    
+    private static final Map<String, BodyCodec> CODECS = new ConcurrentHashMap<>();
+    
+    static {
+        register(new JsonBodyCodec());
+        //kryo由redisson引入 没有依赖时不注册
+        if (ClassUtils.isPresent("com.esotericsoftware.kryo.Kryo", BodyCodecs.class.getClassLoader())) {
+            register(new KryoBodyCodec());
+        }
+    }
+    
+    /**
+     * 注册自定义编解码器 如smile protobuf
+     */
+    public static BodyCodec register(BodyCodec codec) {
+        CODECS.put(codec.getName(), codec);
+        return codec;
+    }
+    
+    public static BodyCodec get(String name) {
+        BodyCodec codec = CODECS.get(name);
+        if (codec == null) {
+            throw new RedisMqException("redismq body codec not found: " + name);
+        }
+        return codec;
+    }
+    
+    /**
+     * 按队列配置编码消息主体 json不处理
+     */
+    public static void encode(Message message, String codecName) {
+        if (StringUtils.isBlank(codecName) || JsonBodyCodec.NAME.equals(codecName) || message.getBody() == null) {
+            return;
+        }
+        Map<String, Object> header = message.getHeader();
+        if (header != null && header.containsKey(HEADER)) {
+            return;
+        }
+        BodyCodec codec = get(codecName);
+        message.setBody(codec.encode(message.getBody()));
+        header = header == null ? new HashMap<>() : header;
+        header.put(HEADER, codec.getName());
+        message.setHeader(header);
+    }
+    
+    /**
+     * 消息主体使用的编解码器 json或者没有记录返回null
+     */
+    public static BodyCodec of(Message message) {
+        Map<String, Object> header = message.getHeader();
+        if (header == null) {
+            return null;
+        }
+        Object name = header.get(HEADER);
+        if (name == null || JsonBodyCodec.NAME.equals(name)) {
+            return null;
+        }
+        return get(name.toString());
+    }
+}
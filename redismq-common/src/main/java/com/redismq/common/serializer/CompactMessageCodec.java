@@ -0,0 +1,243 @@
+package com.redismq.common.serializer;
+
+import com.redismq.common.exception.RedisMqException;
+import com.redismq.common.pojo.Message;
+
+import java.util.Map;
+
+/**
+ * 紧凑格式编解码器。不重复写字段名,字段按固定顺序写入,长度和数字使用变长整数。
+ * <p>
+ * 格式: 魔数 版本 标记位 id key queue tag virtualQueueName [executeTime] 主体类型 主体 [header] [偏移量尾部]
+ * <p>
+ * redis和rpc都是按字符串传输的,变长整数每个字符只使用低7位,其中0x40表示后面还有,
+ * 这样所有控制字符都是ASCII,经过UTF-8编解码后长度和内容都不会变化。
+ * 偏移量尾部格式: 0x1F 偏移量 , 分数。普通队列由生产者写入前分配偏移量,编码时由本类直接写入尾部;
+ * 日志队列和stream队列的偏移量在脚本里分配,由putLogMessage.lua和putStreamMessage.lua追加尾部
+ *
+ * @author hzh
+ * @date 2024/12/10
+ */
+public class CompactMessageCodec implements MessageCodec {
+    
+    public static final String NAME = "compact";
+    
+    /**
+     * 魔数 json格式不会以这个字符开头
+     */
+    public static final char MAGIC = '\u001E';
+    
+    /**
+     * 偏移量尾部的分隔符
+     */
+    public static final char TRAILER = '\u001F';
+    
+    private static final char VERSION_1 = 1;
+    
+    private static final int FLAG_EXECUTE_TIME = 1;
+    
+    private static final int FLAG_HEADER = 1 << 1;
+    
+    private static final char BODY_NULL = 'N';
+    
+    private static final char BODY_STRING = 'S';
+    
+    private static final char BODY_JSON = 'J';
+    
+    @Override
+    public String getName() {
+        return NAME;
+    }
+    
+    @Override
+    public boolean canDecode(String data) {
+        return data != null && data.length() > 1 && data.charAt(0) == MAGIC;
+    }
+    
+    @Override
+    public String encode(Message message) {
+        int flags = 0;
+        if (message.getExecuteTime() != null) {
+            flags |= FLAG_EXECUTE_TIME;
+        }
+        Map<String, Object> header = message.getHeader();
+        if (header != null) {
+            flags |= FLAG_HEADER;
+        }
+        StringBuilder sb = new StringBuilder(128);
+        sb.append(MAGIC).append(VERSION_1);
+        writeVarLong(sb, flags);
+        writeString(sb, message.getId());
+        writeString(sb, message.getKey());
+        writeString(sb, message.getQueue());
+        writeString(sb, message.getTag());
+        writeString(sb, message.getVirtualQueueName());
+        if (message.getExecuteTime() != null) {
+            writeVarLong(sb, zigZag(message.getExecuteTime()));
+        }
+        writeBody(sb, message);
+        if (header != null) {
+            writeString(sb, RedisMQStringMapper.toJsonStr(header));
+        }
+        //已经分配了偏移量的消息 和lua脚本追加的格式一致
+        if (message.getOffset() != null) {
+            long scope = message.getExecuteScope() == null ? message.getOffset() : message.getExecuteScope();
+            sb.append(TRAILER).append(message.getOffset()).append(',').append(scope);
+        }
+        return sb.toString();
+    }
+    
+    private void writeBody(StringBuilder sb, Message message) {
+        Object body = message.getRawBody() != null ? message.getRawBody() : message.getBody();
+        if (body == null) {
+            sb.append(BODY_NULL);
+        } else if (body instanceof String) {
+            String str = (String) body;
+            sb.append(JsonSerializerUtil.isJson(str) ? BODY_JSON : BODY_STRING);
+            writeString(sb, str);
+        } else {
+            sb.append(BODY_JSON);
+            writeString(sb, RedisMQStringMapper.toJsonStr(body));
+        }
+    }
+    
+    @Override
+    public Message decode(String data) {
+        if (!canDecode(data)) {
+            throw new RedisMqException("redismq compact message codec unknown data");
+        }
+        if (data.charAt(1) != VERSION_1) {
+            throw new RedisMqException("redismq compact message codec unsupported version: " + (int) data.charAt(1));
+        }
+        Reader reader = new Reader(data, 2);
+        int flags = (int) reader.readVarLong();
+        Message message = new Message();
+        //缺少的字段和json格式保持一致
+        message.setOffset(0L);
+        message.setExecuteScope(0L);
+        message.setExecuteTime(0L);
+        message.setId(reader.readString());
+        String key = reader.readString();
+        if (key != null) {
+            message.setKey(key);
+        }
+        message.setQueue(reader.readString());
+        String tag = reader.readString();
+        if (tag != null) {
+            message.setTag(tag);
+        }
+        message.setVirtualQueueName(reader.readString());
+        if ((flags & FLAG_EXECUTE_TIME) != 0) {
+            message.setExecuteTime(unZigZag(reader.readVarLong()));
+        }
+        char bodyType = reader.readChar();
+        if (bodyType == BODY_STRING) {
+            message.setBody(reader.readString());
+        } else if (bodyType == BODY_JSON) {
+            message.setBody(readJsonBody(reader.readString()));
+        } else if (bodyType != BODY_NULL) {
+            throw new RedisMqException("redismq compact message codec unknown body type: " + bodyType);
+        }
+        if ((flags & FLAG_HEADER) != 0) {
+            message.setHeader(RedisMQStringMapper.toMap(reader.readString()));
+        }
+        if (reader.hasMore() && reader.readChar() == TRAILER) {
+            String trailer = reader.remaining();
+            int split = trailer.indexOf(',');
+            message.setOffset(Long.parseLong(trailer.substring(0, split)));
+            message.setExecuteScope(Long.parseLong(trailer.substring(split + 1)));
+        }
+        return message;
+    }
+    
+    /**
+     * 对象和数组保持字符串 监听方法按参数类型解析一次。其他json值和json格式解析的类型一致
+     */
+    private Object readJsonBody(String json) {
+        if (JsonSerializerUtil.isJson(json)) {
+            return json;
+        }
+        return RedisMQStringMapper.toBean(json, Object.class);
+    }
+    
+    private static void writeString(StringBuilder sb, String str) {
+        //0表示null 其他是长度+1
+        if (str == null) {
+            writeVarLong(sb, 0);
+            return;
+        }
+        writeVarLong(sb, str.length() + 1L);
+        sb.append(str);
+    }
+    
+    private static void writeVarLong(StringBuilder sb, long value) {
+        while ((value & ~0x3FL) != 0) {
+            sb.append((char) ((value & 0x3F) | 0x40));
+            value >>>= 6;
+        }
+        sb.append((char) value);
+    }
+    
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+    
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    private static class Reader {
+        
+        private final String data;
+        
+        private int index;
+        
+        private Reader(String data, int index) {
+            this.data = data;
+            this.index = index;
+        }
+        
+        private char readChar() {
+            if (index >= data.length()) {
+                throw new RedisMqException("redismq compact message codec data truncated");
+            }
+            return data.charAt(index++);
+        }
+        
+        private long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            char c;
+            do {
+                c = readChar();
+                value |= (long) (c & 0x3F) << shift;
+                shift += 6;
+            } while ((c & 0x40) != 0);
+            return value;
+        }
+        
+        private String readString() {
+            long length = readVarLong();
+            if (length == 0) {
+                return null;
+            }
+            int end = index + (int) (length - 1);
+            if (end > data.length()) {
+                throw new RedisMqException("redismq compact message codec data truncated");
+            }
+            String str = data.substring(index, end);
+            index = end;
+            return str;
+        }
+        
+        private boolean hasMore() {
+            return index < data.length();
+        }
+        
+        private String remaining() {
+            String str = data.substring(index);
+            index = data.length();
+            return str;
+        }
+    }
+}
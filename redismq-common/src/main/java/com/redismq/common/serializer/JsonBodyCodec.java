@@ -0,0 +1,27 @@
+package com.redismq.common.serializer;
+
+/**
+ * json主体 默认方式。主体原样放在消息里 由消息格式一起序列化
+ *
+ * @author hzh
+ * @date 2024/12/11
+ */
+public class JsonBodyCodec implements BodyCodec {
+    
+    public static final String NAME = "json";
+    
+    @Override
+    public String getName() {
+        return NAME;
+    }
+    
+    @Override
+    public String encode(Object body) {
+        return RedisMQStringMapper.toJsonStr(body);
+    }
+    
+    @Override
+    public <T> T decode(String data, Class<T> type) {
+        return RedisMQStringMapper.toBean(data, type);
+    }
+}
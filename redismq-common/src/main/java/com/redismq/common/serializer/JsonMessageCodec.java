@@ -0,0 +1,34 @@
+package com.redismq.common.serializer;
+
+import com.redismq.common.pojo.Message;
+
+/**
+ * json格式 默认的编解码器
+ *
+ * @author hzh
+ * @date 2024/12/10
+ */
+public class JsonMessageCodec implements MessageCodec {
+    
+    public static final String NAME = "json";
+    
+    @Override
+    public String getName() {
+        return NAME;
+    }
+    
+    @Override
+    public String encode(Message message) {
+        return RedisMQStringMapper.toJsonStr(message);
+    }
+    
+    @Override
+    public Message decode(String data) {
+        return RedisMQStringMapper.toBean(data, Message.class);
+    }
+    
+    @Override
+    public boolean canDecode(String data) {
+        return data != null && !data.isEmpty() && data.charAt(0) == '{';
+    }
+}
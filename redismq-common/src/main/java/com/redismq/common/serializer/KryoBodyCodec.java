@@ -0,0 +1,69 @@
+package com.redismq.common.serializer;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+import com.esotericsoftware.kryo.util.Pool;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+import java.util.Base64;
+
+/**
+ * kryo二进制主体。写入类型信息,不需要提前注册类,适合生产者和消费者都由自己维护的内部事件。
+ * redis按字符串存储,二进制使用base64编码
+ *
+ * @author hzh
+ * @date 2024/12/11
+ */
+public class KryoBodyCodec implements BodyCodec {
+    
+    public static final String NAME = "kryo";
+    
+    private final Pool<Kryo> kryoPool = new Pool<Kryo>(true, false, 16) {
+        @Override
+        protected Kryo create() {
+            Kryo kryo = new Kryo();
+            kryo.setRegistrationRequired(false);
+            kryo.setReferences(true);
+            kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+            kryo.setClassLoader(Thread.currentThread().getContextClassLoader());
+            return kryo;
+        }
+    };
+    
+    @Override
+    public String getName() {
+        return NAME;
+    }
+    
+    @Override
+    public String encode(Object body) {
+        Kryo kryo = kryoPool.obtain();
+        try (Output output = new Output(256, -1)) {
+            kryo.writeClassAndObject(output, body);
+            return Base64.getEncoder().encodeToString(output.toBytes());
+        } finally {
+            kryoPool.free(kryo);
+        }
+    }
+    
+    @Override
+    public <T> T decode(String data, Class<T> type) {
+        Object body;
+        Kryo kryo = kryoPool.obtain();
+        try (Input input = new Input(Base64.getDecoder().decode(data))) {
+            body = kryo.readClassAndObject(input);
+        } finally {
+            kryoPool.free(kryo);
+        }
+        if (body == null || type.isInstance(body)) {
+            return (T) body;
+        }
+        //参数类型和发送的类型不一致时按字段转换
+        if (type.equals(String.class)) {
+            return (T) RedisMQStringMapper.toJsonStr(body);
+        }
+        return RedisMQStringMapper.STRING_MAPPER.convertValue(body, type);
+    }
+}
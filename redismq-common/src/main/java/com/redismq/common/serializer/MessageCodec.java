@@ -0,0 +1,38 @@
+package com.redismq.common.serializer;
+
+import com.redismq.common.pojo.Message;
+
+/**
+ * 消息编解码器。决定消息在redis的body hash和rpc中的存储格式
+ *
+ * @author hzh
+ * @date 2024/12/10
+ */
+public interface MessageCodec {
+    
+    /**
+     * 编解码器名称 对应配置spring.redismq.global-config.message-codec
+     */
+    String getName();
+    
+    /**
+     * 编码
+     *
+     * @param message 消息
+     * @return 存储的字符串
+     */
+    String encode(Message message);
+    
+    /**
+     * 解码
+     *
+     * @param data 存储的字符串
+     * @return {@link Message}
+     */
+    Message decode(String data);
+    
+    /**
+     * 是否是这个编解码器写入的数据 用于格式迁移期间同时读取新旧格式
+     */
+    boolean canDecode(String data);
+}
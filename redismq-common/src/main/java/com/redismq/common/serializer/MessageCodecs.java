@@ -0,0 +1,68 @@
+package com.redismq.common.serializer;
+
+import com.redismq.common.config.GlobalConfig;
+import com.redismq.common.config.GlobalConfigCache;
+import com.redismq.common.exception.RedisMqException;
+import com.redismq.common.pojo.Message;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 消息编解码器管理。写入使用配置的编解码器,读取按数据格式自动选择,方便新旧格式迁移
+ *
+ * @author hzh
+ * @date 2024/12/10
+ */
+public class MessageCodecs {
+    
+    private static final Map<String, MessageCodec> CODECS = new ConcurrentHashMap<>();
+    
+    public static final MessageCodec JSON = register(new JsonMessageCodec());
+    
+    public static final MessageCodec COMPACT = register(new CompactMessageCodec());
+    
+    /**
+     * 注册自定义编解码器
+     */
+    public static MessageCodec register(MessageCodec codec) {
+        CODECS.put(codec.getName(), codec);
+        return codec;
+    }
+    
+    /**
+     * 当前命名空间配置的编解码器
+     */
+    public static MessageCodec current() {
+        GlobalConfig globalConfig = GlobalConfigCache.GLOBAL_CONFIG;
+        if (globalConfig == null || globalConfig.getMessageCodec() == null) {
+            return JSON;
+        }
+        MessageCodec codec = CODECS.get(globalConfig.getMessageCodec());
+        if (codec == null) {
+            throw new RedisMqException("redismq message codec not found: " + globalConfig.getMessageCodec());
+        }
+        return codec;
+    }
+    
+    public static String encode(Message message) {
+        return current().encode(message);
+    }
+    
+    /**
+     * 解码 优先使用当前配置的编解码器 不是这个格式的再找其他编解码器
+     */
+    public static Message decode(String data) {
+        MessageCodec current = current();
+        if (current.canDecode(data)) {
+            return current.decode(data);
+        }
+        for (MessageCodec codec : CODECS.values()) {
+            if (codec != current && codec.canDecode(data)) {
+                return codec.decode(data);
+            }
+        }
+        //无法识别的按json解析 和之前的行为保持一致
+        return JSON.decode(data);
+    }
+}
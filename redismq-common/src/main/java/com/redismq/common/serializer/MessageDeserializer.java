@@ -1,11 +1,10 @@
 package com.redismq.common.serializer;
 
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
-import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.redismq.common.pojo.Message;
 
 import java.io.IOException;
@@ -14,6 +13,8 @@ import java.util.Map;
 /**
  * @author hzh
  * @date 2020/11/18 18:21 自定义刷新令牌json解析器
+ * 按字段流式解析,不再构建JsonNode树。对象和数组类型的消息主体只缓存token,
+ * 由监听方法按参数类型直接绑定,需要字符串时再生成
  */
 public class MessageDeserializer extends StdDeserializer<Message> {
     
@@ -24,90 +25,107 @@ public class MessageDeserializer extends StdDeserializer<Message> {
     @Override
     public Message deserialize(JsonParser jsonParser, DeserializationContext deserializationContext)
             throws IOException {
-        //获取ObjectMapper
-        ObjectMapper mapper = (ObjectMapper) jsonParser.getCodec();
-        //读取节点
-        JsonNode jsonNode = mapper.readTree(jsonParser);
-        //jsonNode获取字段
-        JsonNode body = jsonNode.has("body") ? jsonNode.get("body") : MissingNode.getInstance();
-        JsonNode id = jsonNode.has("id") ? jsonNode.get("id") : MissingNode.getInstance();
-        JsonNode key = jsonNode.has("key") ? jsonNode.get("key") : MissingNode.getInstance();
-        JsonNode queue = jsonNode.has("queue") ? jsonNode.get("queue") : MissingNode.getInstance();
-        JsonNode tag = jsonNode.has("tag") ? jsonNode.get("tag") : MissingNode.getInstance();
-        JsonNode offset = jsonNode.has("offset") ? jsonNode.get("offset") : MissingNode.getInstance();
-        JsonNode executeTime = jsonNode.has("executeTime") ? jsonNode.get("executeTime") : MissingNode.getInstance();
-        JsonNode executorScope = jsonNode.has("executorScope") ? jsonNode.get("executorScope") : MissingNode.getInstance();
-        JsonNode virtualQueueName =
-                jsonNode.has("virtualQueueName") ? jsonNode.get("virtualQueueName") : MissingNode.getInstance();
-        JsonNode header = jsonNode.has("header") ? jsonNode.get("header") : MissingNode.getInstance();
-        
         Message message = new Message();
-        // 现在你可以使用JsonNode的方法来确定它的具体类型
-        if (!body.isMissingNode()) {
-            //默认转字符串
-            Object obj = body.toString();
-            if (body.isObject()) {
-                obj = body.toString();
-            }
-            else if (body.isArray()) {
-                obj = body.toString();
-            }
-            else if (body.isPojo()) {
-                obj = body.toString();
-            }
-            else if (body.isDouble()) {
-                obj = body.asDouble();
-                // 处理数组节点
-            } else if (body.isFloat()) {
-                obj = body.floatValue();
-            } else if (body.isBinary()) {
-                obj = body.binaryValue();
-            } else if (body.isBigDecimal()) {
-                obj = body.isBigDecimal();
-            } else if (body.isBigInteger()) {
-                obj = body.bigIntegerValue();
-            } else if (body.isTextual()) {
-                obj = body.asText();
-                // 处理文本值
-            }
-            else if (body.isLong()) {
-                obj = body.asLong();
-                // 处理布尔值
-            }
-            else if (body.isInt()) {
-                obj = body.asInt();
-                // 处理数值
-            } else if (body.isBoolean()) {
-                obj = body.asBoolean();
-                // 处理布尔值
-            }  else if (body.isShort()) {
-                obj = body.shortValue();
-                // 处理布尔值
-            }
-            else if (body.isNull()) {
-                obj = null;
-                // 处理null值
-            }
-            message.setBody(obj);
-            
+        //缺少的字段和原来保持一致 字符串为空 数字为0
+        message.setId("");
+        message.setKey("");
+        message.setQueue("");
+        message.setTag("");
+        message.setVirtualQueueName("");
+        message.setOffset(0L);
+        message.setExecuteTime(0L);
+        message.setExecuteScope(0L);
+        
+        JsonToken token = jsonParser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            token = jsonParser.nextToken();
         }
-        message.setId(id.asText());
-        message.setKey(key.asText());
-        message.setQueue(queue.asText());
-        message.setTag(tag.asText());
-        message.setOffset(offset.asLong());
-        message.setExecuteTime(executeTime.asLong());
-        message.setVirtualQueueName(virtualQueueName.asText());
-        message.setExecuteScope(executorScope.asLong());
-        if (!header.isMissingNode()) {
-            JsonParser traverse = header.traverse();
-            String valueAsString = traverse.getValueAsString();
-            if (valueAsString!=null) {
-                Map<String, Object> map = mapper.readValue(traverse, Map.class);
-                message.setHeader(map);
+        for (; token == JsonToken.FIELD_NAME; token = jsonParser.nextToken()) {
+            String field = jsonParser.getCurrentName();
+            JsonToken value = jsonParser.nextToken();
+            switch (field) {
+                case "body":
+                    readBody(jsonParser, deserializationContext, value, message);
+                    break;
+                case "id":
+                    message.setId(text(jsonParser, value));
+                    break;
+                case "key":
+                    message.setKey(text(jsonParser, value));
+                    break;
+                case "queue":
+                    message.setQueue(text(jsonParser, value));
+                    break;
+                case "tag":
+                    message.setTag(text(jsonParser, value));
+                    break;
+                case "virtualQueueName":
+                    message.setVirtualQueueName(text(jsonParser, value));
+                    break;
+                case "offset":
+                    message.setOffset(jsonParser.getValueAsLong());
+                    break;
+                case "executeTime":
+                    message.setExecuteTime(jsonParser.getValueAsLong());
+                    break;
+                case "executorScope":
+                    message.setExecuteScope(jsonParser.getValueAsLong());
+                    break;
+                case "header":
+                    if (value == JsonToken.START_OBJECT) {
+                        Map<String, Object> header = deserializationContext.readValue(jsonParser, Map.class);
+                        message.setHeader(header);
+                    }
+                    break;
+                default:
+                    jsonParser.skipChildren();
             }
         }
-        
         return message;
     }
+    
+    private void readBody(JsonParser jsonParser, DeserializationContext deserializationContext, JsonToken value,
+            Message message) throws IOException {
+        switch (value) {
+            case START_OBJECT:
+            case START_ARRAY:
+                //对象和数组只缓存token,按监听方法的参数类型直接绑定
+                TokenBuffer buffer = new TokenBuffer(jsonParser, deserializationContext);
+                buffer.copyCurrentStructure(jsonParser);
+                message.setRawBody(buffer);
+                break;
+            case VALUE_STRING:
+                message.setBody(jsonParser.getText());
+                break;
+            case VALUE_NUMBER_INT:
+                message.setBody(jsonParser.getNumberValue());
+                break;
+            case VALUE_NUMBER_FLOAT:
+                message.setBody(jsonParser.getDoubleValue());
+                break;
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                message.setBody(jsonParser.getBooleanValue());
+                break;
+            case VALUE_EMBEDDED_OBJECT:
+                message.setBody(jsonParser.getEmbeddedObject());
+                break;
+            case VALUE_NULL:
+                message.setBody(null);
+                break;
+            default:
+                message.setBody(jsonParser.getText());
+        }
+    }
+    
+    private String text(JsonParser jsonParser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return "null";
+        }
+        if (value.isStructStart()) {
+            jsonParser.skipChildren();
+            return "";
+        }
+        return jsonParser.getText();
+    }
 }
@@ -28,7 +28,11 @@ public class MessageSerializer extends StdSerializer<Message> {
         // JsonGenerator中有很多有用的数据，比如gen.getOutputContext()可以拿到原始的字段属性
         // 调用JsonGenerator的write开头的方法以写入序列化后的数据
         jsonGenerator.writeStartObject();
-        if (message.getBody() instanceof String) {
+        if (message.getRawBody() != null) {
+            //拉取后还没有解析的主体 原样写回
+            jsonGenerator.writeFieldName("body");
+            message.getRawBody().serialize(jsonGenerator);
+        } else if (message.getBody() instanceof String) {
             String bodyStr = message.getBody().toString();
             if (JsonSerializerUtil.isJson(bodyStr)) {
                 bodyStr = removeAll(bodyStr, '\r', '\n', ' ');
@@ -40,14 +44,19 @@ public class MessageSerializer extends StdSerializer<Message> {
         } else {
             jsonGenerator.writeObjectField("body", message.getBody());
         }
-        jsonGenerator.writeObjectField("offset", message.getOffset());
+        // 偏移量由redis写入消息时分配,未分配时不输出,由lua脚本追加
+        if (message.getOffset() != null) {
+            jsonGenerator.writeObjectField("offset", message.getOffset());
+        }
         jsonGenerator.writeStringField("id", message.getId());
         jsonGenerator.writeStringField("key", message.getKey());
         jsonGenerator.writeStringField("queue", message.getQueue());
         jsonGenerator.writeStringField("tag", message.getTag());
         jsonGenerator.writeStringField("virtualQueueName", message.getVirtualQueueName());
         jsonGenerator.writeObjectField("executeTime",message.getExecuteTime());
-        jsonGenerator.writeObjectField("executorScope",message.getExecuteScope());
+        if (message.getExecuteScope() != null) {
+            jsonGenerator.writeObjectField("executorScope", message.getExecuteScope());
+        }
         
         Map<String, Object> header = message.getHeader();
         if (header != null) {
@@ -3,13 +3,16 @@ package com.redismq.common.serializer;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateDeserializer;
 import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
 import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateSerializer;
@@ -21,6 +24,7 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -32,6 +36,11 @@ public class RedisMQStringMapper {
     // 定义jackson对象
     
     public static final ObjectMapper STRING_MAPPER = new ObjectMapper();
+    
+    /**
+     * 按类型缓存的ObjectReader 避免每次反序列化都查找反序列化器
+     */
+    private static final Map<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
     static {
         //在解析json的时候忽略字段名字不对应的会报错的情况  如usernamexxx字段映射到User实体类
         STRING_MAPPER.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
@@ -99,18 +108,35 @@ public class RedisMQStringMapper {
         }
     }
 
+    public static ObjectReader readerFor(Class<?> beanType) {
+        return READERS.computeIfAbsent(beanType, STRING_MAPPER::readerFor);
+    }
+
     // 将json数据转换成pojo对象
     public static <T> T toBean(String json, Class<T> beanType) {
         if (beanType.equals(String.class)){
             return (T)json;
         }
         try {
-            T t = STRING_MAPPER.readValue(json, beanType);
+            T t = readerFor(beanType).readValue(json);
+            return t;
+        } catch (Exception e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+    // 将缓存的json token直接绑定成pojo对象 不经过字符串
+    public static <T> T toBean(TokenBuffer buffer, Class<T> beanType) {
+        if (beanType.equals(String.class)){
+            return (T) toJsonStr(buffer);
+        }
+        try (JsonParser parser = buffer.asParser()) {
+            T t = readerFor(beanType).readValue(parser);
             return t;
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
     }
+    
     public static <T> T toBean(byte[] bytes, Class<T> beanType) {
         try {
             T t = STRING_MAPPER.readValue(bytes, beanType);
@@ -2,7 +2,9 @@ package com.redismq.common.util;
 
 
 import com.redismq.common.pojo.AddressInfo;
+import com.redismq.common.pojo.Message;
 import com.redismq.common.pojo.RemoteMessage;
+import com.redismq.common.serializer.MessageCodecs;
 import com.redismq.common.serializer.RedisMQStringMapper;
 
 import java.util.UUID;
@@ -12,7 +14,8 @@ public class RpcMessageUtil {
         RemoteMessage rpcMessage = new RemoteMessage();
         rpcMessage.setId(UUID.randomUUID().toString());
         rpcMessage.setMessageType(messageType);
-        rpcMessage.setBody(RedisMQStringMapper.toJsonStr(msg));
+        //消息按配置的格式编码 服务端自动识别
+        rpcMessage.setBody(msg instanceof Message ? MessageCodecs.encode((Message) msg) : RedisMQStringMapper.toJsonStr(msg));
         rpcMessage.setAddressInfo(addressInfo);
         return rpcMessage;
     }
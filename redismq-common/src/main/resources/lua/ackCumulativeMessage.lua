@@ -0,0 +1,91 @@
+-- 累计确认 普通队列分数就是偏移量
+-- 1.删除组内本次投递的最小偏移量到确认偏移量之间的消息 每次最多一批,返回的第一个值是本次按范围删除的数量,满一批时调用方继续调用
+--   范围内的消息比本次投递的多,说明有偏移量更小的消息晚写入,还没有被拉取,这时只按id删除本次投递的消息
+-- 2.乱序完成的消息单独删除
+-- 3.消息体引用计数减一 所有分组都已经ack的消息删除消息体
+-- 4.判断此次消息的偏移量是否大于当前消息组偏移量，进行替换
+local result={};
+local messageIdQueue=KEYS[1];
+local offsetGroup= KEYS[4];
+local orginalQueueName =KEYS[5];
+
+local ackOffset = tonumber(ARGV[1]);
+local msgIds = ARGV[2];
+local minOffset = tonumber(ARGV[3]);
+local deliveredCount = tonumber(ARGV[4]);
+local rangeIds = ARGV[5];
+
+local payloadPrefix = string.sub(KEYS[2], 1, -6) .. ':payload:';
+local refsKey = string.sub(KEYS[2], 1, -6) .. ':refs';
+
+-- 消息体引用计数减一 减到0删除消息体。没有计数的旧消息检查其他分组是否还有
+local function release(msgId)
+    if redis.call('HEXISTS', refsKey, msgId) == 1 then
+        if redis.call('HINCRBY', refsKey, msgId, -1) > 0 then
+            return;
+        end
+        redis.call('hdel', refsKey, msgId);
+    else
+        for queueGroup in KEYS[3]:gmatch("([^,]+)") do
+            if redis.call('ZSCORE', queueGroup, msgId) then
+                return;
+            end
+        end
+    end
+    table.insert(result, redis.call('hdel', KEYS[2], msgId));
+    redis.call('del', payloadPrefix .. msgId);
+end
+
+-- 其他分组落后太多的消息 每次最多清理一批
+local function purge(currentOffset)
+    if not currentOffset then
+        return;
+    end
+    for msgQueue in KEYS[6]:gmatch("([^,]+)") do
+        local data = redis.call('ZRANGEBYSCORE', msgQueue, 0, currentOffset - (tonumber(KEYS[7])-1), 'LIMIT', 0, 100);
+        for i, messageId in ipairs(data) do
+            if redis.call('zrem', msgQueue, messageId) == 1 then
+                release(messageId);
+            end
+        end
+    end
+end
+
+local removed = 0;
+if ackOffset >= 0 and deliveredCount > 0 then
+    if redis.call('ZCOUNT', messageIdQueue, minOffset, ackOffset) > deliveredCount then
+        for msgId in rangeIds:gmatch("([^,]+)") do
+            if redis.call('zrem', messageIdQueue, msgId) == 1 then
+                release(msgId);
+            end
+        end
+    else
+        local ids = redis.call('ZRANGEBYSCORE', messageIdQueue, minOffset, ackOffset, 'LIMIT', 0, 100);
+        if #ids > 0 then
+            -- 范围内分数最小的一批 排名连续
+            local first = redis.call('ZRANK', messageIdQueue, ids[1]);
+            removed = redis.call('ZREMRANGEBYRANK', messageIdQueue, first, first + #ids - 1);
+            for i, msgId in ipairs(ids) do
+                release(msgId);
+            end
+        end
+    end
+end
+table.insert(result, 1, removed);
+
+for msgId in msgIds:gmatch("([^,]+)") do
+    local r1 = redis.call('zrem', messageIdQueue, msgId);
+    table.insert(result, r1);
+    if r1 == 1 then
+        release(msgId);
+    end
+end
+
+local currentOffset = redis.call('ZSCORE', offsetGroup, orginalQueueName);
+purge(currentOffset);
+
+if currentOffset and ackOffset > tonumber(currentOffset) then
+    redis.call('zadd', offsetGroup, ackOffset, orginalQueueName);
+end
+
+return result;
@@ -0,0 +1,54 @@
+-- 共享日志确认
+-- 1.删除分组消费中的消息id  偏移量小于等于累计确认偏移量的一次删除
+-- 2.游标提交到消费中最小的偏移量之前 没有消费中的消息提交到已经读取的位置
+-- 3.所有分组游标都经过的日志和消息体删除 落后太多的分组不再等待
+-- 返回 第一个值是确认的数量,后面是删除的消息中主体单独存储的消息id,由调用方删除主体
+-- KEYS[1] 分组消费中的消息id  KEYS[2] 消息体  KEYS[3] 分组游标  KEYS[4] 虚拟队列日志
+-- ARGV[1] 分组  ARGV[2] 累计确认的偏移量 -1没有  ARGV[3] 确认的消息id 逗号分隔  ARGV[4] 所有分组 逗号分隔  ARGV[5] 分组偏移量最大落后值
+local pendingZset = KEYS[1];
+local cursorHash = KEYS[3];
+local group = ARGV[1];
+local ackOffset = tonumber(ARGV[2]);
+
+local acked = 0;
+if ackOffset >= 0 then
+    acked = acked + redis.call('zremrangebyscore', pendingZset, '-inf', ackOffset);
+end
+for msgId in ARGV[3]:gmatch("([^,]+)") do
+    acked = acked + redis.call('zrem', pendingZset, msgId);
+end
+local result = {acked};
+
+local cursor;
+local first = redis.call('zrange', pendingZset, 0, 0, 'WITHSCORES');
+if #first > 0 then
+    cursor = tonumber(first[2]) - 1;
+else
+    cursor = tonumber(redis.call('hget', cursorHash, group .. ':read') or -1);
+end
+local current = tonumber(redis.call('hget', cursorHash, group) or -1);
+if cursor > current then
+    redis.call('hset', cursorHash, group, cursor);
+    current = cursor;
+end
+
+-- 所有分组都提交的位置 落后超过最大值的分组不再等待
+local watermark = current;
+for g in ARGV[4]:gmatch("([^,]+)") do
+    if g ~= group then
+        watermark = math.min(watermark, tonumber(redis.call('hget', cursorHash, g) or -1));
+    end
+end
+watermark = math.max(watermark, current - (tonumber(ARGV[5]) - 1));
+if watermark >= 0 then
+    local ids = redis.call('zrangebyscore', KEYS[4], '-inf', watermark, 'LIMIT', 0, 100);
+    for i, msgId in ipairs(ids) do
+        local body = redis.call('hget', KEYS[2], msgId);
+        if body and string.find(body, 'redismq.payload', 1, true) then
+            table.insert(result, msgId);
+        end
+        redis.call('zrem', KEYS[4], msgId);
+        redis.call('hdel', KEYS[2], msgId);
+    end
+end
+return result;
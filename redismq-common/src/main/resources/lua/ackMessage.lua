@@ -0,0 +1,58 @@
+-- 1.删除组内消息id
+-- 2.判断此次消息的偏移量是否大于当前消息组偏移量，进行替换
+-- 3.消息体引用计数减一 所有分组都已经ack的消息删除消息体
+local result={};
+local messageIdQueue=KEYS[1];
+local offsetGroup= KEYS[4];
+local orginalQueueName =KEYS[5];
+local msgOffset =KEYS[8];
+
+local payloadPrefix = string.sub(KEYS[2], 1, -6) .. ':payload:';
+local refsKey = string.sub(KEYS[2], 1, -6) .. ':refs';
+
+-- 消息体引用计数减一 减到0删除消息体。没有计数的旧消息检查其他分组是否还有
+local function release(msgId)
+    if redis.call('HEXISTS', refsKey, msgId) == 1 then
+        if redis.call('HINCRBY', refsKey, msgId, -1) > 0 then
+            return;
+        end
+        redis.call('hdel', refsKey, msgId);
+    else
+        for queueGroup in KEYS[3]:gmatch("([^,]+)") do
+            if redis.call('ZSCORE', queueGroup, msgId) then
+                return;
+            end
+        end
+    end
+    table.insert(result, redis.call('hdel', KEYS[2], msgId));
+    redis.call('del', payloadPrefix .. msgId);
+end
+
+-- 其他分组落后太多的消息 每次最多清理一批
+local function purge(currentOffset)
+    if not currentOffset then
+        return;
+    end
+    for msgQueue in KEYS[6]:gmatch("([^,]+)") do
+        local data = redis.call('ZRANGEBYSCORE', msgQueue, 0, currentOffset - (tonumber(KEYS[7])-1), 'LIMIT', 0, 100);
+        for i, messageId in ipairs(data) do
+            if redis.call('zrem', msgQueue, messageId) == 1 then
+                release(messageId);
+            end
+        end
+    end
+end
+
+local r1 = redis.call('zrem', messageIdQueue, ARGV[1]);
+table.insert(result,r1);
+
+local currentOffset = redis.call('ZSCORE', offsetGroup,orginalQueueName);
+if currentOffset and msgOffset and  tonumber(msgOffset) > tonumber(currentOffset) then
+    redis.call('zadd', offsetGroup, msgOffset,orginalQueueName);
+end
+
+if r1 == 1 then
+    release(ARGV[1]);
+end
+purge(currentOffset);
+return result;
@@ -0,0 +1,76 @@
+-- stream确认
+-- 1.xack确认的偏移量
+-- 2.分组确认的位置 有消费中的消息是最小的消息之前 否则是最后投递的位置
+-- 3.所有分组都确认的消息xtrim删除 落后太多的分组不再等待
+-- 返回 第一个值是确认的数量,后面是删除的消息中主体单独存储的消息id,由调用方删除主体
+-- KEYS[1] 虚拟队列stream
+-- ARGV[1] 消费组  ARGV[2] 分组偏移量最大落后值  ARGV[3...] 确认的偏移量
+local stream = KEYS[1];
+local group = ARGV[1];
+
+local function offsetOf(id)
+    return tonumber(string.match(id, '^(%d+)'));
+end
+
+local acked = 0;
+if #ARGV > 2 then
+    local ids = {};
+    for i=3, #ARGV do
+        table.insert(ids, ARGV[i] .. '-0');
+    end
+    acked = redis.call('xack', stream, group, unpack(ids));
+end
+local result = {acked};
+
+local current;
+local watermark;
+for i, info in ipairs(redis.call('xinfo', 'groups', stream)) do
+    local name, last;
+    for j=1, #info, 2 do
+        if info[j] == 'name' then
+            name = info[j+1];
+        elseif info[j] == 'last-delivered-id' then
+            last = info[j+1];
+        end
+    end
+    local position;
+    local pending = redis.call('xpending', stream, name);
+    if tonumber(pending[1]) > 0 then
+        position = offsetOf(pending[2]) - 1;
+    else
+        position = offsetOf(last);
+    end
+    if name == group then
+        current = position;
+    end
+    if not watermark or position < watermark then
+        watermark = position;
+    end
+end
+if not current then
+    return result;
+end
+
+-- 每次最多清理一批 单独存储主体的消息id返回给调用方删除
+watermark = math.max(watermark, current - (tonumber(ARGV[2]) - 1));
+if watermark > 0 then
+    local entries = redis.call('xrange', stream, '-', watermark .. '-0', 'COUNT', 100);
+    if #entries > 0 then
+        for i, entry in ipairs(entries) do
+            local fields = entry[2];
+            local id, body;
+            for j=1, #fields, 2 do
+                if fields[j] == 'id' then
+                    id = fields[j+1];
+                elseif fields[j] == 'body' then
+                    body = fields[j+1];
+                end
+            end
+            if id and body and string.find(body, 'redismq.payload', 1, true) then
+                table.insert(result, id);
+            end
+        end
+        redis.call('xtrim', stream, 'MINID', (offsetOf(entries[#entries][1]) + 1) .. '-0');
+    end
+end
+return result;
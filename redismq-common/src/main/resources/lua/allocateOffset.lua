@@ -0,0 +1,9 @@
+-- 整批消息一次分配队列偏移量 超过当前时间戳重新计数
+-- KEYS[1] 队列偏移量  ARGV[1] 消息数量  ARGV[2] 当前时间戳
+local count = tonumber(ARGV[1]);
+local last = redis.call('incrBy', KEYS[1], count);
+if tonumber(last) >= tonumber(ARGV[2]) then
+    redis.call('set', KEYS[1], count);
+    last = count;
+end
+return last;
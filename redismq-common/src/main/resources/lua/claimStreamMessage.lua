@@ -0,0 +1,35 @@
+-- 认领超时没有确认的消息 上一个消费者宕机或者消费超时
+-- KEYS[1] 虚拟队列stream  ARGV[1] 消费组  ARGV[2] 消费者  ARGV[3] 最小空闲时间  ARGV[4] 开始id  ARGV[5] 数量
+-- 返回下一次开始的id和消息体
+local reply = redis.call('xautoclaim', KEYS[1], ARGV[1], ARGV[2], ARGV[3], ARGV[4], 'COUNT', ARGV[5]);
+local result = {reply[1]};
+for i, entry in ipairs(reply[2]) do
+    -- 已经被清理的消息没有字段
+    if type(entry) == 'table' and type(entry[2]) == 'table' then
+        local fields = entry[2];
+        for j=1, #fields, 2 do
+            if fields[j] == 'body' then
+                table.insert(result, fields[j+1]);
+            end
+        end
+    end
+end
+-- 扫描完成 删除没有消费中消息的旧消费者
+if reply[1] == '0-0' then
+    for i, consumer in ipairs(redis.call('xinfo', 'consumers', KEYS[1], ARGV[1])) do
+        local name, pending, idle;
+        for j=1, #consumer, 2 do
+            if consumer[j] == 'name' then
+                name = consumer[j+1];
+            elseif consumer[j] == 'pending' then
+                pending = consumer[j+1];
+            elseif consumer[j] == 'idle' then
+                idle = consumer[j+1];
+            end
+        end
+        if name ~= ARGV[2] and tonumber(pending) == 0 and tonumber(idle) > tonumber(ARGV[3]) then
+            redis.call('xgroup', 'delconsumer', KEYS[1], ARGV[1], name);
+        end
+    end
+end
+return result;
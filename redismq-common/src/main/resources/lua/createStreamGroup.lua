@@ -0,0 +1,10 @@
+-- 创建stream消费组 已经存在时按需要重置读取位置
+-- KEYS[1] 虚拟队列stream  ARGV[1] 消费组  ARGV[2] 起始id 0从头开始 $从最新开始  ARGV[3] 1已经存在时重置
+local created = redis.pcall('xgroup', 'create', KEYS[1], ARGV[1], ARGV[2], 'MKSTREAM');
+if type(created) == 'table' and created.err then
+    if ARGV[3] == '1' then
+        redis.call('xgroup', 'setid', KEYS[1], ARGV[1], ARGV[2]);
+    end
+    return 0;
+end
+return 1;
@@ -0,0 +1,30 @@
+-- 删除分组队列中的一批消息id 消息体引用计数减一 返回删除的数量
+local result={};
+local groupQueue=KEYS[1];
+local payloadPrefix = string.sub(KEYS[2], 1, -6) .. ':payload:';
+local refsKey = string.sub(KEYS[2], 1, -6) .. ':refs';
+
+-- 消息体引用计数减一 减到0删除消息体。没有计数的旧消息检查其他分组是否还有
+local function release(msgId)
+    if redis.call('HEXISTS', refsKey, msgId) == 1 then
+        if redis.call('HINCRBY', refsKey, msgId, -1) > 0 then
+            return;
+        end
+        redis.call('hdel', refsKey, msgId);
+    else
+        for queueGroup in KEYS[3]:gmatch("([^,]+)") do
+            if redis.call('ZSCORE', queueGroup, msgId) then
+                return;
+            end
+        end
+    end
+    table.insert(result, redis.call('hdel', KEYS[2], msgId));
+    redis.call('del', payloadPrefix .. msgId);
+end
+
+local ids = redis.call('ZRANGE', groupQueue, 0, tonumber(ARGV[1]) - 1);
+for i, msgId in ipairs(ids) do
+    redis.call('zrem', groupQueue, msgId);
+    release(msgId);
+end
+return #ids;
@@ -0,0 +1,5 @@
+-- 共享日志删除分组 只删除分组的游标和消费中的消息id,日志由其他分组确认时清理
+-- KEYS[1] 分组游标  KEYS[2] 分组消费中的消息id
+-- ARGV[1] 分组
+redis.call('del', KEYS[2]);
+return redis.call('hdel', KEYS[1], ARGV[1], ARGV[1] .. ':read');
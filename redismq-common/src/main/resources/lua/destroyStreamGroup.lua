@@ -0,0 +1,6 @@
+-- 删除stream消费组 stream不存在时跳过
+-- KEYS[1] 虚拟队列stream  ARGV[1] 消费组
+if redis.call('exists', KEYS[1]) == 1 then
+    return redis.call('xgroup', 'destroy', KEYS[1], ARGV[1]);
+end
+return 0;
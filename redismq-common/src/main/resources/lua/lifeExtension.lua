@@ -0,0 +1,6 @@
+-- 虚拟队列锁续期
+if (redis.call('exists', KEYS[1]) == 1) then
+    redis.call('expire', KEYS[1], ARGV[1]);
+    return 1;
+end;
+return 0;
@@ -0,0 +1,39 @@
+-- 从共享日志拉取消息
+-- KEYS[1] 虚拟队列日志  KEYS[2] 消息体  KEYS[3] 分组消费中的消息id  KEYS[4] 分组游标
+-- ARGV[1] 分组  ARGV[2] 本次拉取已经投递的偏移量 -1表示先重新投递上次没有确认的消息
+-- ARGV[3] 拉取数量  ARGV[4] 没有游标时的起始偏移量  ARGV[5] 1表示起始偏移量优先于游标
+local pendingZset = KEYS[3];
+local readField = ARGV[1] .. ':read';
+local limit = tonumber(ARGV[3]);
+
+-- 上次没有确认的消息先重新投递
+local data = redis.call('zrangebyscore', pendingZset, '(' .. ARGV[2], '+inf', 'WITHSCORES', 'LIMIT', 0, limit);
+if #data == 0 then
+    local read = redis.call('hget', KEYS[4], readField);
+    local start;
+    if not read or ARGV[5] == '1' then
+        start = math.max(tonumber(read or -1), tonumber(ARGV[4]) - 1);
+    else
+        start = tonumber(read);
+    end
+    data = redis.call('zrangebyscore', KEYS[1], '(' .. start, '+inf', 'WITHSCORES', 'LIMIT', 0, limit);
+    if #data > 0 then
+        for i=1, #data, 2 do
+            redis.call('zadd', pendingZset, data[i+1], data[i]);
+        end
+        redis.call('hset', KEYS[4], readField, data[#data]);
+    end
+end
+
+local result = {}
+for i=1, #data, 2 do
+    local message = redis.call('hget', KEYS[2], data[i]);
+    if (message) then
+        table.insert(result, message);
+        table.insert(result, data[i+1]);
+    else
+        -- 已经被清理的消息
+        redis.call('zrem', pendingZset, data[i]);
+    end
+end
+return result;
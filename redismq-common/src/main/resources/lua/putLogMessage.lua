@@ -0,0 +1,43 @@
+-- 共享日志写入 一条消息只写一次 不再按分组复制
+-- KEYS[1] 虚拟队列日志  KEYS[2] 消息体  KEYS[3] 虚拟队列偏移量  KEYS[4] 分组游标
+-- 偏移量只在虚拟队列内递增 不会重新计数,分组游标一直有效
+local logZset = KEYS[1];
+local messageBodyHashKey = KEYS[2];
+local size = redis.call('zcard', logZset);
+-- 队列满了返回 -1-当前长度 生产者缓存队列长度
+if size and tonumber(size) >= tonumber(ARGV[1]) then
+    return -1 - tonumber(size);
+end
+-- 整批消息一次分配偏移量
+local count = (#ARGV - 1) / 3;
+local last = redis.call('incrBy', KEYS[3], count);
+-- 偏移量是新建的 从日志和分组游标中最大的位置之后继续,不会写到已经读取的位置之前
+if last == count then
+    local start = 0;
+    local top = redis.call('zrevrange', logZset, 0, 0, 'WITHSCORES');
+    if #top > 0 then
+        start = tonumber(top[2]);
+    end
+    for i, position in ipairs(redis.call('hvals', KEYS[4])) do
+        start = math.max(start, tonumber(position));
+    end
+    if start > 0 then
+        last = redis.call('incrBy', KEYS[3], start);
+    end
+end
+local offset = last - count;
+
+for i=2, #ARGV, 3 do
+    offset = offset + 1;
+    -- 日志只存普通消息 分数就是偏移量
+    redis.call('zadd', logZset, offset, ARGV[i+1]);
+    local body = ARGV[i+2];
+    -- 偏移量在脚本里分配 由脚本补上偏移量  紧凑格式以0x1E开头 在末尾追加偏移量尾部  json格式追加字段
+    if string.byte(body, 1) == 30 then
+        body = body .. '\31' .. offset .. ',' .. offset;
+    else
+        body = string.sub(body, 1, -2) .. ',"offset":' .. offset .. ',"executorScope":' .. offset .. '}';
+    end
+    redis.call("hset", messageBodyHashKey, ARGV[i+1], body)
+end
+return last;
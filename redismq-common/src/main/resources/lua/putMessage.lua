@@ -0,0 +1,29 @@
+-- 无备注版本   -- 先判断每个分组下的队列是否有阻塞
+local messageZsets = KEYS[1];
+local queueSize = ARGV[1];
+local size = 0;
+for messageZset in messageZsets:gmatch("([^,]+)") do
+    size = redis.call('zcard', messageZset);
+    -- 队列满了返回 -1-当前长度 生产者缓存队列长度
+    if size and tonumber(size) >= tonumber(queueSize) then
+        return -1 - tonumber(size);
+    end
+end
+local messageBodyHashKey = KEYS[2];
+-- 消息体引用计数 每个分组确认后减一
+local refsKey = KEYS[3];
+local groupCount = 0;
+for messageZset in messageZsets:gmatch("([^,]+)") do
+    groupCount = groupCount + 1;
+end
+-- 偏移量由生产者写入前分配 编码时已经写入偏移量尾部 这里不再追加
+for i=2, #ARGV, 3 do
+    for messageZset in messageZsets:gmatch("([^,]+)") do
+        redis.call('zadd', messageZset, ARGV[i], ARGV[i+1]);
+    end
+    redis.call("hset", messageBodyHashKey, ARGV[i+1], ARGV[i+2])
+    if groupCount > 0 then
+        redis.call("hset", refsKey, ARGV[i+1], groupCount)
+    end
+end
+return (#ARGV - 1) / 3;
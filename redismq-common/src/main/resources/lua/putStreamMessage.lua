@@ -0,0 +1,37 @@
+-- 写入stream 消息id使用偏移量 ack和清理都按偏移量
+-- KEYS[1] 虚拟队列stream  KEYS[2] 虚拟队列偏移量
+local stream = KEYS[1];
+local size = redis.call('xlen', stream);
+-- 队列满了返回 -1-当前长度 生产者缓存队列长度
+if size and tonumber(size) >= tonumber(ARGV[1]) then
+    return -1 - tonumber(size);
+end
+-- stream的id必须递增 偏移量不重新计数
+local count = (#ARGV - 1) / 3;
+local last = redis.call('incrBy', KEYS[2], count);
+-- 偏移量是新建的 从stream最后生成的id之后继续
+if last == count and redis.call('exists', stream) == 1 then
+    local info = redis.call('xinfo', 'stream', stream);
+    for i=1, #info, 2 do
+        if info[i] == 'last-generated-id' then
+            local start = tonumber(string.match(info[i+1], '^(%d+)'));
+            if start > 0 then
+                last = redis.call('incrBy', KEYS[2], start);
+            end
+        end
+    end
+end
+local offset = last - count;
+
+for i=2, #ARGV, 3 do
+    offset = offset + 1;
+    local body = ARGV[i+2];
+    -- 偏移量在脚本里分配 由脚本补上偏移量  紧凑格式以0x1E开头 在末尾追加偏移量尾部  json格式追加字段
+    if string.byte(body, 1) == 30 then
+        body = body .. '\31' .. offset .. ',' .. offset;
+    else
+        body = string.sub(body, 1, -2) .. ',"offset":' .. offset .. ',"executorScope":' .. offset .. '}';
+    end
+    redis.call('xadd', stream, offset .. '-0', 'id', ARGV[i+1], 'body', body);
+end
+return last;
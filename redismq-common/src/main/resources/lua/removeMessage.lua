@@ -0,0 +1,9 @@
+-- 删除分组队列中的消息id和消息体
+local result={};
+local r1 = redis.call('zrem', KEYS[1], ARGV[1]);
+local r2  = redis.call('hdel', KEYS[2],  ARGV[1]);
+redis.call('hdel', string.sub(KEYS[2], 1, -6) .. ':refs', ARGV[1]);
+redis.call('del', string.sub(KEYS[2], 1, -6) .. ':payload:' .. ARGV[1]);
+table.insert(result,r1);
+table.insert(result,r2);
+return result;
@@ -0,0 +1,15 @@
+-- KEYS[1] 虚拟队列  KEYS[2] 虚拟队列的分组消息id队列
+-- 按分数范围获取消息体  消息体已经不存在的消息id直接删除
+local data = redis.call('zrangebyscore', KEYS[2],ARGV[1], ARGV[2],'WITHSCORES', 'LIMIT', ARGV[3], ARGV[4]);
+
+local result = {}
+for i=1, #data, 2 do
+    local message = redis.call('hget', KEYS[1] .. ':body',data[i]);
+    if (message) then
+        table.insert(result,message);
+        table.insert(result,data[i+1]);
+    else
+        redis.call('zrem', KEYS[2],  data[i]);
+    end
+end
+return result;
@@ -0,0 +1,112 @@
+package com.redismq.common.compress;
+
+import com.redismq.common.config.GlobalConfig;
+import com.redismq.common.config.GlobalConfigCache;
+import com.redismq.common.pojo.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author hzh
+ * @date 2024/12/15 消息主体压缩
+ */
+class BodyCompressorsTest {
+    
+    private static final String BODY = repeat("{\"orderId\":123456,\"status\":\"PAID\",\"amount\":99.5}", 200);
+    
+    private GlobalConfig original;
+    
+    @BeforeEach
+    void setUp() {
+        original = GlobalConfigCache.GLOBAL_CONFIG;
+        GlobalConfig globalConfig = new GlobalConfig();
+        globalConfig.compression = DeflateBodyCompressor.NAME;
+        globalConfig.compressThreshold = 1024;
+        GlobalConfigCache.GLOBAL_CONFIG = globalConfig;
+    }
+    
+    @AfterEach
+    void tearDown() {
+        GlobalConfigCache.GLOBAL_CONFIG = original;
+    }
+    
+    @Test
+    void compressesLargeBodyAndDecompressesCopy() {
+        Message message = message(BODY);
+        
+        BodyCompressors.compress(message, "q");
+        
+        assertThat(message.getHeader()).containsEntry(BodyCompressors.HEADER, DeflateBodyCompressor.NAME);
+        assertThat(message.getBody().toString().length()).isLessThan(BODY.length());
+        Message decompressed = BodyCompressors.decompress(message);
+        assertThat(decompressed).isNotSameAs(message);
+        assertThat(decompressed.getBody()).isEqualTo(BODY);
+        assertThat(decompressed.getHeader()).doesNotContainKey(BodyCompressors.HEADER);
+        assertThat(message.getHeader()).containsKey(BodyCompressors.HEADER);
+    }
+    
+    @Test
+    void bodyBelowThresholdIsNotCompressed() {
+        Message message = message("small");
+        
+        BodyCompressors.compress(message, "q");
+        
+        assertThat(message.getBody()).isEqualTo("small");
+        assertThat(message.getHeader()).isNull();
+        assertThat(BodyCompressors.decompress(message)).isSameAs(message);
+    }
+    
+    @Test
+    void disabledCompressionKeepsBody() {
+        GlobalConfigCache.GLOBAL_CONFIG.compression = null;
+        Message message = message(BODY);
+        
+        BodyCompressors.compress(message, "q");
+        
+        assertThat(message.getBody()).isEqualTo(BODY);
+    }
+    
+    @Test
+    void deflateRoundTripsWithDictionary() {
+        CompressDictionary dictionary = new CompressDictionary(
+                "\"orderId\":\"status\":\"PAID\",\"amount\":".getBytes(StandardCharsets.UTF_8));
+        DeflateBodyCompressor compressor = new DeflateBodyCompressor();
+        byte[] data = "{\"orderId\":1,\"status\":\"PAID\",\"amount\":2}".getBytes(StandardCharsets.UTF_8);
+        
+        byte[] withDictionary = compressor.compress(data, dictionary);
+        
+        assertThat(compressor.decompress(withDictionary, dictionary)).isEqualTo(data);
+        assertThat(withDictionary.length).isLessThan(compressor.compress(data, null).length);
+    }
+    
+    @Test
+    void zstdRoundTrips() {
+        ZstdBodyCompressor compressor = new ZstdBodyCompressor();
+        byte[] data = BODY.getBytes(StandardCharsets.UTF_8);
+        CompressDictionary dictionary = new CompressDictionary(
+                "\"orderId\":\"status\":\"PAID\",\"amount\":".getBytes(StandardCharsets.UTF_8));
+        
+        assertThat(compressor.decompress(compressor.compress(data, null), null)).isEqualTo(data);
+        assertThat(compressor.decompress(compressor.compress(data, dictionary), dictionary)).isEqualTo(data);
+    }
+    
+    private static Message message(String body) {
+        Message message = new Message();
+        message.setId("m1");
+        message.setBody(body);
+        return message;
+    }
+    
+    private static String repeat(String str, int times) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            sb.append(str);
+        }
+        return sb.toString();
+    }
+}
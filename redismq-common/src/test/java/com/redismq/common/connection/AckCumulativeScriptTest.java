@@ -0,0 +1,102 @@
+package com.redismq.common.connection;
+
+import com.redismq.common.constant.RedisMQConstant;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author hzh
+ * @date 2024/12/15 累计确认
+ */
+class AckCumulativeScriptTest extends RedisTestSupport {
+    
+    private static final String QUEUE = "cumulative";
+    
+    private String vQueue;
+    
+    @BeforeEach
+    void setUpQueue() {
+        redisMQClientUtil.registerGroup();
+        redisMQClientUtil.registerQueueGroup(QUEUE);
+        vQueue = vQueue(QUEUE);
+        for (int i = 1; i <= 250; i++) {
+            redisTemplate.opsForZSet().add(vQueue + ":" + GROUP, "m" + i, i);
+            redisTemplate.opsForHash().put(vQueue + ":body", "m" + i, "{}");
+            redisTemplate.opsForHash().put(vQueue + ":refs", "m" + i, "1");
+        }
+    }
+    
+    @Test
+    void removesWholeRangeInBatches() {
+        //超过一批的范围分多次脚本删除
+        assertThat(redisMQClientUtil.ackCumulativeMessage(QUEUE + "$0", 230, 1, ids(1, 230), "")).isTrue();
+        
+        Set<String> rest = redisTemplate.opsForZSet().range(vQueue + ":" + GROUP, 0, -1);
+        assertThat(rest).hasSize(20).contains("m231", "m250");
+        assertThat(redisTemplate.opsForHash().size(vQueue + ":body")).isEqualTo(20L);
+        assertThat(redisTemplate.opsForHash().hasKey(vQueue + ":refs", "m1")).isFalse();
+    }
+    
+    @Test
+    void removesOutOfOrderIdsAboveOffset() {
+        assertThat(redisMQClientUtil.ackCumulativeMessage(QUEUE + "$0", 10, 1, ids(1, 10), "m20,m30")).isTrue();
+        
+        Set<String> rest = redisTemplate.opsForZSet().range(vQueue + ":" + GROUP, 0, -1);
+        assertThat(rest).hasSize(238).doesNotContain("m10", "m20", "m30").contains("m11", "m21");
+        assertThat(redisTemplate.opsForHash().hasKey(vQueue + ":body", "m20")).isFalse();
+        assertThat(redisTemplate.opsForHash().hasKey(vQueue + ":body", "m11")).isTrue();
+    }
+    
+    @Test
+    void singleScriptCallRemovesAtMostOneBatch() {
+        Object removed = redisClient.luaList(ScriptRegistry.ACK_CUMULATIVE_MESSAGE, ackKeys(),
+                new Object[] {230, "", 1, 230, String.join(",", ids(1, 230))}).get(0);
+        assertThat(Long.parseLong(removed.toString())).isEqualTo(100L);
+        assertThat(redisTemplate.opsForZSet().size(vQueue + ":" + GROUP)).isEqualTo(150L);
+        assertThat(redisTemplate.opsForZSet().range(vQueue + ":" + GROUP, 0, 0)).containsExactly("m101");
+    }
+    
+    @Test
+    void lateLowerOffsetIsNotRemovedByRange() {
+        //偏移量更小的消息晚写入 这个消费者没有拉取过
+        redisTemplate.opsForZSet().add(vQueue + ":" + GROUP, "late", 5.5);
+        redisTemplate.opsForHash().put(vQueue + ":body", "late", "{}");
+        redisTemplate.opsForHash().put(vQueue + ":refs", "late", "1");
+        
+        assertThat(redisMQClientUtil.ackCumulativeMessage(QUEUE + "$0", 10, 1, ids(1, 10), "")).isTrue();
+        
+        Set<String> rest = redisTemplate.opsForZSet().range(vQueue + ":" + GROUP, 0, -1);
+        assertThat(rest).hasSize(241).contains("late", "m11").doesNotContain("m1", "m10");
+        assertThat(redisTemplate.opsForHash().hasKey(vQueue + ":body", "late")).isTrue();
+        assertThat(redisTemplate.opsForHash().hasKey(vQueue + ":body", "m5")).isFalse();
+    }
+    
+    @Test
+    void rangeStartsAtLowestDeliveredOffset() {
+        //更早的消息没有投递给这次确认 范围删除不越过最小投递偏移量
+        assertThat(redisMQClientUtil.ackCumulativeMessage(QUEUE + "$0", 20, 11, ids(11, 20), "")).isTrue();
+        
+        Set<String> rest = redisTemplate.opsForZSet().range(vQueue + ":" + GROUP, 0, -1);
+        assertThat(rest).hasSize(240).contains("m1", "m10", "m21").doesNotContain("m11", "m20");
+    }
+    
+    private static List<String> ids(int from, int to) {
+        List<String> ids = new ArrayList<>();
+        for (int i = from; i <= to; i++) {
+            ids.add("m" + i);
+        }
+        return ids;
+    }
+    
+    private List<String> ackKeys() {
+        return Arrays.asList(vQueue + ":" + GROUP, vQueue + ":body", "",
+                RedisMQConstant.getOffsetGroupCollection(GROUP), QUEUE, "", "100");
+    }
+}
@@ -0,0 +1,46 @@
+package com.redismq.common.connection;
+
+import com.redismq.common.constant.RedisMQConstant;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author hzh
+ * @date 2024/12/15 消费组本地缓存
+ */
+class GroupCacheTest extends RedisTestSupport {
+    
+    @Test
+    void registerGroupRefreshesCache() {
+        redisMQClientUtil.refreshGroups();
+        assertThat(redisMQClientUtil.getGroups()).isEmpty();
+        
+        redisMQClientUtil.registerGroup();
+        
+        assertThat(redisMQClientUtil.getGroups()).containsExactly(GROUP);
+    }
+    
+    @Test
+    void getGroupsReadsCacheUntilRefreshed() {
+        redisMQClientUtil.registerGroup();
+        redisTemplate.opsForZSet().add(RedisMQConstant.getGroupCollection(), "group2", 1D);
+        
+        //其他客户端注册的组 收到通知刷新前不读取redis
+        assertThat(redisMQClientUtil.getGroups()).containsExactly(GROUP);
+        
+        assertThat(redisMQClientUtil.refreshGroups()).containsExactlyInAnyOrder(GROUP, "group2");
+        assertThat(redisMQClientUtil.getGroups()).containsExactlyInAnyOrder(GROUP, "group2");
+    }
+    
+    @Test
+    void deleteGroupRefreshesCache() {
+        redisMQClientUtil.registerGroup();
+        redisTemplate.opsForZSet().add(RedisMQConstant.getGroupCollection(), "group2", 1D);
+        redisMQClientUtil.refreshGroups();
+        
+        redisMQClientUtil.deleteGroup("group2");
+        
+        assertThat(redisMQClientUtil.getGroups()).containsExactly(GROUP);
+    }
+}
@@ -0,0 +1,132 @@
+package com.redismq.common.connection;
+
+import com.redismq.common.constant.RedisMQConstant;
+import com.redismq.common.pojo.Message;
+import com.redismq.common.offload.BodyOffloads;
+import com.redismq.common.serializer.MessageCodecs;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author hzh
+ * @date 2024/12/15 共享日志的偏移量和分组游标
+ */
+class LogMessageScriptTest extends RedisTestSupport {
+    
+    private static final String QUEUE = "log";
+    
+    private static final String V_QUEUE = QUEUE + "$0";
+    
+    private String vQueue;
+    
+    @BeforeEach
+    void setUpQueue() {
+        redisMQClientUtil.registerGroup();
+        vQueue = vQueue(QUEUE);
+    }
+    
+    private Long put(Message... messages) {
+        List<Object> args = new ArrayList<>();
+        args.add(100);
+        for (Message message : messages) {
+            args.add(-1L);
+            args.add(message.getId());
+            args.add(MessageCodecs.encode(message));
+        }
+        return redisClient.executeLua(ScriptRegistry.PUT_LOG_MESSAGE,
+                Arrays.asList(vQueue + ":log", vQueue + ":body", vQueue + ":offset", vQueue + ":cursor"), args.toArray());
+    }
+    
+    private static Message message(String id) {
+        Message message = new Message();
+        message.setId(id);
+        message.setQueue(QUEUE);
+        message.setVirtualQueueName(V_QUEUE);
+        message.setBody(id);
+        return message;
+    }
+    
+    private List<String> pull(long delivered, int size) {
+        return redisMQClientUtil.pullLogMessage(V_QUEUE, delivered, size, 0L, false).stream().map(Message::getId)
+                .collect(Collectors.toList());
+    }
+    
+    @Test
+    void offsetKeepsGrowingInsideVirtualQueue() {
+        //偏移量超过当前时间戳也不再重新计数 已经读取的游标一直有效
+        long start = System.currentTimeMillis() * 10;
+        redisTemplate.opsForValue().set(vQueue + ":offset", String.valueOf(start));
+        assertThat(put(message("m1"), message("m2"))).isEqualTo(start + 2);
+        assertThat(redisTemplate.opsForZSet().score(vQueue + ":log", "m2")).isEqualTo((double) (start + 2));
+        assertThat(redisMQClientUtil.getLogOffset(V_QUEUE)).isEqualTo(start + 2);
+    }
+    
+    @Test
+    void newOffsetContinuesAfterExistingCursors() {
+        //偏移量key丢失或者从旧版本升级 新写入的消息不能落在已经读取的游标之前
+        redisTemplate.opsForHash().put(vQueue + ":cursor", GROUP + ":read", "41");
+        assertThat(put(message("m1"))).isEqualTo(42L);
+        assertThat(pull(-1L, 10)).containsExactly("m1");
+    }
+    
+    @Test
+    void pullAdvancesReadCursorAndRedeliversPending() {
+        put(message("m1"), message("m2"), message("m3"));
+        assertThat(pull(-1L, 2)).containsExactly("m1", "m2");
+        assertThat(redisTemplate.opsForHash().get(vQueue + ":cursor", GROUP + ":read")).isEqualTo("2");
+        //同一次拉取中继续读日志
+        assertThat(pull(2L, 2)).containsExactly("m3");
+        //新的拉取先重新投递没有确认的消息
+        assertThat(pull(-1L, 10)).containsExactly("m1", "m2", "m3");
+    }
+    
+    @Test
+    void ackCommitsCursorBeforeOldestPendingAndTrimsLog() {
+        put(message("m1"), message("m2"), message("m3"));
+        pull(-1L, 3);
+        
+        assertThat(redisMQClientUtil.ackLogMessage(V_QUEUE, -1L, "m1,m3")).isTrue();
+        assertThat(redisTemplate.opsForHash().get(vQueue + ":cursor", GROUP)).isEqualTo("1");
+        assertThat(redisTemplate.opsForZSet().range(vQueue + ":log", 0, -1)).containsExactly("m2", "m3");
+        
+        assertThat(redisMQClientUtil.ackLogMessage(V_QUEUE, 2L, "")).isTrue();
+        assertThat(redisTemplate.opsForHash().get(vQueue + ":cursor", GROUP)).isEqualTo("3");
+        assertThat(redisTemplate.opsForZSet().size(vQueue + ":log")).isZero();
+        assertThat(redisTemplate.opsForHash().size(vQueue + ":body")).isZero();
+    }
+    
+    @Test
+    void trimDeletesOffloadedPayloadFromClient() {
+        Message message = message("big");
+        Map<String, Object> header = new HashMap<>();
+        header.put(BodyOffloads.HEADER, 1);
+        message.setHeader(header);
+        String payloadKey = RedisMQConstant.getPayloadKey(V_QUEUE, "big");
+        redisTemplate.opsForList().rightPush(payloadKey, "body");
+        put(message, message("small"));
+        pull(-1L, 2);
+        
+        redisMQClientUtil.ackLogMessage(V_QUEUE, 2L, "");
+        assertThat(redisTemplate.hasKey(payloadKey)).isFalse();
+    }
+    
+    @Test
+    void deleteLogGroupRemovesCursorAndPending() {
+        put(message("m1"));
+        pull(-1L, 1);
+        redisClient.executeLua(ScriptRegistry.DELETE_LOG_GROUP,
+                Arrays.asList(vQueue + ":cursor", vQueue + ":pending:" + GROUP), GROUP);
+        assertThat(redisTemplate.opsForHash().keys(vQueue + ":cursor")).isEqualTo(Collections.emptySet());
+        assertThat(redisTemplate.hasKey(vQueue + ":pending:" + GROUP)).isFalse();
+    }
+}
@@ -0,0 +1,67 @@
+package com.redismq.common.connection;
+
+import com.redismq.common.constant.RedisMQConstant;
+import com.redismq.common.pojo.Message;
+import com.redismq.common.serializer.MessageCodecs;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author hzh
+ * @date 2024/12/15 写入消息和分配偏移量
+ */
+class PutMessageScriptTest extends RedisTestSupport {
+    
+    @Test
+    void allocateOffsetReturnsLastOfBatch() {
+        assertThat(redisMQClientUtil.allocateOffset("order", 3)).isEqualTo(3L);
+        assertThat(redisMQClientUtil.allocateOffset("order", 2)).isEqualTo(5L);
+        assertThat(redisTemplate.opsForValue().get(RedisMQConstant.getQueueOffset("order"))).isEqualTo("5");
+    }
+    
+    @Test
+    void allocateOffsetWrapsAtTimestamp() {
+        String key = RedisMQConstant.getQueueOffset("order");
+        redisTemplate.opsForValue().set(key, "9");
+        Long last = redisClient.executeLua(ScriptRegistry.ALLOCATE_OFFSET, Collections.singletonList(key), 2, 10L);
+        assertThat(last).isEqualTo(2L);
+    }
+    
+    @Test
+    void putMessageStoresBodyWithSingleExecutorScope() {
+        String vQueue = vQueue("delay");
+        Message message = new Message();
+        message.setId("m1");
+        message.setQueue("delay");
+        message.setVirtualQueueName("delay$0");
+        message.setBody("hello");
+        message.setOffset(7L);
+        message.setExecuteScope(1000L);
+        String body = MessageCodecs.encode(message);
+        
+        Long size = redisClient.executeLua(ScriptRegistry.PUT_MESSAGE,
+                Arrays.asList(vQueue + ":" + GROUP, vQueue + ":body", vQueue + ":refs"), 100, 1000L, "m1", body);
+        
+        assertThat(size).isEqualTo(1L);
+        assertThat(redisTemplate.opsForZSet().score(vQueue + ":" + GROUP, "m1")).isEqualTo(1000D);
+        Object stored = redisTemplate.opsForHash().get(vQueue + ":body", "m1");
+        assertThat(stored).isEqualTo(body);
+        assertThat(StringUtils.countMatches(stored.toString(), "\"executorScope\"")).isEqualTo(1);
+        assertThat(MessageCodecs.decode(stored.toString()).getOffset()).isEqualTo(7L);
+        assertThat(redisTemplate.opsForHash().get(vQueue + ":refs", "m1")).isEqualTo("1");
+    }
+    
+    @Test
+    void putMessageReturnsQueueDepthWhenFull() {
+        String vQueue = vQueue("full");
+        redisTemplate.opsForZSet().add(vQueue + ":" + GROUP, "old", 1);
+        Long size = redisClient.executeLua(ScriptRegistry.PUT_MESSAGE,
+                Arrays.asList(vQueue + ":" + GROUP, vQueue + ":body", vQueue + ":refs"), 1, 2L, "m1", "{}");
+        assertThat(size).isEqualTo(-2L);
+    }
+}
@@ -0,0 +1,81 @@
+package com.redismq.common.connection;
+
+import com.redismq.common.config.ConsumserConfig;
+import com.redismq.common.config.GlobalConfig;
+import com.redismq.common.config.GlobalConfigCache;
+import com.redismq.common.config.ProducerConfig;
+import com.redismq.common.constant.RedisMQConstant;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * 内嵌redis 脚本测试的公共部分
+ *
+ * @author hzh
+ * @date 2024/12/15
+ */
+public abstract class RedisTestSupport {
+    
+    protected static final String GROUP = "group1";
+    
+    private static RedisServer redisServer;
+    
+    private static LettuceConnectionFactory connectionFactory;
+    
+    protected static StringRedisTemplate redisTemplate;
+    
+    protected static RedisClient redisClient;
+    
+    protected static RedisMQClientUtil redisMQClientUtil;
+    
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+        redisClient = new StringRedisTemplateAdapter(redisTemplate);
+        redisMQClientUtil = new RedisMQClientUtil(redisClient);
+    }
+    
+    @AfterAll
+    static void stopRedis() throws IOException {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+    
+    @BeforeEach
+    void resetRedis() {
+        RedisMQConstant.NAMESPACE = "test";
+        GlobalConfigCache.GLOBAL_CONFIG = new GlobalConfig();
+        GlobalConfigCache.PRODUCER_CONFIG = new ProducerConfig();
+        GlobalConfigCache.CONSUMER_CONFIG = new ConsumserConfig();
+        GlobalConfigCache.CONSUMER_CONFIG.setGroupId(GROUP);
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.flushAll();
+            return null;
+        });
+    }
+    
+    /**
+     * 虚拟队列的redis key
+     */
+    protected static String vQueue(String queue) {
+        return RedisMQConstant.getVQueueNameByVQueue(queue + "$0");
+    }
+}
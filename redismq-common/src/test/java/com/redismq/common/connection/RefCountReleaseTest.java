@@ -0,0 +1,126 @@
+package com.redismq.common.connection;
+
+import com.redismq.common.config.GlobalConfigCache;
+import com.redismq.common.constant.RedisMQConstant;
+import com.redismq.common.pojo.Queue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author hzh
+ * @date 2024/12/15 消息体引用计数
+ */
+class RefCountReleaseTest extends RedisTestSupport {
+    
+    private static final String GROUP2 = "group2";
+    
+    private String vQueue;
+    
+    @BeforeEach
+    void setUp() {
+        vQueue = vQueue("ref");
+        redisTemplate.opsForZSet().add(RedisMQConstant.getGroupCollection(), GROUP, 1D);
+        redisTemplate.opsForZSet().add(RedisMQConstant.getGroupCollection(), GROUP2, 1D);
+        redisMQClientUtil.refreshGroups();
+    }
+    
+    @Test
+    void putMessageCountsEveryGroup() {
+        put("m1", 1L);
+        
+        assertThat(redisTemplate.opsForHash().get(vQueue + ":refs", "m1")).isEqualTo("2");
+    }
+    
+    @Test
+    void bodyIsDeletedAfterLastGroupAcks() {
+        put("m1", 1L);
+        
+        redisMQClientUtil.ackMessage("ref$0", "m1", 1L);
+        
+        assertThat(redisTemplate.opsForHash().get(vQueue + ":refs", "m1")).isEqualTo("1");
+        assertThat(redisTemplate.opsForHash().hasKey(vQueue + ":body", "m1")).isTrue();
+        
+        GlobalConfigCache.CONSUMER_CONFIG.setGroupId(GROUP2);
+        redisMQClientUtil.ackMessage("ref$0", "m1", 1L);
+        
+        assertThat(redisTemplate.opsForHash().hasKey(vQueue + ":refs", "m1")).isFalse();
+        assertThat(redisTemplate.opsForHash().hasKey(vQueue + ":body", "m1")).isFalse();
+    }
+    
+    @Test
+    void batchAckReleasesEachMessageOnce() {
+        put("m1", 1L);
+        put("m2", 2L);
+        
+        redisMQClientUtil.ackBatchMessage("ref$0", "m1,m2", 2L);
+        //重复确认不会再减少计数
+        redisMQClientUtil.ackBatchMessage("ref$0", "m1,m2", 2L);
+        
+        assertThat(redisTemplate.opsForHash().get(vQueue + ":refs", "m1")).isEqualTo("1");
+        assertThat(redisTemplate.opsForHash().get(vQueue + ":refs", "m2")).isEqualTo("1");
+        
+        GlobalConfigCache.CONSUMER_CONFIG.setGroupId(GROUP2);
+        redisMQClientUtil.ackBatchMessage("ref$0", "m1,m2", 2L);
+        
+        assertThat(redisTemplate.opsForHash().size(vQueue + ":body")).isZero();
+        assertThat(redisTemplate.opsForHash().size(vQueue + ":refs")).isZero();
+    }
+    
+    @Test
+    void messageWithoutRefsChecksOtherGroups() {
+        put("m1", 1L);
+        //升级前写入的消息没有计数
+        redisTemplate.delete(vQueue + ":refs");
+        
+        redisMQClientUtil.ackMessage("ref$0", "m1", 1L);
+        assertThat(redisTemplate.opsForHash().hasKey(vQueue + ":body", "m1")).isTrue();
+        
+        GlobalConfigCache.CONSUMER_CONFIG.setGroupId(GROUP2);
+        redisMQClientUtil.ackMessage("ref$0", "m1", 1L);
+        assertThat(redisTemplate.opsForHash().hasKey(vQueue + ":body", "m1")).isFalse();
+    }
+    
+    @Test
+    void deleteGroupMessageReleasesRefs() {
+        put("m1", 1L);
+        put("m2", 2L);
+        GlobalConfigCache.CONSUMER_CONFIG.setGroupId(GROUP2);
+        redisMQClientUtil.ackMessage("ref$0", "m1", 1L);
+        
+        Long count = redisClient.executeLua(ScriptRegistry.DELETE_GROUP_MESSAGE,
+                Arrays.asList(vQueue + ":" + GROUP, vQueue + ":body", vQueue + ":" + GROUP2), 1000);
+        
+        assertThat(count).isEqualTo(2L);
+        assertThat(redisTemplate.opsForHash().hasKey(vQueue + ":body", "m1")).isFalse();
+        assertThat(redisTemplate.opsForHash().hasKey(vQueue + ":body", "m2")).isTrue();
+        assertThat(redisTemplate.opsForHash().get(vQueue + ":refs", "m2")).isEqualTo("1");
+    }
+    
+    @Test
+    void sweepAfterDeleteGroupReleasesStaleWrites() {
+        Queue queue = new Queue("ref");
+        queue.setVirtual(1);
+        redisMQClientUtil.registerQueue(queue);
+        redisMQClientUtil.deleteGroup(GROUP2);
+        //生产者的分组缓存还没有刷新 仍然按两个分组写入和计数
+        put("m1", 1L);
+        redisMQClientUtil.ackMessage("ref$0", "m1", 1L);
+        assertThat(redisTemplate.opsForHash().hasKey(vQueue + ":body", "m1")).isTrue();
+        
+        redisMQClientUtil.deleteGroupMessage(GROUP2);
+        
+        assertThat(redisTemplate.opsForHash().hasKey(vQueue + ":body", "m1")).isFalse();
+        assertThat(redisTemplate.opsForHash().hasKey(vQueue + ":refs", "m1")).isFalse();
+        assertThat(redisTemplate.hasKey(vQueue + ":" + GROUP2)).isFalse();
+    }
+    
+    private void put(String msgId, long offset) {
+        redisClient.executeLua(ScriptRegistry.PUT_MESSAGE,
+                Arrays.asList(vQueue + ":" + GROUP + "," + vQueue + ":" + GROUP2, vQueue + ":body", vQueue + ":refs"),
+                100, offset, msgId, "body-" + msgId);
+    }
+}
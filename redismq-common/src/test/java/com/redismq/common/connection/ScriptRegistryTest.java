@@ -0,0 +1,55 @@
+package com.redismq.common.connection;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisCallback;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author hzh
+ * @date 2024/12/15 lua脚本注册
+ */
+class ScriptRegistryTest extends RedisTestSupport {
+    
+    @Test
+    void registeredScriptSha1MatchesRedis() throws IllegalAccessException {
+        List<LuaScript> scripts = new ArrayList<>();
+        for (Field field : ScriptRegistry.class.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && field.getType() == LuaScript.class) {
+                scripts.add((LuaScript) field.get(null));
+            }
+        }
+        assertThat(scripts).isNotEmpty();
+        for (LuaScript script : scripts) {
+            String sha1 = redisTemplate.execute((RedisCallback<String>) connection -> connection.scriptingCommands()
+                    .scriptLoad(script.getScript().getBytes(StandardCharsets.UTF_8)));
+            assertThat(script.getSha1()).as(script.getName()).isEqualTo(sha1);
+        }
+    }
+    
+    @Test
+    void registryHasNoInlineCache() {
+        for (Field field : ScriptRegistry.class.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                assertThat(field.getType()).as(field.getName()).isIn(LuaScript.class, String.class);
+            }
+        }
+    }
+    
+    @Test
+    void inlineScriptRunsWithoutRegistry() {
+        Long result = redisClient.executeLua("return redis.call('incrBy', KEYS[1], ARGV[1])",
+                Collections.singletonList("inline"), 3);
+        assertThat(result).isEqualTo(3L);
+        List list = redisClient.luaList("return {KEYS[1], ARGV[1]}", Collections.singletonList("k"),
+                new Object[] {"v"});
+        assertThat(list).containsExactly("k", "v");
+    }
+}
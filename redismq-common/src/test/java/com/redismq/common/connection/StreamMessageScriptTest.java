@@ -0,0 +1,130 @@
+package com.redismq.common.connection;
+
+import com.redismq.common.constant.RedisMQConstant;
+import com.redismq.common.offload.BodyOffloads;
+import com.redismq.common.pojo.Message;
+import com.redismq.common.serializer.MessageCodecs;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author hzh
+ * @date 2024/12/15 stream的写入 认领和清理
+ */
+class StreamMessageScriptTest extends RedisTestSupport {
+    
+    private static final String QUEUE = "stream";
+    
+    private static final String V_QUEUE = QUEUE + "$0";
+    
+    private String stream;
+    
+    @BeforeEach
+    void setUpQueue() {
+        stream = vQueue(QUEUE) + ":stream";
+    }
+    
+    private Long put(Message... messages) {
+        List<Object> args = new ArrayList<>();
+        args.add(100);
+        for (Message message : messages) {
+            args.add(-1L);
+            args.add(message.getId());
+            args.add(MessageCodecs.encode(message));
+        }
+        return redisClient.executeLua(ScriptRegistry.PUT_STREAM_MESSAGE,
+                Arrays.asList(stream, vQueue(QUEUE) + ":offset"), args.toArray());
+    }
+    
+    private static Message message(String id) {
+        Message message = new Message();
+        message.setId(id);
+        message.setQueue(QUEUE);
+        message.setVirtualQueueName(V_QUEUE);
+        message.setBody(id);
+        return message;
+    }
+    
+    private static List<String> ids(List<Message> messages) {
+        return messages.stream().map(Message::getId).collect(Collectors.toList());
+    }
+    
+    @Test
+    void putUsesVirtualQueueOffsetAsStreamId() {
+        assertThat(put(message("m1"), message("m2"))).isEqualTo(2L);
+        assertThat(redisMQClientUtil.getLogOffset(V_QUEUE)).isEqualTo(2L);
+        redisMQClientUtil.createStreamGroup(V_QUEUE, false, false);
+        List<Message> messages = redisMQClientUtil.pullStreamMessage(V_QUEUE, "c1", 10, 0L);
+        assertThat(ids(messages)).containsExactly("m1", "m2");
+        assertThat(messages.get(1).getOffset()).isEqualTo(2L);
+    }
+    
+    @Test
+    void newOffsetContinuesAfterLastStreamId() {
+        //偏移量key丢失或者从旧版本升级 stream的id必须继续递增
+        put(message("m1"));
+        redisTemplate.delete(vQueue(QUEUE) + ":offset");
+        assertThat(put(message("m2"))).isEqualTo(2L);
+    }
+    
+    @Test
+    void claimRedeliversIdleMessagesToAnotherConsumer() {
+        put(message("m1"), message("m2"));
+        redisMQClientUtil.createStreamGroup(V_QUEUE, false, false);
+        redisMQClientUtil.pullStreamMessage(V_QUEUE, "c1", 10, 0L);
+        
+        Pair<String, List<Message>> claimed = redisMQClientUtil.claimStreamMessage(V_QUEUE, "c2", 0L, "0-0", 10);
+        assertThat(claimed.getKey()).isEqualTo("0-0");
+        assertThat(ids(claimed.getValue())).containsExactly("m1", "m2");
+    }
+    
+    @Test
+    void ackTrimsMessagesAllGroupsPassed() {
+        put(message("m1"), message("m2"), message("m3"));
+        redisMQClientUtil.createStreamGroup(V_QUEUE, false, false);
+        redisMQClientUtil.pullStreamMessage(V_QUEUE, "c1", 10, 0L);
+        
+        //m2还在消费 只能清理到m1
+        assertThat(redisMQClientUtil.ackStreamMessage(V_QUEUE, Arrays.asList(1L, 3L))).isTrue();
+        assertThat(redisTemplate.opsForStream().size(stream)).isEqualTo(2L);
+        
+        assertThat(redisMQClientUtil.ackStreamMessage(V_QUEUE, Collections.singletonList(2L))).isTrue();
+        assertThat(redisTemplate.opsForStream().size(stream)).isZero();
+    }
+    
+    @Test
+    void trimDeletesOffloadedPayloadFromClient() {
+        Message message = message("big");
+        Map<String, Object> header = new HashMap<>();
+        header.put(BodyOffloads.HEADER, 1);
+        message.setHeader(header);
+        String payloadKey = RedisMQConstant.getPayloadKey(V_QUEUE, "big");
+        redisTemplate.opsForList().rightPush(payloadKey, "body");
+        put(message, message("small"));
+        redisMQClientUtil.createStreamGroup(V_QUEUE, false, false);
+        redisMQClientUtil.pullStreamMessage(V_QUEUE, "c1", 10, 0L);
+        
+        redisMQClientUtil.ackStreamMessage(V_QUEUE, Arrays.asList(1L, 2L));
+        assertThat(redisTemplate.hasKey(payloadKey)).isFalse();
+    }
+    
+    @Test
+    void destroyGroupSkipsMissingStream() {
+        assertThat(redisClient.executeLua(ScriptRegistry.DESTROY_STREAM_GROUP, Collections.singletonList(stream),
+                GROUP)).isEqualTo(0L);
+        redisMQClientUtil.createStreamGroup(V_QUEUE, false, false);
+        assertThat(redisClient.executeLua(ScriptRegistry.DESTROY_STREAM_GROUP, Collections.singletonList(stream),
+                GROUP)).isEqualTo(1L);
+    }
+}
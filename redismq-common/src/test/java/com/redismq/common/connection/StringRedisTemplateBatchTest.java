@@ -0,0 +1,45 @@
+package com.redismq.common.connection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author hzh
+ * @date 2024/12/15 批量命令
+ */
+class StringRedisTemplateBatchTest extends RedisTestSupport {
+    
+    @Test
+    void executeAsyncUsesLettuceWithoutExecutor() throws Exception {
+        redisTemplate.opsForValue().set("k", "v");
+        AtomicInteger submitted = new AtomicInteger();
+        StringRedisTemplateBatch batch = new StringRedisTemplateBatch(redisTemplate, r -> {
+            submitted.incrementAndGet();
+            r.run();
+        });
+        batch.zAdd("z", "a", 1).zAdd("z", "a", 2).zSize("z").get("k").get("missing")
+                .rPush("l", Arrays.asList("1", "2"));
+        
+        List<Object> results = batch.executeAsync().toCompletableFuture().get(5, TimeUnit.SECONDS);
+        
+        assertThat(submitted).hasValue(0);
+        assertThat(results).containsExactly(true, false, 1L, "v", null, 2L);
+    }
+    
+    @Test
+    void executeAsyncMatchesPipelineResults() throws Exception {
+        redisTemplate.opsForValue().set("k", "v");
+        StringRedisTemplateBatch async = new StringRedisTemplateBatch(redisTemplate, Runnable::run);
+        async.zAdd("z1", "a", 1).zSize("z1").get("k").rPush("l1", Arrays.asList("1"));
+        StringRedisTemplateBatch sync = new StringRedisTemplateBatch(redisTemplate, Runnable::run);
+        sync.zAdd("z2", "a", 1).zSize("z2").get("k").rPush("l2", Arrays.asList("1"));
+        
+        assertThat(async.executeAsync().toCompletableFuture().get(5, TimeUnit.SECONDS)).isEqualTo(sync.execute());
+    }
+}
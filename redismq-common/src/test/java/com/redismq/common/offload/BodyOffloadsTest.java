@@ -0,0 +1,109 @@
+package com.redismq.common.offload;
+
+import com.redismq.common.config.GlobalConfigCache;
+import com.redismq.common.connection.RedisTestSupport;
+import com.redismq.common.constant.RedisMQConstant;
+import com.redismq.common.exception.RedisMqException;
+import com.redismq.common.pojo.Message;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author hzh
+ * @date 2024/12/15 大消息主体单独存储
+ */
+class BodyOffloadsTest extends RedisTestSupport {
+    
+    private static final String V_QUEUE = "offload$0";
+    
+    @BeforeEach
+    void setUp() {
+        GlobalConfigCache.GLOBAL_CONFIG.offloadThreshold = 10;
+        GlobalConfigCache.GLOBAL_CONFIG.offloadChunkSize = 4;
+    }
+    
+    @Test
+    void largeBodyIsChunkedAndLoadedLazily() {
+        Message large = message("m1", "0123456789ab");
+        Message small = message("m2", "small");
+        
+        Map<Message, Object> offloaded = BodyOffloads.offload(Arrays.asList(large, small));
+        Map<String, List<String>> payloads = BodyOffloads.chunks(V_QUEUE, offloaded);
+        
+        assertThat(offloaded).containsOnlyKeys(large);
+        assertThat(large.getHeader()).containsEntry(BodyOffloads.HEADER, 3);
+        assertThat(small.getHeader()).isNull();
+        String payloadKey = RedisMQConstant.getPayloadKey(V_QUEUE, "m1");
+        assertThat(payloads.get(payloadKey)).containsExactly("0123", "4567", "89ab");
+        
+        redisMQClientUtil.putPayloads(payloads);
+        Message pulled = message("m1", null);
+        pulled.setHeader(large.getHeader());
+        BodyOffloads.lazyLoad(pulled, redisMQClientUtil);
+        
+        assertThat(pulled.toString()).doesNotContain("0123");
+        assertThat(pulled.getBody()).isEqualTo("0123456789ab");
+    }
+    
+    @Test
+    void restoreBringsBodyBack() {
+        Message large = message("m1", "0123456789ab");
+        Map<Message, Object> offloaded = BodyOffloads.offload(Arrays.asList(large));
+        
+        BodyOffloads.restore(offloaded);
+        
+        assertThat(large.getBody()).isEqualTo("0123456789ab");
+        assertThat(large.getHeader()).doesNotContainKey(BodyOffloads.HEADER);
+    }
+    
+    @Test
+    void restoreBringsOriginalObjectBack() {
+        Map<String, Object> original = new HashMap<>();
+        original.put("content", "0123456789ab");
+        Message large = new Message();
+        large.setId("m1");
+        large.setVirtualQueueName(V_QUEUE);
+        large.setBody(original);
+        Map<Message, Object> offloaded = BodyOffloads.offload(Arrays.asList(large));
+        
+        BodyOffloads.restore(offloaded);
+        
+        //重试时主体还是原来的对象 不会变成json字符串
+        assertThat(large.getBody()).isSameAs(original);
+    }
+    
+    @Test
+    void disabledOffloadKeepsBody() {
+        GlobalConfigCache.GLOBAL_CONFIG.offloadThreshold = 0;
+        Message large = message("m1", "0123456789ab");
+        
+        assertThat(BodyOffloads.offload(Arrays.asList(large))).isEmpty();
+        assertThat(large.getBody()).isEqualTo("0123456789ab");
+    }
+    
+    @Test
+    void missingPayloadFailsOnLoad() {
+        Message pulled = message("m1", null);
+        Map<Message, Object> offloaded = BodyOffloads.offload(Arrays.asList(message("m1", "0123456789ab")));
+        pulled.setHeader(offloaded.keySet().iterator().next().getHeader());
+        BodyOffloads.lazyLoad(pulled, redisMQClientUtil);
+        
+        assertThatThrownBy(pulled::getBody).isInstanceOf(RedisMqException.class).hasMessageContaining("m1");
+    }
+    
+    private static Message message(String id, String body) {
+        Message message = new Message();
+        message.setId(id);
+        message.setVirtualQueueName(V_QUEUE);
+        message.setBody(body);
+        return message;
+    }
+}
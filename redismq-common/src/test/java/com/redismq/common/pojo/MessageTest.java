@@ -0,0 +1,50 @@
+package com.redismq.common.pojo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author hzh
+ * @date 2024/12/15 消息
+ */
+class MessageTest {
+    
+    @Test
+    void toStringDoesNotLoadOffloadedBody() {
+        AtomicInteger loads = new AtomicInteger();
+        Message message = new Message();
+        message.setId("m1");
+        message.setBodyLoader(() -> {
+            loads.incrementAndGet();
+            return "payload";
+        });
+        
+        String text = message.toString();
+        
+        assertThat(loads).hasValue(0);
+        assertThat(text).contains("id=m1").doesNotContain("bodyLoader").doesNotContain("rawBody");
+        assertThat(message.getBody()).isEqualTo("payload");
+        assertThat(loads).hasValue(1);
+    }
+    
+    @Test
+    void deepCloneCopiesHeaderAndSharesBody() {
+        Message message = new Message();
+        message.setBody("body");
+        message.setId("m1");
+        message.setOffset(3L);
+        message.setHeader(new HashMap<>());
+        message.getHeader().put("a", 1);
+        
+        Message clone = message.deepClone();
+        clone.getHeader().put("b", 2);
+        
+        assertThat(clone.getBody()).isSameAs(message.getBody());
+        assertThat(clone.getOffset()).isEqualTo(3L);
+        assertThat(message.getHeader()).doesNotContainKey("b");
+    }
+}
@@ -0,0 +1,112 @@
+package com.redismq.common.serializer;
+
+import com.redismq.common.exception.RedisMqException;
+import com.redismq.common.pojo.Message;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author hzh
+ * @date 2024/12/15 消息主体编解码器
+ */
+class BodyCodecsTest {
+    
+    @Test
+    void kryoEncodesBodyAndRecordsCodecInHeader() {
+        Order order = new Order(7L, "book");
+        Message message = message(order);
+        
+        BodyCodecs.encode(message, KryoBodyCodec.NAME);
+        
+        assertThat(message.getBody()).isInstanceOf(String.class);
+        assertThat(message.getHeader()).containsEntry(BodyCodecs.HEADER, KryoBodyCodec.NAME);
+        BodyCodec codec = BodyCodecs.of(message);
+        assertThat(codec).isInstanceOf(KryoBodyCodec.class);
+        Order decoded = codec.decode(message.getBody().toString(), Order.class);
+        assertThat(decoded.getId()).isEqualTo(7L);
+        assertThat(decoded.getName()).isEqualTo("book");
+    }
+    
+    @Test
+    void kryoConvertsToOtherParameterTypes() {
+        KryoBodyCodec codec = new KryoBodyCodec();
+        String data = codec.encode(new Order(7L, "book"));
+        
+        Map<?, ?> map = codec.decode(data, Map.class);
+        String json = codec.decode(data, String.class);
+        
+        assertThat(map.get("name")).isEqualTo("book");
+        assertThat(RedisMQStringMapper.toMap(json)).containsEntry("id", 7);
+    }
+    
+    @Test
+    void jsonAndBlankCodecLeaveMessageUntouched() {
+        Message message = message("body");
+        
+        BodyCodecs.encode(message, JsonBodyCodec.NAME);
+        BodyCodecs.encode(message, null);
+        
+        assertThat(message.getBody()).isEqualTo("body");
+        assertThat(message.getHeader()).isNull();
+        assertThat(BodyCodecs.of(message)).isNull();
+    }
+    
+    @Test
+    void alreadyEncodedBodyIsNotEncodedTwice() {
+        Message message = message(new Order(1L, "a"));
+        BodyCodecs.encode(message, KryoBodyCodec.NAME);
+        Object encoded = message.getBody();
+        
+        BodyCodecs.encode(message, KryoBodyCodec.NAME);
+        
+        assertThat(message.getBody()).isSameAs(encoded);
+    }
+    
+    @Test
+    void unknownCodecFails() {
+        assertThatThrownBy(() -> BodyCodecs.encode(message("body"), "unknown")).isInstanceOf(RedisMqException.class)
+                .hasMessageContaining("unknown");
+    }
+    
+    private static Message message(Object body) {
+        Message message = new Message();
+        message.setId("m1");
+        message.setBody(body);
+        return message;
+    }
+    
+    public static class Order {
+        
+        private Long id;
+        
+        private String name;
+        
+        public Order() {
+        }
+        
+        public Order(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+        
+        public Long getId() {
+            return id;
+        }
+        
+        public void setId(Long id) {
+            this.id = id;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.redismq.common.serializer;
+
+import com.redismq.common.exception.RedisMqException;
+import com.redismq.common.pojo.Message;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author hzh
+ * @date 2024/12/15 紧凑格式编解码器
+ */
+class CompactMessageCodecTest {
+    
+    private final CompactMessageCodec codec = new CompactMessageCodec();
+    
+    @Test
+    void roundTripKeepsAllFields() {
+        Message message = message("消息主体");
+        message.setExecuteTime(-5L);
+        Map<String, Object> header = new HashMap<>();
+        header.put("h", "v");
+        message.setHeader(header);
+        message.setOffset(300L);
+        message.setExecuteScope(1700000000000L);
+        
+        String data = codec.encode(message);
+        //redis按UTF-8存储 编解码后内容不变
+        Message decoded = codec.decode(new String(data.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+        
+        assertThat(codec.canDecode(data)).isTrue();
+        assertThat(decoded.getId()).isEqualTo("m1");
+        assertThat(decoded.getKey()).isEqualTo("k");
+        assertThat(decoded.getQueue()).isEqualTo("q");
+        assertThat(decoded.getTag()).isEqualTo("t");
+        assertThat(decoded.getVirtualQueueName()).isEqualTo("q$0");
+        assertThat(decoded.getExecuteTime()).isEqualTo(-5L);
+        assertThat(decoded.getBody()).isEqualTo("消息主体");
+        assertThat(decoded.getHeader()).containsEntry("h", "v");
+        assertThat(decoded.getOffset()).isEqualTo(300L);
+        assertThat(decoded.getExecuteScope()).isEqualTo(1700000000000L);
+    }
+    
+    @Test
+    void readsOffsetTrailerAppendedByScript() {
+        String data = codec.encode(message("body"));
+        
+        Message decoded = codec.decode(data + CompactMessageCodec.TRAILER + "12,34");
+        
+        assertThat(decoded.getOffset()).isEqualTo(12L);
+        assertThat(decoded.getExecuteScope()).isEqualTo(34L);
+        assertThat(decoded.getBody()).isEqualTo("body");
+    }
+    
+    @Test
+    void missingOffsetDefaultsToZero() {
+        Message decoded = codec.decode(codec.encode(message(null)));
+        
+        assertThat(decoded.getBody()).isNull();
+        assertThat(decoded.getOffset()).isZero();
+        assertThat(decoded.getExecuteScope()).isZero();
+        assertThat(decoded.getHeader()).isNull();
+    }
+    
+    @Test
+    void objectBodyIsStoredAsJson() {
+        Map<String, Object> body = new HashMap<>();
+        body.put("id", 7);
+        
+        Message decoded = codec.decode(codec.encode(message(body)));
+        
+        assertThat(RedisMQStringMapper.toMap(decoded.getBody().toString())).containsEntry("id", 7);
+    }
+    
+    @Test
+    void isSmallerThanJson() {
+        Message message = message("body");
+        message.setOffset(1L);
+        
+        assertThat(codec.encode(message).length()).isLessThan(MessageCodecs.JSON.encode(message).length());
+    }
+    
+    @Test
+    void decodesBothFormatsDuringMigration() {
+        Message message = message("body");
+        
+        assertThat(MessageCodecs.decode(MessageCodecs.JSON.encode(message)).getId()).isEqualTo("m1");
+        assertThat(MessageCodecs.decode(MessageCodecs.COMPACT.encode(message)).getId()).isEqualTo("m1");
+        assertThat(MessageCodecs.JSON.canDecode(codec.encode(message))).isFalse();
+    }
+    
+    @Test
+    void rejectsUnknownVersion() {
+        String data = CompactMessageCodec.MAGIC + "\u0009";
+        
+        assertThatThrownBy(() -> codec.decode(data)).isInstanceOf(RedisMqException.class)
+                .hasMessageContaining("unsupported version");
+    }
+    
+    private static Message message(Object body) {
+        Message message = new Message();
+        message.setId("m1");
+        message.setKey("k");
+        message.setQueue("q");
+        message.setTag("t");
+        message.setVirtualQueueName("q$0");
+        message.setBody(body);
+        return message;
+    }
+}
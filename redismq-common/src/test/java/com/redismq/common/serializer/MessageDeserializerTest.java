@@ -0,0 +1,87 @@
+package com.redismq.common.serializer;
+
+import com.redismq.common.pojo.Message;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author hzh
+ * @date 2024/12/15 消息流式解析
+ */
+class MessageDeserializerTest {
+    
+    @Test
+    void objectBodyIsBoundToTypeWithoutString() {
+        Message message = RedisMQStringMapper.toBean(
+                "{\"id\":\"m1\",\"queue\":\"q\",\"offset\":5,\"executorScope\":9,"
+                        + "\"body\":{\"id\":7,\"name\":\"book\"},\"header\":{\"h\":\"v\"}}", Message.class);
+        
+        assertThat(message.getId()).isEqualTo("m1");
+        assertThat(message.getQueue()).isEqualTo("q");
+        assertThat(message.getOffset()).isEqualTo(5L);
+        assertThat(message.getExecuteScope()).isEqualTo(9L);
+        assertThat(message.getHeader()).containsEntry("h", "v");
+        assertThat(message.getRawBody()).isNotNull();
+        
+        Order order = message.parseJavaBean(Order.class);
+        
+        assertThat(order.getId()).isEqualTo(7L);
+        assertThat(order.getName()).isEqualTo("book");
+    }
+    
+    @Test
+    void rawBodyTurnsIntoJsonStringOnDemand() {
+        Message message = RedisMQStringMapper.toBean("{\"id\":\"m1\",\"body\":{\"id\":7}}", Message.class);
+        
+        Map<String, Object> body = RedisMQStringMapper.toMap(message.getBody().toString());
+        
+        assertThat(body).containsEntry("id", 7);
+    }
+    
+    @Test
+    void scalarBodiesKeepTheirType() {
+        assertThat(RedisMQStringMapper.toBean("{\"body\":\"text\"}", Message.class).getBody()).isEqualTo("text");
+        assertThat(RedisMQStringMapper.toBean("{\"body\":12}", Message.class).getBody()).isEqualTo(12);
+        assertThat(RedisMQStringMapper.toBean("{\"body\":true}", Message.class).getBody()).isEqualTo(true);
+        assertThat(RedisMQStringMapper.toBean("{\"body\":null}", Message.class).getBody()).isNull();
+    }
+    
+    @Test
+    void missingFieldsDefaultToEmpty() {
+        Message message = RedisMQStringMapper.toBean("{\"id\":\"m1\",\"unknown\":{\"a\":[1,2]},\"tag\":\"t\"}",
+                Message.class);
+        
+        assertThat(message.getId()).isEqualTo("m1");
+        assertThat(message.getTag()).isEqualTo("t");
+        assertThat(message.getKey()).isEmpty();
+        assertThat(message.getVirtualQueueName()).isEmpty();
+        assertThat(message.getOffset()).isZero();
+        assertThat(message.getExecuteTime()).isZero();
+    }
+    
+    public static class Order {
+        
+        private Long id;
+        
+        private String name;
+        
+        public Long getId() {
+            return id;
+        }
+        
+        public void setId(Long id) {
+            this.id = id;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -39,4 +39,10 @@ public @interface RedisListener {
 
     //队列最大长度 60万
     int queueMaxSize() default -1;
+
+    //消息主体编解码器 json kryo 默认配置文件上是json
+    String bodyCodec() default "";
+
+    //存储方式 zset log 默认配置文件上是zset 延时队列固定zset
+    String storage() default "";
 }
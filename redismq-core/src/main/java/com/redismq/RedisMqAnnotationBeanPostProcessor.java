@@ -4,6 +4,7 @@ package com.redismq;
 import com.redismq.common.config.GlobalConfigCache;
 import com.redismq.common.connection.RedisMQClientUtil;
 import com.redismq.common.constant.OffsetEnum;
+import com.redismq.common.constant.QueueStorage;
 import com.redismq.common.exception.RedisMqException;
 import com.redismq.common.pojo.Queue;
 import com.redismq.common.serializer.RedisMQStringMapper;
@@ -11,6 +12,7 @@ import com.redismq.container.AbstractMessageListenerContainer;
 import com.redismq.container.RedisMQListenerContainer;
 import com.redismq.core.RedisListenerContainerManager;
 import com.redismq.core.RedisListenerEndpoint;
+import com.redismq.core.RedisListenerInvoker;
 import com.redismq.core.RedisMqClient;
 import com.redismq.interceptor.ConsumeInterceptor;
 import com.redismq.queue.QueueManager;
@@ -148,6 +150,16 @@ public class RedisMqAnnotationBeanPostProcessor implements BeanPostProcessor, Or
         if (redisListener.queueMaxSize() > 0) {
             queue.setQueueMaxSize(redisListener.queueMaxSize());
         }
+        if (StringUtils.isNotBlank(redisListener.bodyCodec())) {
+            queue.setBodyCodec(redisListener.bodyCodec());
+        }
+        if (StringUtils.isNotBlank(redisListener.storage())) {
+            queue.setStorage(redisListener.storage());
+        }
+        //延时队列按时间排序 不能使用偏移量游标
+        if (queue.isDelayState()) {
+            queue.setStorage(QueueStorage.ZSET);
+        }
     
     
         redisMqClient.registerQueue(queue);
@@ -159,11 +171,13 @@ public class RedisMqAnnotationBeanPostProcessor implements BeanPostProcessor, Or
 
         //监听端点 封装方法名 bean名字 和routingKey一对一。一个队列可能有多个
         List<RedisListenerEndpoint> redisListenerEndpoints = redisListenerEndpointMap.computeIfAbsent(queue.getQueueName(), q -> new ArrayList<>());
+        RedisListenerInvoker invoker = new RedisListenerInvoker(bean, invocableMethod);
         for (String tag : redisListener.tag()) {
             RedisListenerEndpoint redisListenerEndpoint = new RedisListenerEndpoint();
             redisListenerEndpoint.setTag(tag);
             redisListenerEndpoint.setBean(bean);
             redisListenerEndpoint.setMethod(invocableMethod);
+            redisListenerEndpoint.setInvoker(invoker);
             redisListenerEndpoint.setId(queue.getQueueName() + SPLITE + tag);
             redisListenerEndpoints.add(redisListenerEndpoint);
         }
@@ -235,7 +249,7 @@ public class RedisMqAnnotationBeanPostProcessor implements BeanPostProcessor, Or
                     CollectionUtils.isEmpty(consumeInterceptorMap) ?
                     new ArrayList<>() : new ArrayList<>(consumeInterceptorMap.values())
                     ,remotingClient
-            , queueGroupOffset,queueMaxOffset);
+            , queueGroupOffset,queueMaxOffset, redisMqClient.getClientId());
             
             RedisListenerContainerManager redisListenerContainerManager = redisMqClient.getRedisListenerContainerManager();
             redisListenerContainerManager.registerContainer(listenerContainer, listenerEndpoints);
@@ -346,5 +360,11 @@ public class RedisMqAnnotationBeanPostProcessor implements BeanPostProcessor, Or
         if (queue.getQueueMaxSize() == null || queue.getQueueMaxSize() <= 0) {
             queue.setQueueMaxSize(GlobalConfigCache.GLOBAL_CONFIG.getQueueMaxSize());
         }
+        if (StringUtils.isBlank(queue.getBodyCodec())) {
+            queue.setBodyCodec(GlobalConfigCache.QUEUE_CONFIG.getBodyCodec());
+        }
+        if (StringUtils.isBlank(queue.getStorage())) {
+            queue.setStorage(GlobalConfigCache.QUEUE_CONFIG.getStorage());
+        }
     }
 }
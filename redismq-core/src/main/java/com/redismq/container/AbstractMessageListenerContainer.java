@@ -4,6 +4,7 @@ import com.redismq.common.connection.RedisMQClientUtil;
 import com.redismq.common.pojo.Queue;
 import com.redismq.core.RedisListenerCallable;
 import com.redismq.core.RedisListenerEndpoint;
+import com.redismq.core.RedisListenerInvoker;
 import com.redismq.delay.DelayTimeoutTaskManager;
 import com.redismq.interceptor.ConsumeInterceptor;
 import lombok.Data;
@@ -147,7 +148,12 @@ public abstract class AbstractMessageListenerContainer {
         if (redisListenerEndpoint == null) {
            return null;
         }
-        RedisListenerCallable runnable = new RedisListenerCallable(redisListenerEndpoint.getBean(), redisListenerEndpoint.getMethod(),
+        RedisListenerInvoker invoker = redisListenerEndpoint.getInvoker();
+        if (invoker == null) {
+            invoker = new RedisListenerInvoker(redisListenerEndpoint.getBean(), redisListenerEndpoint.getMethod());
+            redisListenerEndpoint.setInvoker(invoker);
+        }
+        RedisListenerCallable runnable = new RedisListenerCallable(redisListenerEndpoint.getBean(), invoker,
                 this.getRetryMax(),
                 this.redisMQClientUtil);
         runnable.setArgs(message);
@@ -0,0 +1,227 @@
+package com.redismq.container;
+
+import com.redismq.common.pojo.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消费窗口。任务按完成顺序回收,任意一个任务完成就可以补充新的消息,慢任务不会阻塞整个虚拟队列。
+ * 偏移量只提交到按拉取顺序连续完成的位置,保证重启后不会跳过还没消费完的消息。
+ * 超时的任务不再占用窗口,但是在它真正完成之前偏移量不会越过它
+ *
+ * @author hzh
+ * @date 2024/12/08
+ */
+class ConsumeWindow {
+
+    protected static final Logger log = LoggerFactory.getLogger(ConsumeWindow.class);
+
+    private final CompletionService<Message> completionService;
+
+    /**
+     * 窗口大小
+     */
+    private final int capacity;
+
+    /**
+     * 最小拉取数量
+     */
+    private final int minPullSize;
+
+    /**
+     * 任务超时时间 超时的任务移出窗口不再等待
+     */
+    private final long taskTimeout;
+
+    /**
+     * 窗口内的任务 按拉取顺序
+     */
+    private final Map<Future<Message>, InFlight> inFlights = new LinkedHashMap<>();
+
+    /**
+     * 还在执行并且没有超时的任务数量
+     */
+    private int running;
+
+    /**
+     * 上一次回收完成的任务数量 用来估算下一次拉取的数量
+     */
+    private int lastCompleted;
+
+    ConsumeWindow(Executor executor, int capacity, int minPullSize, long taskTimeout) {
+        this.completionService = new ExecutorCompletionService<>(executor);
+        this.capacity = capacity;
+        this.minPullSize = Math.max(1, Math.min(minPullSize, capacity));
+        this.taskTimeout = taskTimeout;
+        this.lastCompleted = this.minPullSize;
+    }
+
+    void submit(Callable<Message> callable, Message message) {
+        Future<Message> future = completionService.submit(callable);
+        inFlights.put(future, new InFlight(message));
+        running++;
+    }
+
+    /**
+     * 没有需要等待的任务 超时的任务不再等待
+     */
+    boolean isEmpty() {
+        return running == 0;
+    }
+
+    /**
+     * 窗口剩余空位 已经完成和超时的任务不占用空位
+     */
+    int free() {
+        return capacity - running;
+    }
+
+    /**
+     * 下一次拉取的数量。按上一轮的消费速度拉取,不超过窗口剩余空位
+     */
+    int pullSize() {
+        int expect = Math.max(minPullSize, lastCompleted << 1);
+        return Math.min(free(), expect);
+    }
+
+    /**
+     * 回收完成的任务
+     *
+     * @param waitMillis 没有任务完成时最多等待的时间 0不等待
+     * @return {@link AckBatch}
+     */
+    AckBatch poll(long waitMillis) {
+        List<Message> completed = new ArrayList<>();
+        try {
+            //窗口为空时只回收超时移出窗口后才完成的任务,不等待
+            Future<Message> future = waitMillis > 0 && !inFlights.isEmpty()
+                    ? completionService.poll(waitMillis, TimeUnit.MILLISECONDS)
+                    : completionService.poll();
+            while (future != null) {
+                complete(future, completed);
+                future = completionService.poll();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        expire();
+        lastCompleted = completed.size();
+        return new AckBatch(completed, commit());
+    }
+
+    private void complete(Future<Message> future, List<Message> completed) {
+        //超时移出窗口的任务晚完成的也一样确认
+        InFlight inFlight = inFlights.get(future);
+        if (inFlight != null) {
+            if (!inFlight.expired) {
+                running--;
+            }
+            inFlight.done = true;
+        }
+        try {
+            Message message = future.get();
+            if (message != null) {
+                completed.add(message);
+            }
+        } catch (Exception e) {
+            log.error("redisMQ consume window task error", e);
+        }
+    }
+
+    /**
+     * 超时的任务不再等待 还在执行的任务留在窗口里挡住偏移量,累计确认不会删除还在消费的消息
+     */
+    private void expire() {
+        long now = System.currentTimeMillis();
+        for (InFlight inFlight : inFlights.values()) {
+            if (!inFlight.done && !inFlight.expired && now - inFlight.submitTime > taskTimeout) {
+                inFlight.expired = true;
+                running--;
+                log.error("redisMQ consume timeout drop msgId:{}", inFlight.msgId);
+            }
+        }
+    }
+
+    /**
+     * 从窗口头部移除连续完成的任务
+     *
+     * @return 可以提交的偏移量 没有返回-1
+     */
+    private long commit() {
+        long offset = -1L;
+        Iterator<InFlight> iterator = inFlights.values().iterator();
+        while (iterator.hasNext()) {
+            InFlight inFlight = iterator.next();
+            if (!inFlight.done) {
+                break;
+            }
+            if (inFlight.offset != null) {
+                offset = Math.max(offset, inFlight.offset);
+            }
+            iterator.remove();
+        }
+        return offset;
+    }
+
+    /**
+     * 窗口内的任务 超时的任务可能在窗口里停留很久,只保留id和偏移量
+     */
+    private static class InFlight {
+
+        private final String msgId;
+
+        private final Long offset;
+
+        private final long submitTime = System.currentTimeMillis();
+
+        private boolean done;
+
+        private boolean expired;
+
+        private InFlight(Message message) {
+            this.msgId = message.getId();
+            this.offset = message.getOffset();
+        }
+    }
+
+    /**
+     * 一次回收的结果
+     */
+    static class AckBatch {
+
+        /**
+         * 已经完成的消息 可以直接删除
+         */
+        private final List<Message> messages;
+
+        /**
+         * 连续完成的最大偏移量
+         */
+        private final long offset;
+
+        AckBatch(List<Message> messages, long offset) {
+            this.messages = messages;
+            this.offset = offset;
+        }
+
+        List<Message> getMessages() {
+            return messages;
+        }
+
+        long getOffset() {
+            return offset;
+        }
+    }
+}
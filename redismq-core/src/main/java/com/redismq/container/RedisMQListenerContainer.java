@@ -1,9 +1,13 @@
 package com.redismq.container;
 
+import com.redismq.common.config.ConsumserConfig;
 import com.redismq.common.config.GlobalConfigCache;
 import com.redismq.common.connection.RedisMQClientUtil;
+import com.redismq.common.connection.ScriptRegistry;
 import com.redismq.common.constant.AckMode;
 import com.redismq.common.constant.MessageType;
+import com.redismq.common.constant.OffsetEnum;
+import com.redismq.common.constant.QueueStorage;
 import com.redismq.common.exception.RedisMqException;
 import com.redismq.common.pojo.Message;
 import com.redismq.common.pojo.Queue;
@@ -20,12 +24,17 @@ import org.slf4j.LoggerFactory;
 import org.springframework.util.CollectionUtils;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.Future;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
@@ -72,11 +81,49 @@ public class RedisMQListenerContainer extends AbstractMessageListenerContainer {
      * 消费者偏移量是否超过允许的最大值。如果超过-拉取消息一直到当前偏移量
      */
     private  boolean pullOffsetLow;
+    /**
+     * 共享日志存储 从分组游标拉取
+     */
+    private final boolean logStorage;
+    /**
+     * 共享日志每个虚拟队列的起始偏移量 第一次拉取时确定,没有游标或者重置到最新时从这里开始
+     */
+    private final Map<String, Long> logStartOffsets = new ConcurrentHashMap<>();
+    /**
+     * stream存储 分配到的虚拟队列一直阻塞读取 不依赖拉取通知
+     */
+    private final boolean streamStorage;
+    /**
+     * stream消费者名称
+     */
+    private final String consumerName;
+    /**
+     * 正在阻塞读取的stream虚拟队列
+     */
+    private final Set<String> streamQueues = ConcurrentHashMap.newKeySet();
+    /**
+     * 已经创建消费组的stream虚拟队列
+     */
+    private final Set<String> streamGroups = ConcurrentHashMap.newKeySet();
+    /**
+     * stream读取线程 每个分配到的虚拟队列一个 不占用拉取任务的线程
+     */
+    private final ExecutorService streamExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+        
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "REDISMQ-STREAM-" + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }
+    });
     /**
      * 停止
      */
     @Override
     public void doStop() {
+        streamExecutor.shutdown();
         work.shutdown();
         delayTimeoutTaskManager.stop();
         try {
@@ -91,7 +138,8 @@ public class RedisMQListenerContainer extends AbstractMessageListenerContainer {
     }
     
     public RedisMQListenerContainer(RedisMQClientUtil redisMQClientUtil, Queue queue,
-            List<ConsumeInterceptor> consumeInterceptorList,RemotingClient remotingClient,long lastGroupOffset,long lastOffset) {
+            List<ConsumeInterceptor> consumeInterceptorList,RemotingClient remotingClient,long lastGroupOffset,long lastOffset,
+            String consumerName) {
         super(redisMQClientUtil, queue, consumeInterceptorList );
         lifeExtension();
         work = new ThreadPoolExecutor(getConcurrency(), getMaxConcurrency(), 60L, TimeUnit.SECONDS,
@@ -123,6 +171,9 @@ public class RedisMQListenerContainer extends AbstractMessageListenerContainer {
         }, new ThreadPoolExecutor.CallerRunsPolicy());
         this.lastGroupOffset=lastGroupOffset;
         this.lastOffset=lastOffset;
+        this.logStorage = !delay && QueueStorage.isLog(queue.getStorage());
+        this.streamStorage = !delay && QueueStorage.isStream(queue.getStorage());
+        this.consumerName = consumerName;
         pullOffsetLow =  lastOffset - lastGroupOffset > GlobalConfigCache.CONSUMER_CONFIG.getGroupOffsetLowMax();
         this.remotingClient=remotingClient;
     }
@@ -135,30 +186,66 @@ public class RedisMQListenerContainer extends AbstractMessageListenerContainer {
      */
     public Set<Long> pull(String vQueueName) {
         Set<Long> delayTimes = new LinkedHashSet<>();
-        List<Future<Message>> futures = new ArrayList<>();
+        ConsumeWindow window = new ConsumeWindow(work, super.maxConcurrency, super.concurrency,
+                GLOBAL_CONFIG.getTaskTimeout());
+        //共享日志本次已经投递的偏移量 -1先重新投递上次没有确认的消息
+        long delivered = -1L;
+        //stream认领超时消息的位置和下一次认领的时间
+        String claimId = "0-0";
+        long nextClaimTime = 0L;
         while (isRunning()) {
+            //stream不再分配给自己的虚拟队列停止读取
+            if (streamStorage && !isAssigned(vQueueName)) {
+                break;
+            }
             try {
                 //获取已经到时间要执行的任务  本地消息的数量相当于本地偏移量   localMessages.size()是指从这个位置之后开始啦
                 long pullTime = System.currentTimeMillis();
                 
-                int pullSize = super.maxConcurrency - futures.size();
+                //回收已经完成的任务
+                ackMessage(vQueueName, window.poll(0));
                 
-                //说明消费队列已经满了 等待所有任务消费完成，然后再继续拉取消息.后面优化加个最长等待时间。是针对每个任务的。可以动态控制。如果超时的话任务就取消丢弃。
-                if (pullSize <= 0) {
-                    pullSize = waitConsume(vQueueName,futures, GLOBAL_CONFIG.getTaskTimeout(), true);
+                //说明消费窗口已经满了 任意一个任务完成就可以继续拉取
+                while (window.free() <= 0 && isRunning()) {
+                    ackMessage(vQueueName, window.poll(GLOBAL_CONFIG.getTaskWaitTime()));
                 }
                 //延时队列 必须等待执行完成后才能获取下一次的消息
-                if (delay){
-                    if (!futures.isEmpty()){
-                        pullSize = waitConsume(vQueueName,futures, GLOBAL_CONFIG.getTaskTimeout(), true);
+                if (delay) {
+                    while (!window.isEmpty() && isRunning()) {
+                        ackMessage(vQueueName, window.poll(GLOBAL_CONFIG.getTaskWaitTime()));
                     }
                 }
+                int pullSize = window.pullSize();
                 
                 // 先获取偏移量落后的group的持久化的message
                 List<Message> messages = getOffsetLowStoreMessage(vQueueName);
                 
                 // 从redis中获取消息
-                if (CollectionUtils.isEmpty(messages)){
+                //stream 先认领超时没有确认的消息 窗口空闲时阻塞读取新的消息
+                if (CollectionUtils.isEmpty(messages) && streamStorage) {
+                    if (pullTime >= nextClaimTime) {
+                        Pair<String, List<Message>> claimed = redisMQClientUtil.claimStreamMessage(vQueueName,
+                                consumerName, GLOBAL_CONFIG.getTaskTimeout(), claimId, pullSize);
+                        claimId = claimed.getKey();
+                        messages = claimed.getValue();
+                        if ("0-0".equals(claimId)) {
+                            nextClaimTime = pullTime + GLOBAL_CONFIG.getTaskTimeout();
+                        }
+                    }
+                    if (CollectionUtils.isEmpty(messages)) {
+                        messages = redisMQClientUtil.pullStreamMessage(vQueueName, consumerName, pullSize,
+                                window.isEmpty() ? GLOBAL_CONFIG.getStreamBlockTime() : 0L);
+                    }
+                } else if (CollectionUtils.isEmpty(messages) && logStorage) {
+                    messages = redisMQClientUtil.pullLogMessage(vQueueName, delivered, pullSize,
+                            logStartOffset(vQueueName),
+                            OffsetEnum.LATEST.equals(GlobalConfigCache.CONSUMER_CONFIG.getAutoOffsetConsume()));
+                    for (Message message : messages) {
+                        if (message.getOffset() != null) {
+                            delivered = Math.max(delivered, message.getOffset());
+                        }
+                    }
+                } else if (CollectionUtils.isEmpty(messages)){
                     long startScore=0;
                     if (!delay){
                         startScore=lastGroupOffset;
@@ -172,8 +259,12 @@ public class RedisMQListenerContainer extends AbstractMessageListenerContainer {
                         return delayTimes;
                     }
                     //消息已经拉不到了。如果消费未完成 等待1秒钟消费完成，如果1秒没有消费完。再继续拉取消息，因为有可能有其他新的消息进来。
-                    if (!futures.isEmpty()) {
-                        waitConsume(vQueueName,futures, GLOBAL_CONFIG.getTaskWaitTime(), false);
+                    if (!window.isEmpty()) {
+                        ackMessage(vQueueName, window.poll(GLOBAL_CONFIG.getTaskWaitTime()));
+                        continue;
+                    }
+                    //stream已经阻塞等待过 继续读取
+                    if (streamStorage) {
                         continue;
                     }
                     
@@ -186,7 +277,9 @@ public class RedisMQListenerContainer extends AbstractMessageListenerContainer {
                     break;
                 }
               
-                List<RedisListenerCallable> callableInvokes = new ArrayList<>();
+                Map<RedisListenerCallable, Message> callableInvokes = new LinkedHashMap<>();
+                //stream和共享日志找不到监听方法的消息 本轮结束后一次确认
+                List<Message> dropped = new ArrayList<>();
                 for (Message message : messages) {
                     if (!isRunning()) {
                         break;
@@ -209,13 +302,17 @@ public class RedisMQListenerContainer extends AbstractMessageListenerContainer {
                         RedisListenerCallable callable = super.getRedisListenerCallable(id, message);
                         if (callable == null) {
                             // 如果是框架中的异常,说明异常是不可修复的.删除异常的消息
-                            redisMQClientUtil.removeMessage(vQueueName, message.getId());
+                            if (streamStorage || logStorage) {
+                                dropped.add(message);
+                            } else {
+                                redisMQClientUtil.removeMessage(vQueueName, message.getId());
+                            }
                             log.error("RedisMqException   not found queue or tag removeMessage:{}",
                                     RedisMQStringMapper.toJsonStr(message));
                             continue;
                         }
                         
-                        callableInvokes.add(callable);
+                        callableInvokes.put(callable, message);
                         //不是延时队列的话记录偏移量
                         if (!delay){
                             Message lastMsg = messages.get(messages.size() - 1);
@@ -228,6 +325,9 @@ public class RedisMQListenerContainer extends AbstractMessageListenerContainer {
                         }
                     }
                 }
+                if (!dropped.isEmpty()) {
+                    ackMessage(vQueueName, new ConsumeWindow.AckBatch(dropped, -1L));
+                }
                 if (CollectionUtils.isEmpty(callableInvokes)) {
                     if (isRunning()) {
                         log.error("redisMQ callableInvokes isEmpty queueName:{}", vQueueName);
@@ -235,10 +335,7 @@ public class RedisMQListenerContainer extends AbstractMessageListenerContainer {
                     continue;
                 }
                 
-                for (RedisListenerCallable callableInvoke : callableInvokes) {
-                    Future<Message> submit = work.submit(callableInvoke);
-                    futures.add(submit);
-                }
+                callableInvokes.forEach(window::submit);
             } catch (Throwable e) {
                 if (isRunning()) {
                     //报错需要  semaphore.release();
@@ -247,6 +344,16 @@ public class RedisMQListenerContainer extends AbstractMessageListenerContainer {
                         log.error("redisMQ [ERROR] queue not is zset type。 cancel pop");
                         stop();
                     }
+                    //stream或者消费组被删除 重新创建后继续读取
+                    if (streamStorage && isNoGroup(e)) {
+                        try {
+                            redisMQClientUtil.createStreamGroup(vQueueName, OffsetEnum.LATEST.equals(
+                                    GlobalConfigCache.CONSUMER_CONFIG.getNewGroupOffset()), false);
+                            continue;
+                        } catch (Exception ex) {
+                            log.error("redisMQ create stream group error", ex);
+                        }
+                    }
                     try {
                         Thread.sleep(5000L);
                     } catch (InterruptedException ex) {
@@ -327,45 +434,58 @@ public class RedisMQListenerContainer extends AbstractMessageListenerContainer {
     }
     
     /**
-     * 等待消费任务完成
-     *
-     * @return int
+     * 共享日志的起始偏移量 偏移量在虚拟队列内分配,最新的位置从虚拟队列读取。
+     * 只在容器第一次拉取这个虚拟队列时确定,之后重置到最新也不会跳过新写入的消息
      */
-    private int waitConsume(String vQueueName,List<Future<Message>> futures, long milliseconds, boolean timeoutDrop) {
-        List<Message> messageList = new ArrayList<>();
-        for (Future<Message> future : futures) {
-            try {
-                Message msg = future.get(milliseconds, TimeUnit.MILLISECONDS);
-                messageList.add(msg);
-            } catch (Exception e) {
-                log.error("redisMQ waitConsume error", e);
+    private long logStartOffset(String vQueueName) {
+        return logStartOffsets.computeIfAbsent(vQueueName, q -> {
+            ConsumserConfig consumerConfig = GlobalConfigCache.CONSUMER_CONFIG;
+            boolean latest = OffsetEnum.LATEST.equals(consumerConfig.getNewGroupOffset())
+                    || OffsetEnum.LATEST.equals(consumerConfig.getAutoOffsetConsume());
+            return latest ? redisMQClientUtil.getLogOffset(q) + 1 : 0L;
+        });
+    }
+    
+    private void ackMessage(String vQueueName, ConsumeWindow.AckBatch ackBatch) {
+        List<Message> messageList = ackBatch.getMessages();
+        //stream按偏移量xack 超时没有确认的消息由下一次认领重新投递
+        if (streamStorage) {
+            List<Long> offsets = messageList.stream().map(Message::getOffset).filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            if (!offsets.isEmpty()) {
+                redisMQClientUtil.ackStreamMessage(vQueueName, offsets);
             }
+            return;
         }
-        
-        if (timeoutDrop) {
-            futures.clear();
-        }
-        
-        int pullSize;
-        pullSize = super.maxConcurrency;
-        if (CollectionUtils.isEmpty(messageList)) {
-            return pullSize;
+        //共享日志 累计确认时连续完成的偏移量一次提交 否则只确认完成的消息 超时的消息下次重新投递
+        if (logStorage) {
+            long offset = GlobalConfigCache.CONSUMER_CONFIG.isCumulativeAck() ? ackBatch.getOffset() : -1L;
+            String msgIds = messageList.stream().filter(m -> m.getOffset() == null || m.getOffset() > offset)
+                    .map(Message::getId).collect(Collectors.joining(","));
+            if (offset >= 0 || !msgIds.isEmpty()) {
+                redisMQClientUtil.ackLogMessage(vQueueName, offset, msgIds);
+            }
+            return;
         }
-        if (!timeoutDrop) {
-            futures.removeIf(Future::isDone);
+        //普通队列累计确认 只有偏移量之后乱序完成的消息单独确认
+        if (!delay && GlobalConfigCache.CONSUMER_CONFIG.isCumulativeAck()) {
+            long offset = ackBatch.getOffset();
+            String msgIds = messageList.stream().filter(m -> m.getOffset() == null || m.getOffset() > offset)
+                    .map(Message::getId).collect(Collectors.joining(","));
+            //偏移量之前的消息之前回收时已经单独确认 还在队列里的就是本次完成的这些
+            List<Message> ranged = messageList.stream().filter(m -> m.getOffset() != null && m.getOffset() <= offset)
+                    .collect(Collectors.toList());
+            if (offset >= 0 || !msgIds.isEmpty()) {
+                long minOffset = ranged.stream().mapToLong(Message::getOffset).min().orElse(offset);
+                List<String> rangeIds = ranged.stream().map(Message::getId).collect(Collectors.toList());
+                redisMQClientUtil.ackCumulativeMessage(vQueueName, offset, minOffset, rangeIds, msgIds);
+            }
+            return;
         }
-        
-        ackMessage(vQueueName, messageList);
-        
-        messageList.clear();
-        return pullSize;
-    }
-    
-    private void ackMessage(String vQueueName, List<Message> messageList) {
         if (!messageList.isEmpty()){
-            Long offset = messageList.stream().map(Message::getOffset).max(Long::compareTo).get();
             String msgIds = messageList.stream().map(Message::getId).collect(Collectors.joining(","));
-            redisMQClientUtil.ackBatchMessage(vQueueName,msgIds,offset);
+            //偏移量只提交到连续完成的位置
+            redisMQClientUtil.ackBatchMessage(vQueueName, msgIds, ackBatch.getOffset());
         }
     }
     
@@ -385,6 +505,11 @@ public class RedisMQListenerContainer extends AbstractMessageListenerContainer {
     public void start(String virtualQueue, Long startTime) {
         
         running();
+        
+        if (streamStorage) {
+            startStream(virtualQueue);
+            return;
+        }
 
         //为空说明当前能获取到数据
         DelayTimeoutTask timeoutTask = delayTimeoutTaskManager
@@ -419,6 +544,58 @@ public class RedisMQListenerContainer extends AbstractMessageListenerContainer {
 
 
     
+    /**
+     * stream虚拟队列在单独的线程中一直阻塞读取,直到不再分配给自己或者容器暂停
+     *
+     * @param virtualQueue 虚拟队列
+     */
+    private void startStream(String virtualQueue) {
+        if (!streamQueues.add(virtualQueue)) {
+            return;
+        }
+        try {
+            streamExecutor.execute(() -> {
+                try {
+                    if (streamGroups.add(virtualQueue)) {
+                        ConsumserConfig consumerConfig = GlobalConfigCache.CONSUMER_CONFIG;
+                        redisMQClientUtil.createStreamGroup(virtualQueue,
+                                OffsetEnum.LATEST.equals(consumerConfig.getNewGroupOffset()),
+                                OffsetEnum.LATEST.equals(consumerConfig.getAutoOffsetConsume()));
+                    }
+                    //添加到当前执行队列。看门狗用
+                    INVOKE_VIRTUAL_QUEUES.add(virtualQueue);
+                    pull(virtualQueue);
+                } catch (Exception e) {
+                    streamGroups.remove(virtualQueue);
+                    log.error("redisMQ stream pull error virtualQueue:{}", virtualQueue, e);
+                } finally {
+                    INVOKE_VIRTUAL_QUEUES.remove(virtualQueue);
+                    streamQueues.remove(virtualQueue);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            streamQueues.remove(virtualQueue);
+        }
+    }
+    
+    private static boolean isNoGroup(Throwable e) {
+        while (e != null) {
+            if (e.getMessage() != null && e.getMessage().contains("NOGROUP")) {
+                return true;
+            }
+            e = e.getCause();
+        }
+        return false;
+    }
+    
+    /**
+     * 虚拟队列是否还分配给自己
+     */
+    private boolean isAssigned(String virtualQueue) {
+        List<String> virtualQueues = QueueManager.getCurrentVirtualQueues().get(queueName);
+        return virtualQueues != null && virtualQueues.contains(virtualQueue);
+    }
+    
     /**
      * 消费锁续期 看门狗
      */
@@ -432,12 +609,11 @@ public class RedisMQListenerContainer extends AbstractMessageListenerContainer {
                         return;
                     }
                     for (String virtualQueue : INVOKE_VIRTUAL_QUEUES) {
-                        String lua = "if (redis.call('exists', KEYS[1]) == 1) then " + "redis.call('expire', KEYS[1],"
-                                + GLOBAL_CONFIG.virtualLockTime + "); " + "return 1; " + "end; " + "return 0;";
                         try {
                             List<String> list = new ArrayList<>();
                             list.add(getVirtualQueueLock(virtualQueue));
-                            Long success = redisMQClientUtil.executeLua(lua, list);
+                            Long success = redisMQClientUtil
+                                    .executeLua(ScriptRegistry.LIFE_EXTENSION, list, GLOBAL_CONFIG.virtualLockTime);
                         } catch (Exception e) {
                             if (isRunning()) {
                                 log.error("lifeExtension  redisTemplate.expire Exception", e);
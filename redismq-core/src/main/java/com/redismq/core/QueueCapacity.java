@@ -0,0 +1,47 @@
+package com.redismq.core;
+
+/**
+ * 生产者缓存的虚拟队列容量。写入脚本发现队列满时返回当前长度,退避时间内同一个虚拟队列不再访问redis
+ *
+ * @author hzh
+ * @date 2024/12/15
+ */
+class QueueCapacity {
+
+    /**
+     * 最近一次观察到的队列长度 -1未知
+     */
+    private volatile long depth = -1L;
+
+    /**
+     * 在这个时间之前认为队列是满的
+     */
+    private volatile long fullUntil;
+
+    /**
+     * 写入脚本返回队列已满
+     *
+     * @param depth   队列长度
+     * @param backoff 退避时间
+     */
+    void full(long depth, long backoff) {
+        this.depth = depth;
+        this.fullUntil = System.currentTimeMillis() + backoff;
+    }
+
+    /**
+     * 写入成功 队列有空位
+     */
+    void available() {
+        this.depth = -1L;
+        this.fullUntil = 0L;
+    }
+
+    boolean isFull(long now) {
+        return now < fullUntil;
+    }
+
+    long getDepth() {
+        return depth;
+    }
+}
@@ -1,17 +1,15 @@
 package com.redismq.core;
 
+import com.redismq.common.compress.BodyCompressors;
 import com.redismq.common.connection.RedisMQClientUtil;
+import com.redismq.common.offload.BodyOffloads;
 import com.redismq.common.exception.RedisMqException;
 import com.redismq.common.pojo.Message;
-import com.redismq.common.serializer.RedisMQStringMapper;
 import com.redismq.interceptor.ConsumeInterceptor;
-import org.apache.commons.lang3.ArrayUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.CollectionUtils;
-import org.springframework.util.ReflectionUtils;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -37,9 +35,9 @@ public class RedisListenerCallable implements Callable<Message> {
      */
     private Object args;
     /**
-     *方法
+     *方法调用器
      */
-    private final Method method;
+    private final RedisListenerInvoker invoker;
     /**
      *消费状态
      */
@@ -65,10 +63,6 @@ public class RedisListenerCallable implements Callable<Message> {
      *最大重试次数
      */
     private int retryCount;
-    /**
-     *消息体类型
-     */
-    private  Class<?> messageType ;
     public String getQueueName() {
         return queueName;
     }
@@ -110,19 +104,19 @@ public class RedisListenerCallable implements Callable<Message> {
      * Return the target method to call.
      */
     public Method getMethod() {
-        return this.method;
+        return this.invoker.getMethod();
     }
 
     public RedisListenerCallable(Object target, Method method, int retryMax, RedisMQClientUtil redisMQClientUtil) {
+        this(target, new RedisListenerInvoker(target, method), retryMax, redisMQClientUtil);
+    }
+    
+    public RedisListenerCallable(Object target, RedisListenerInvoker invoker, int retryMax,
+            RedisMQClientUtil redisMQClientUtil) {
         this.target = target;
-        this.method = method;
+        this.invoker = invoker;
         this.retryMax = retryMax;
         this.redisMQClientUtil = redisMQClientUtil;
-        Class<?>[] parameterTypes = method.getParameterTypes();
-        if (ArrayUtils.isEmpty(parameterTypes)) {
-            throw new RedisMqException("redismq consume no has message");
-        }
-        messageType = parameterTypes[0];
     }
 
     @Override
@@ -151,46 +145,23 @@ public class RedisListenerCallable implements Callable<Message> {
         retryCount++;
         try {
             state.running();
-            ReflectionUtils.makeAccessible(this.method);
             Message message = (Message) args;
            
             // 拷贝对象.原对象不会发生改变.否则对象改变了无法删除redis中的数据
-            Message clone = message.deepClone();
-            clone = beforeConsume(clone);
-            Object body = clone.getBody();
-            //参数是Message或者是实体类都可以
-            if (messageType.equals(clone.getClass())) {
-                //是内部message消息
-                this.method.invoke(this.target, clone);
-            }else if(messageType.equals(String.class)){
-                if (!(body instanceof String)){
-                    this.method.invoke(this.target, body.toString());
-                }else{
-                    this.method.invoke(this.target, body);
-                }
-              
-            }
-            //已经是相同的类型 直接可以调用
-            else if (messageType.isAssignableFrom(body.getClass())){
-                this.method.invoke(this.target, body);
-            }
-            else {
-                //监听类的参数不是Message
-                body = RedisMQStringMapper.toBean(body.toString(), messageType);
-                if (messageType.isAssignableFrom(body.getClass())) {
-                    //对象相同直接处理
-                    this.method.invoke(this.target, body);
-                } else{
-                    throw new RedisMqException("ClassNotConvert paramType: "+messageType +" messageClass: "+clone.getClass());
-                }
+            // 没有拦截器并且监听方法拿到的只是消息主体时 原消息不会被修改 不需要拷贝
+            // 单独存储的主体在第一次获取时加载
+            BodyOffloads.lazyLoad(message, redisMQClientUtil);
+            // 压缩的消息解压成拷贝
+            Message clone = BodyCompressors.decompress(message);
+            if (clone == message && (!CollectionUtils.isEmpty(consumeInterceptors) || invoker.isMessageParameter())) {
+                clone = message.deepClone();
             }
+            clone = beforeConsume(clone);
+            invoker.invoke(clone);
             state.finsh();
             log.debug("redisMQ consumeMessage success queue:{} tag:{}", message.getQueue(), message.getTag());
             afterConsume(clone);
         } catch (Throwable e) {
-            if (e instanceof InvocationTargetException){
-                e = (Exception) e.getCause();
-            }
             if (retryCount > retryMax +1) {
                 state.cancel();
                 log.error("redisMQ run retryMax:{} Cancel", retryMax);
@@ -235,7 +206,7 @@ public class RedisListenerCallable implements Callable<Message> {
 
     @Override
     public String toString() {
-        return this.method.getDeclaringClass().getName() + "." + this.method.getName();
+        return this.invoker.toString();
     }
 
 
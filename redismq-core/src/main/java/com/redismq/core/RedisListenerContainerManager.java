@@ -2,7 +2,6 @@ package com.redismq.core;
 
 import com.redismq.common.constant.RedisMQConstant;
 import com.redismq.common.exception.RedisMqException;
-import com.redismq.common.pojo.PushMessage;
 import com.redismq.container.AbstractMessageListenerContainer;
 import com.redismq.container.RedisMQListenerContainer;
 import org.slf4j.Logger;
@@ -12,6 +11,7 @@ import org.springframework.util.CollectionUtils;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.SynchronousQueue;
@@ -39,16 +39,26 @@ public class RedisListenerContainerManager {
     protected static final Logger log = LoggerFactory.getLogger(RedisListenerContainerManager.class);
     
     /**
-     * 延时队列每次的携带队列和时间戳.数据可能会不同.队列数量要求比较高
+     * 延时队列待拉取的虚拟队列。同一个虚拟队列只会排队一次
      */
-    private final LinkedBlockingQueue<PushMessage> delayBlockingQueue = new LinkedBlockingQueue<>(
+    private final LinkedBlockingQueue<String> delayBlockingQueue = new LinkedBlockingQueue<>(
             DELAY_BLOCKING_QUEUE_SIZE);
     
     /**
-     * 普通消息队列
+     * 延时队列排队中的虚拟队列和最早的执行时间。拉取时会重新计算后续的执行时间,只保留最早的即可
+     */
+    private final Map<String, Long> pendingDelayQueues = new ConcurrentHashMap<>();
+    
+    /**
+     * 普通消息队列待拉取的虚拟队列
      */
     private final LinkedBlockingQueue<String> linkedBlockingQueue = new LinkedBlockingQueue<>(BLOCKING_QUEUE_SIZE);
     
+    /**
+     * 普通消息队列排队中的虚拟队列 重复的通知直接合并
+     */
+    private final Set<String> pendingQueues = ConcurrentHashMap.newKeySet();
+    
     /**
      * boss线程 负责调度普通队列和线程队列。获取队列开启拉取任务的消息
      */
@@ -64,12 +74,38 @@ public class RedisListenerContainerManager {
      */
     private volatile int state = 0;
     
-    public LinkedBlockingQueue<String> getLinkedBlockingQueue() {
-        return linkedBlockingQueue;
+    /**
+     * 通知普通队列拉取消息。已经在排队的虚拟队列不会重复排队
+     *
+     * @param virtualQueue 虚拟队列
+     */
+    public void notifyQueue(String virtualQueue) {
+        if (pendingQueues.add(virtualQueue) && !linkedBlockingQueue.offer(virtualQueue)) {
+            pendingQueues.remove(virtualQueue);
+            log.warn("RedisListener pull queue full virtualQueue:{}", virtualQueue);
+        }
     }
     
-    public LinkedBlockingQueue<PushMessage> getDelayBlockingQueue() {
-        return delayBlockingQueue;
+    /**
+     * 通知延时队列拉取消息。已经在排队的虚拟队列只更新为更早的执行时间
+     *
+     * @param virtualQueue 虚拟队列
+     * @param timestamp    执行时间
+     */
+    public void notifyDelayQueue(String virtualQueue, Long timestamp) {
+        long time = timestamp == null ? System.currentTimeMillis() : timestamp;
+        boolean[] added = new boolean[1];
+        pendingDelayQueues.compute(virtualQueue, (k, old) -> {
+            if (old == null) {
+                added[0] = true;
+                return time;
+            }
+            return Math.min(old, time);
+        });
+        if (added[0] && !delayBlockingQueue.offer(virtualQueue)) {
+            pendingDelayQueues.remove(virtualQueue);
+            log.warn("DelayRedisListener pull queue full virtualQueue:{}", virtualQueue);
+        }
     }
     
     public RedisMQListenerContainer getRedisistenerContainer(String queueName) {
@@ -133,6 +169,8 @@ public class RedisListenerContainerManager {
             while (isRunning()) {
                 try {
                     String virtualName = linkedBlockingQueue.take();
+                    //先移除 拉取过程中的新通知会重新排队
+                    pendingQueues.remove(virtualName);
                     RedisMQListenerContainer container = getRedisistenerContainer(
                             RedisMQConstant.getQueueNameByVirtual(virtualName));
                     container.start(virtualName, System.currentTimeMillis());
@@ -154,10 +192,14 @@ public class RedisListenerContainerManager {
             running();
             while (isRunning()) {
                 try {
-                    PushMessage pushMessage = delayBlockingQueue.take();
+                    String virtualName = delayBlockingQueue.take();
+                    Long timestamp = pendingDelayQueues.remove(virtualName);
+                    if (timestamp == null) {
+                        continue;
+                    }
                     RedisMQListenerContainer container = getRedisistenerContainer(
-                            RedisMQConstant.getQueueNameByVirtual(pushMessage.getQueue()));
-                    container.start(pushMessage.getQueue(), pushMessage.getTimestamp());
+                            RedisMQConstant.getQueueNameByVirtual(virtualName));
+                    container.start(virtualName, timestamp);
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                 } catch (Exception e) {
@@ -12,6 +12,10 @@ public class RedisListenerEndpoint {
     private Method method;
     private String id;
     private String tag;
+    /**
+     * 方法调用器 启动时创建一次
+     */
+    private RedisListenerInvoker invoker;
 
     public String getTag() {
         return tag;
@@ -37,6 +41,14 @@ public class RedisListenerEndpoint {
         this.method = method;
     }
 
+    public RedisListenerInvoker getInvoker() {
+        return invoker;
+    }
+
+    public void setInvoker(RedisListenerInvoker invoker) {
+        this.invoker = invoker;
+    }
+
     public String getId() {
         return id;
     }
@@ -0,0 +1,136 @@
+package com.redismq.core;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.redismq.common.exception.RedisMqException;
+import com.redismq.common.pojo.Message;
+import com.redismq.common.serializer.BodyCodec;
+import com.redismq.common.serializer.BodyCodecs;
+import com.redismq.common.serializer.RedisMQStringMapper;
+import org.apache.commons.lang3.ArrayUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.function.Function;
+
+/**
+ * 监听方法调用器。启动时解析一次方法句柄和参数转换方式,消费时不再使用反射
+ *
+ * @author hzh
+ * @date 2024/12/09
+ */
+public class RedisListenerInvoker {
+
+    /**
+     * 已经绑定目标对象的方法句柄 (Object)void
+     */
+    private final MethodHandle handle;
+
+    /**
+     * 消息转换成方法参数
+     */
+    private final Function<Message, Object> argumentResolver;
+
+    private final Method method;
+
+    /**
+     * 监听方法的参数是否是Message 是的话监听方法可以修改消息
+     */
+    private final boolean messageParameter;
+
+    public RedisListenerInvoker(Object target, Method method) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (ArrayUtils.isEmpty(parameterTypes)) {
+            throw new RedisMqException("redismq consume no has message");
+        }
+        this.method = method;
+        try {
+            ReflectionUtils.makeAccessible(method);
+            this.handle = MethodHandles.lookup().unreflect(method).bindTo(target)
+                    .asType(MethodType.methodType(void.class, Object.class));
+        } catch (IllegalAccessException e) {
+            throw new RedisMqException("redismq listener method not accessible: " + method, e);
+        }
+        this.argumentResolver = argumentResolver(parameterTypes[0]);
+        this.messageParameter = parameterTypes[0].equals(Message.class);
+    }
+
+    /**
+     * 调用监听方法 异常原样抛出
+     *
+     * @param message 消息
+     */
+    public void invoke(Message message) throws Throwable {
+        handle.invokeExact(argumentResolver.apply(message));
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public boolean isMessageParameter() {
+        return messageParameter;
+    }
+
+    private static Function<Message, Object> argumentResolver(Class<?> messageType) {
+        //参数是Message或者是实体类都可以
+        if (messageType.equals(Message.class)) {
+            return message -> {
+                //按消息头记录的编解码器还原主体 监听方法拿到的是拷贝的消息
+                BodyCodec bodyCodec = BodyCodecs.of(message);
+                if (bodyCodec != null) {
+                    message.setBody(bodyCodec.decode(message.getBody().toString(), Object.class));
+                }
+                return message;
+            };
+        }
+        if (messageType.equals(String.class)) {
+            return message -> {
+                BodyCodec bodyCodec = BodyCodecs.of(message);
+                if (bodyCodec != null) {
+                    return bodyCodec.decode(message.getBody().toString(), String.class);
+                }
+                return message.getBody().toString();
+            };
+        }
+        ObjectReader reader = RedisMQStringMapper.readerFor(messageType);
+        return message -> {
+            BodyCodec bodyCodec = BodyCodecs.of(message);
+            if (bodyCodec != null) {
+                return bodyCodec.decode(message.getBody().toString(), messageType);
+            }
+            //拉取的对象主体 直接从缓存的token绑定成参数类型 不再经过字符串
+            TokenBuffer rawBody = message.getRawBody();
+            if (rawBody != null) {
+                try (JsonParser parser = rawBody.asParser()) {
+                    return reader.readValue(parser);
+                } catch (IOException e) {
+                    throw new RedisMqException(
+                            "ClassNotConvert paramType: " + messageType + " messageId: " + message.getId(), e);
+                }
+            }
+            Object body = message.getBody();
+            //已经是相同的类型 直接可以调用
+            if (messageType.isAssignableFrom(body.getClass())) {
+                return body;
+            }
+            //监听类的参数不是Message
+            body = RedisMQStringMapper.toBean(body.toString(), messageType);
+            if (messageType.isAssignableFrom(body.getClass())) {
+                return body;
+            }
+            throw new RedisMqException(
+                    "ClassNotConvert paramType: " + messageType + " messageClass: " + message.getClass());
+        };
+    }
+
+    @Override
+    public String toString() {
+        return this.method.getDeclaringClass().getName() + "." + this.method.getName();
+    }
+}
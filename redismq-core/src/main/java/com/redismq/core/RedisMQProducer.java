@@ -1,18 +1,28 @@
 package com.redismq.core;
 
-import com.google.common.collect.Lists;
 import com.redismq.common.config.GlobalConfigCache;
 import com.redismq.common.connection.RedisMQClientUtil;
+import com.redismq.common.connection.LuaScript;
+import com.redismq.common.connection.ScriptRegistry;
 import com.redismq.common.constant.MessageType;
 import com.redismq.common.constant.ProducerAck;
+import com.redismq.common.constant.QueueFullPolicy;
+import com.redismq.common.constant.QueueStorage;
 import com.redismq.common.constant.RedisMQConstant;
+import com.redismq.common.exception.MessageSpilledException;
 import com.redismq.common.exception.QueueFullException;
 import com.redismq.common.exception.RedisMqException;
+import com.redismq.common.pojo.BatchSendResult;
 import com.redismq.common.pojo.MergedWarpMessage;
 import com.redismq.common.pojo.Message;
 import com.redismq.common.pojo.MessageFuture;
 import com.redismq.common.pojo.PushMessage;
 import com.redismq.common.pojo.Queue;
+import com.redismq.common.pojo.SendResult;
+import com.redismq.common.compress.BodyCompressors;
+import com.redismq.common.offload.BodyOffloads;
+import com.redismq.common.serializer.BodyCodecs;
+import com.redismq.common.serializer.MessageCodecs;
 import com.redismq.common.serializer.RedisMQStringMapper;
 import com.redismq.id.MsgIDGenerator;
 import com.redismq.interceptor.ProducerInterceptor;
@@ -31,18 +41,26 @@ import org.springframework.util.CollectionUtils;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.stream.Collectors;
 
 import static com.redismq.common.config.GlobalConfigCache.GLOBAL_CONFIG;
@@ -51,9 +69,8 @@ import static com.redismq.common.constant.GlobalConstant.SPLITE;
 import static com.redismq.common.constant.GlobalConstant.V_QUEUE_SPLITE;
 import static com.redismq.common.constant.MessageType.SEND_MESSAGE_FAIL;
 import static com.redismq.common.constant.MessageType.SEND_MESSAGE_SUCCESS;
-import static com.redismq.common.constant.RedisMQConstant.NAMESPACE;
-import static com.redismq.common.constant.RedisMQConstant.PREFIX;
 import static com.redismq.rpc.cache.RpcGlobalCache.FUTURES;
+import static com.redismq.rpc.cache.RpcGlobalCache.putFuture;
 
 /**
  * @Author: hzh
@@ -69,20 +86,57 @@ public class RedisMQProducer {
     
     private List<ProducerInterceptor> producerInterceptors;
     
-    private final BlockingQueue<Message> basket = new LinkedBlockingQueue<>(PRODUCER_CONFIG.getProducerBasketSize());
-    
     private SeataUtil seataUtil;
     
-    private final Object mergeLock = new Object();
+    /**
+     * seata全局事务id->事务内的消息
+     */
+    private final Map<String, TransactionMessageBuffer> seataBuffers = new ConcurrentHashMap<>();
     
     private final int MAX_MERGE_SEND_MILLS = GlobalConfigCache.NETTY_CONFIG.getMaxMergeSendMills();
     
-    private boolean isSending = false;
+    /**
+     * 没有key的消息轮询虚拟队列
+     */
+    private final Map<String, AtomicLong> roundRobin = new ConcurrentHashMap<>();
     
-    private final ScheduledExecutorService timerExecutor = new ScheduledThreadPoolExecutor(1);
+    /**
+     * 合并发送通道 按虚拟队列hash分配
+     */
+    private final MergedSendLane[] lanes;
+    
+    /**
+     * 所有通道共享的篮子容量
+     */
+    private final int basketCapacity;
+    
+    /**
+     * 篮子里的消息数量 包含队列满了等待重试的消息
+     */
+    private final AtomicInteger basketSize = new AtomicInteger();
+    
+    /**
+     * 虚拟队列->缓存的队列容量
+     */
+    private final Map<String, QueueCapacity> capacities = new ConcurrentHashMap<>();
+    
+    /**
+     * 写入时队列已满
+     */
+    private static final long QUEUE_FULL = -1L;
+    
+    /**
+     * 写入redis失败
+     */
+    private static final long PUT_ERROR = -2L;
     
     private ExecutorService mergeSendExecutorService;
     
+    /**
+     * 异步批量发送线程池
+     */
+    private ExecutorService batchSendExecutorService;
+    
     public List<ProducerInterceptor> getProducerInterceptors() {
         return producerInterceptors;
     }
@@ -98,6 +152,13 @@ public class RedisMQProducer {
             this.seataUtil = new SeataUtil();
         }
         this.remotingClient = remotingClient;
+        int laneNum = Math.max(1, PRODUCER_CONFIG.getProducerSendLanes());
+        //通道共享篮子容量 一个虚拟队列落在一个通道上也可以使用整个篮子
+        this.basketCapacity = Math.max(1, PRODUCER_CONFIG.getProducerBasketSize());
+        this.lanes = new MergedSendLane[laneNum];
+        for (int i = 0; i < laneNum; i++) {
+            lanes[i] = new MergedSendLane();
+        }
     }
     
     /**
@@ -105,29 +166,43 @@ public class RedisMQProducer {
      */
     @PostConstruct
     public void init() {
-        mergeSendExecutorService = new ThreadPoolExecutor(1, 1, 60, TimeUnit.MILLISECONDS,
-                new LinkedBlockingQueue<>(1000));
-        mergeSendExecutorService.submit(new MergedSendRunnable());
-        
-        // 清理超时任务
-        timerExecutor.scheduleAtFixedRate(() -> {
-            for (Map.Entry<String, MessageFuture> entry : FUTURES.entrySet()) {
-                MessageFuture future = entry.getValue();
-                if (future.isTimeout()) {
-                    FUTURES.remove(entry.getKey());
-                    Message rpcMessage = future.getMessage();
-                    future.setResultMessage(new TimeoutException(
-                            String.format("msgId: %s ,msgType: %s ,msg: %s ,request timeout", rpcMessage.getId(),
-                                    rpcMessage.getBody().toString())));
-                }
+        mergeSendExecutorService = new ThreadPoolExecutor(lanes.length, lanes.length, 60, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new ThreadFactory() {
+            
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+            
+            private static final String NAME_PREFIX = "REDISMQ-MERGE-SEND-";
+            
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, NAME_PREFIX + threadNumber.getAndIncrement());
+                t.setDaemon(true);
+                return t;
             }
-        }, 5000, 5000, TimeUnit.MILLISECONDS);
+        });
+        for (MergedSendLane lane : lanes) {
+            mergeSendExecutorService.submit(lane);
+        }
+        batchSendExecutorService = new ThreadPoolExecutor(lanes.length, lanes.length, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new ThreadFactory() {
+            
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+            
+            private static final String NAME_PREFIX = "REDISMQ-BATCH-SEND-";
+            
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, NAME_PREFIX + threadNumber.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        });
     }
     
     @PreDestroy
     public void destroy() {
-        timerExecutor.shutdown();
-        mergeSendExecutorService.shutdown();
+        mergeSendExecutorService.shutdownNow();
+        batchSendExecutorService.shutdown();
     }
     
     
@@ -202,6 +277,47 @@ public class RedisMQProducer {
         return sendTimingMessage(message, executorTime);
     }
     
+    /**
+     * 异步队列消息
+     */
+    public CompletableFuture<SendResult> sendAsync(Message message) {
+        Queue queue = hasQueue(message.getQueue());
+        return sendSingleMessageAsync(queue, message, null);
+    }
+    
+    /**
+     * 异步队列消息
+     */
+    public CompletableFuture<SendResult> sendAsync(Object obj, String queue, String tag, String key) {
+        Message message = new Message();
+        message.setQueue(queue);
+        message.setBody(obj);
+        if (tag != null) {
+            message.setTag(tag);
+        }
+        if (key != null) {
+            message.setKey(key);
+        }
+        return sendAsync(message);
+    }
+    
+    /**
+     * 异步延迟消息
+     */
+    public CompletableFuture<SendResult> sendDelayAsync(Message message, Long delayTime) {
+        Queue queue = hasDelayQueue(message.getQueue());
+        long executorTime = System.currentTimeMillis() + (delayTime);
+        return sendSingleMessageAsync(queue, message, executorTime);
+    }
+    
+    /**
+     * 异步定时消息
+     */
+    public CompletableFuture<SendResult> sendTimingAsync(Message message, Long executorTime) {
+        Queue queue = hasDelayQueue(message.getQueue());
+        return sendSingleMessageAsync(queue, message, executorTime);
+    }
+    
     /**
      * 单信息
      *
@@ -212,40 +328,13 @@ public class RedisMQProducer {
      */
     public boolean sendSingleMessage(Queue queue, Message message, Long executorTime) {
         Boolean sendAfterCommit = RedisMQDataHelper.get();
-        Long increment = increment(queue);
-        Long executorScope = executorTime;
-        if (executorTime == null) {
-            executorScope = increment;
-        }
-        
-        if (StringUtils.isBlank(message.getVirtualQueueName())) {
-            long num;
-            if (StringUtils.isNotBlank(message.getKey())) {
-                int fnvHash = fnvHash(message.getKey());
-                num = fnvHash % queue.getVirtual();
-            } else {
-                num = increment % queue.getVirtual();
-            }
-            String virtualQueue = queue.getQueueName() + V_QUEUE_SPLITE + num;
-            message.setVirtualQueueName(virtualQueue);
-        }
-        message.setOffset(increment);
-        message.setExecuteScope(executorScope);
-        message.setExecuteTime(executorTime==null ? System.currentTimeMillis() : executorTime);
+        prepareMessage(queue, message, executorTime);
         
         if (sendAfterCommit != null ? sendAfterCommit : GLOBAL_CONFIG.sendAfterCommit) {
             if (TransactionSynchronizationManager.isActualTransactionActive()) {
-                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
-                    @Override
-                    public void afterCommit() {
-                        sendOffMessage(message);
-                    }
-                });
+                springTransactionBuffer().add(message, null);
             } else if (GLOBAL_CONFIG.seataState && RootContext.inGlobalTransaction()) {
-                seataUtil.registerHook(() -> {
-                    sendOffMessage(message);
-                    
-                });
+                seataTransactionBuffer().add(message, null);
             } else {
                 return this.sendOffMessage(message);
             }
@@ -256,31 +345,155 @@ public class RedisMQProducer {
     }
     
     /**
-     * 做发送消息
+     * 异步发送单条消息 不阻塞调用线程,由合并发送线程完成future
      *
-     * @return boolean
+     * @param queue        队列
+     * @param message      消息
+     * @param executorTime 执行时间
+     * @return {@link CompletableFuture}<{@link SendResult}>
      */
-    public boolean sendOffMessage(Message message) {
-        message.setId(MsgIDGenerator.generateIdStr());
-        
-        long timeoutMillis = PRODUCER_CONFIG.getSendMaxTimeout();
-        
-        MessageFuture messageFuture = new MessageFuture();
-        messageFuture.setMessage(message);
-        messageFuture.setTimeout(timeoutMillis);
-        FUTURES.put(message.getId(), messageFuture);
+    public CompletableFuture<SendResult> sendSingleMessageAsync(Queue queue, Message message, Long executorTime) {
+        Boolean sendAfterCommit = RedisMQDataHelper.get();
+        prepareMessage(queue, message, executorTime);
         
-        //队列满了的话阻塞等待
+        if (sendAfterCommit != null ? sendAfterCommit : GLOBAL_CONFIG.sendAfterCommit) {
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                CompletableFuture<SendResult> future = new CompletableFuture<>();
+                springTransactionBuffer().add(message, future);
+                return future;
+            } else if (GLOBAL_CONFIG.seataState && RootContext.inGlobalTransaction()) {
+                CompletableFuture<SendResult> future = new CompletableFuture<>();
+                seataTransactionBuffer().add(message, future);
+                return future;
+            }
+        }
+        return sendOffMessageAsync(message);
+    }
+    
+    /**
+     * 当前spring事务的消息缓冲 第一次发送时注册事务回调。
+     * 事务挂起时解绑缓冲,REQUIRES_NEW的内部事务使用自己的缓冲,恢复时重新绑定
+     */
+    private TransactionMessageBuffer springTransactionBuffer() {
+        TransactionMessageBuffer buffer = (TransactionMessageBuffer) TransactionSynchronizationManager.getResource(this);
+        if (buffer != null) {
+            return buffer;
+        }
+        TransactionMessageBuffer newBuffer = new TransactionMessageBuffer();
+        TransactionSynchronizationManager.bindResource(this, newBuffer);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void suspend() {
+                TransactionSynchronizationManager.unbindResourceIfPossible(RedisMQProducer.this);
+            }
+            
+            @Override
+            public void resume() {
+                TransactionSynchronizationManager.bindResource(RedisMQProducer.this, newBuffer);
+            }
+            
+            @Override
+            public void afterCommit() {
+                flushTransaction(newBuffer);
+            }
+            
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(RedisMQProducer.this);
+                if (status == STATUS_ROLLED_BACK) {
+                    newBuffer.rollback("transaction rolled back");
+                }
+            }
+        });
+        return newBuffer;
+    }
+    
+    /**
+     * 当前seata全局事务的消息缓冲 第一次发送时注册事务回调
+     */
+    private TransactionMessageBuffer seataTransactionBuffer() {
+        String xid = RootContext.getXID();
+        TransactionMessageBuffer buffer = seataBuffers.get(xid);
+        if (buffer != null) {
+            return buffer;
+        }
+        TransactionMessageBuffer newBuffer = new TransactionMessageBuffer();
+        seataBuffers.put(xid, newBuffer);
+        seataUtil.registerHook(() -> {
+            seataBuffers.remove(xid);
+            flushTransaction(newBuffer);
+        }, () -> {
+            seataBuffers.remove(xid);
+            newBuffer.rollback("seata transaction rolled back");
+        });
+        return newBuffer;
+    }
+    
+    /**
+     * 事务提交后整批发送。异步发送的由各自的future返回结果,同步发送的统一等待一次
+     */
+    private void flushTransaction(TransactionMessageBuffer buffer) {
+        List<Message> messages = buffer.getMessages();
+        List<CompletableFuture<SendResult>> futures = buffer.getFutures();
+        List<CompletableFuture<SendResult>> waits = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            CompletableFuture<SendResult> future = futures.get(i);
+            //同步发送的篮子满了阻塞等待 和单条发送保持一致
+            CompletableFuture<SendResult> send = sendOffMessageAsync(messages.get(i), future == null);
+            if (future != null) {
+                transfer(send, future);
+            } else {
+                waits.add(send);
+            }
+        }
+        if (waits.isEmpty()) {
+            return;
+        }
         try {
-            basket.put(message);
-        } catch (InterruptedException e) {
+            CompletableFuture.allOf(waits.toArray(new CompletableFuture[0]))
+                    .get(PRODUCER_CONFIG.getSendMaxTimeout(), TimeUnit.MILLISECONDS);
+        } catch (Exception exx) {
+            log.error("doSendMessage transaction messages wait response error size:{} error:{} ", waits.size(),
+                    exx.getMessage());
+            throw new RedisMqException("doSendMessage transaction messages ", exx);
         }
-        
-        if (!isSending) {
-            synchronized (mergeLock) {
-                mergeLock.notifyAll();
+    }
+    
+    /**
+     * 设置消息的虚拟队列 执行时间。偏移量在写入redis时批量分配
+     */
+    private void prepareMessage(Queue queue, Message message, Long executorTime) {
+        if (StringUtils.isBlank(message.getVirtualQueueName())) {
+            long num;
+            if (StringUtils.isNotBlank(message.getKey())) {
+                int fnvHash = fnvHash(message.getKey());
+                num = Math.floorMod(fnvHash, queue.getVirtual());
+            } else {
+                long increment = roundRobin.computeIfAbsent(queue.getQueueName(), q -> new AtomicLong())
+                        .getAndIncrement();
+                num = (increment & Long.MAX_VALUE) % queue.getVirtual();
             }
+            String virtualQueue = queue.getQueueName() + V_QUEUE_SPLITE + num;
+            message.setVirtualQueueName(virtualQueue);
         }
+        //按队列配置编码消息主体
+        BodyCodecs.encode(message, queue.getBodyCodec());
+        //超过阈值的主体压缩
+        BodyCompressors.compress(message, queue.getQueueName());
+        //普通消息的执行范围就是偏移量,写入redis前分配
+        message.setOffset(null);
+        message.setExecuteScope(executorTime);
+        message.setExecuteTime(executorTime==null ? System.currentTimeMillis() : executorTime);
+    }
+    
+    /**
+     * 做发送消息
+     *
+     * @return boolean
+     */
+    public boolean sendOffMessage(Message message) {
+        long timeoutMillis = PRODUCER_CONFIG.getSendMaxTimeout();
+        MessageFuture messageFuture = offerBasket(message, true);
         
         //同步阻塞等待响应结果
         
@@ -300,14 +513,204 @@ public class RedisMQProducer {
     }
     
     /**
-     * 真实发送消息核心方法
+     * 异步发送消息 篮子满了直接失败,不阻塞调用线程
+     *
+     * @return {@link CompletableFuture}<{@link SendResult}>
+     */
+    public CompletableFuture<SendResult> sendOffMessageAsync(Message message) {
+        return sendOffMessageAsync(message, false);
+    }
+    
+    private CompletableFuture<SendResult> sendOffMessageAsync(Message message, boolean block) {
+        MessageFuture messageFuture = offerBasket(message, block);
+        return messageFuture.getOrigin().thenApply(result -> {
+            if (result != null && result.equals(true)) {
+                return SendResult.of(message);
+            } else if (result instanceof RedisMqException) {
+                throw (RedisMqException) result;
+            } else if (result instanceof Throwable) {
+                throw new RedisMqException("doSendMessage ", (Throwable) result);
+            } else {
+                throw new RedisMqException("doSendMessage  result :" + result);
+            }
+        });
+    }
+    
+    /**
+     * 放入待合并发送的篮子
+     *
+     * @param message 消息
+     * @param block   篮子满了是否阻塞等待
+     * @return {@link MessageFuture}
      */
-    private void doSend(MergedWarpMessage mergedWarpMessage) {
-        //发送前操作
-        List<Message> messages = mergedWarpMessage.getMessages();
-        beforeSend(messages);
+    private MessageFuture offerBasket(Message message, boolean block) {
+        message.setId(MsgIDGenerator.generateIdStr());
+        
+        long timeoutMillis = PRODUCER_CONFIG.getSendMaxTimeout();
+        
+        MessageFuture messageFuture = new MessageFuture();
+        messageFuture.setMessage(message);
+        messageFuture.setTimeout(timeoutMillis);
+        putFuture(message.getId(), messageFuture);
         
-      
+        //fnvHash对Integer.MIN_VALUE返回负数
+        MergedSendLane lane = lanes[Math.floorMod(fnvHash(message.getVirtualQueueName()), lanes.length)];
+        if (!lane.offer(message, block)) {
+            FUTURES.remove(message.getId());
+            messageFuture.setResultMessage(new QueueFullException("RedisMQ Producer Basket Full"));
+        }
+        return messageFuture;
+    }
+    
+    private static void transfer(CompletableFuture<SendResult> source, CompletableFuture<SendResult> target) {
+        source.whenComplete((result, e) -> {
+            if (e != null) {
+                target.completeExceptionally(e);
+            } else {
+                target.complete(result);
+            }
+        });
+    }
+    
+    /**
+     * 批量发送普通消息。不经过合并发送的篮子,也不为每条消息创建future。
+     * 按虚拟队列分组,每组按最大批次拆分后各执行一次写入脚本,一组失败不影响其他组。
+     * 批量发送不参与事务提交后发送,适合数据回灌和扇出任务
+     *
+     * @param messages 消息
+     * @return {@link BatchSendResult}
+     */
+    public BatchSendResult sendBatch(Collection<Message> messages) {
+        BatchSendResult result = new BatchSendResult();
+        for (List<MergedWarpMessage> batches : prepareBatch(messages).values()) {
+            for (MergedWarpMessage batch : batches) {
+                result.merge(sendBatch(batch));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * 异步批量发送普通消息。不同虚拟队列并行写入,同一个虚拟队列按顺序写入
+     *
+     * @param messages 消息
+     * @return {@link CompletableFuture}<{@link BatchSendResult}>
+     */
+    public CompletableFuture<BatchSendResult> sendBatchAsync(Collection<Message> messages) {
+        List<CompletableFuture<BatchSendResult>> futures = new ArrayList<>();
+        for (List<MergedWarpMessage> batches : prepareBatch(messages).values()) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                BatchSendResult result = new BatchSendResult();
+                for (MergedWarpMessage batch : batches) {
+                    result.merge(sendBatch(batch));
+                }
+                return result;
+            }, batchSendExecutorService));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+            BatchSendResult result = new BatchSendResult();
+            for (CompletableFuture<BatchSendResult> future : futures) {
+                result.merge(future.join());
+            }
+            return result;
+        });
+    }
+    
+    /**
+     * 批量发送前校验队列并分配虚拟队列和消息id,按虚拟队列分组拆分
+     *
+     * @return 虚拟队列->按顺序写入的批次
+     */
+    private Map<String, List<MergedWarpMessage>> prepareBatch(Collection<Message> messages) {
+        Map<String, Queue> queues = new HashMap<>();
+        Map<String, List<MergedWarpMessage>> groups = new LinkedHashMap<>();
+        int maxBatchSize = Math.max(1, PRODUCER_CONFIG.producerMaxBatchSize);
+        //整批一次预留id
+        String[] ids = MsgIDGenerator.generateIdStrs(messages.size());
+        int index = 0;
+        for (Message message : messages) {
+            Queue queue = queues.computeIfAbsent(message.getQueue(), this::hasQueue);
+            prepareMessage(queue, message, null);
+            message.setId(ids[index++]);
+            List<MergedWarpMessage> batches = groups
+                    .computeIfAbsent(message.getVirtualQueueName(), q -> new ArrayList<>());
+            MergedWarpMessage last = batches.isEmpty() ? null : batches.get(batches.size() - 1);
+            if (last == null || last.getMessages().size() >= maxBatchSize) {
+                last = new MergedWarpMessage();
+                batches.add(last);
+            }
+            last.getMessages().add(message);
+        }
+        return groups;
+    }
+    
+    /**
+     * 发送一个批次 返回每条消息的结果
+     */
+    private BatchSendResult sendBatch(MergedWarpMessage batch) {
+        List<Message> messages = batch.getMessages();
+        batch.setPushMessage(pushMessage(messages.get(0).getVirtualQueueName(), messages));
+        BatchSendResult result = new BatchSendResult();
+        boolean success;
+        try {
+            beforeSend(messages);
+            success = doSendMessage(batch);
+        } catch (Throwable e) {
+            log.error("RedisMQ sendBatch failed queue:{} size:{} error:{}", batch.getPushMessage().getQueue(),
+                    messages.size(), e.getMessage(), e);
+            success = false;
+        }
+        if (success) {
+            for (Message message : messages) {
+                result.getSendResults().add(SendResult.of(message));
+            }
+        } else {
+            result.getFailedMessages().addAll(messages);
+        }
+        return result;
+    }
+    
+    /**
+     * 订阅推送消息 推送时间是批次中最早的执行时间
+     */
+    private static PushMessage pushMessage(String virtualQueue, List<Message> messages) {
+        PushMessage pushMessage = new PushMessage();
+        pushMessage.setQueue(virtualQueue);
+        pushMessage.setTimestamp(0L);
+        messages.stream().map(Message::getExecuteScope).filter(Objects::nonNull).min(Long::compareTo)
+                .ifPresent(pushMessage::setTimestamp);
+        return pushMessage;
+    }
+    
+    /**
+     * 队列满了只保存到服务端的消息存储 状态是失败,可以从服务端查询后补发。
+     * 保存成功返回{@link MessageSpilledException},保存失败或者没有服务端返回队列满
+     */
+    private void spill(List<Message> messages) {
+        boolean spilled = false;
+        if (remotingClient != null) {
+            try {
+                List<String> msgIds = messages.stream().map(Message::getId).collect(Collectors.toList());
+                spilled = Boolean.TRUE.equals(remotingClient.sendBatchSync(messages, MessageType.CREATE_MESSAGE))
+                        && Boolean.TRUE.equals(remotingClient.sendBatchSync(msgIds, SEND_MESSAGE_FAIL));
+            } catch (Exception e) {
+                log.error("RedisMQ spill message to server error: ", e);
+            }
+        }
+        if (spilled) {
+            log.warn("RedisMQ Producer Queue Full spill to server size:{}", messages.size());
+        }
+        setResults(messages, spilled ? new MessageSpilledException("RedisMQ Producer Queue Full spilled to server")
+                : new QueueFullException("RedisMQ Producer Queue Full"));
+        afterSend(messages, false);
+    }
+    
+    /**
+     * 消息同步到服务端  偏移量分配后才能同步
+     *
+     * @param stored 消息是否已经写入redis 已经写入的同步失败不影响发送结果,否则调用方重发会产生重复消息
+     */
+    private void createRemoteMessage(List<Message> messages, boolean stored) {
         try {
             // 如果是异步确认
             if (PRODUCER_CONFIG.getProductAck().equals(ProducerAck.ASYNC)) {
@@ -323,13 +726,12 @@ public class RedisMQProducer {
                 }
             }
         }catch (Exception e){
-            if (PRODUCER_CONFIG.ignoreRpcError){
+            if (stored || PRODUCER_CONFIG.ignoreRpcError){
                 log.error("remotingClient ignoreRpcError sendBatchSync ig error: ", e);
             }else {
                 throw e;
             }
         }
-        doSendMessage(mergedWarpMessage);
     }
     
     private void afterSend(List<Message> messageList, Boolean success) {
@@ -347,68 +749,181 @@ public class RedisMQProducer {
     
     //底层发送redis消息
     private boolean doSendMessage(MergedWarpMessage mergedWarpMessage) {
+        boolean success = putMessages(mergedWarpMessage) >= 0;
+        completeSend(mergedWarpMessage.getMessages(), success);
+        return success;
+    }
+    
+    /**
+     * 写入redis 队列满了缓存队列长度,退避时间内同一个虚拟队列直接返回满
+     *
+     * @return 本批次最大偏移量 队列满了返回{@link #QUEUE_FULL} 写入失败返回{@link #PUT_ERROR}
+     */
+    private long putMessages(MergedWarpMessage mergedWarpMessage) {
         List<Message> messages = mergedWarpMessage.getMessages();
         
         PushMessage pushMessage = mergedWarpMessage.getPushMessage();
+        QueueCapacity capacity = capacities.computeIfAbsent(pushMessage.getQueue(), q -> new QueueCapacity());
+        if (capacity.isFull(System.currentTimeMillis())) {
+            return QUEUE_FULL;
+        }
         Queue queue = QueueManager.getQueueByVirtual(pushMessage.getQueue());
         Integer queueMaxSize = queue.getQueueMaxSize();
-        String lua ="local messageZsets = KEYS[1];\n" + "local queueSize = ARGV[1];\n" + "local size = 0; \n"
-                + "for messageZset in messageZsets:gmatch(\"([^,]+)\") do\n"
-                + "    size = redis.call('zcard', messageZset);\n"
-                + "    if size and tonumber(size) >= tonumber(queueSize) then\n" + "        return -1;\n" + "    end\n"
-                + "end\n" + "local messageBodyHashKey = KEYS[2];\n" + "\n" + "for i=2, #ARGV, 4 do\n"
-                + "    for messageZset in messageZsets:gmatch(\"([^,]+)\") do\n"
-                + "        redis.call('zadd', messageZset, ARGV[i],ARGV[i+1]);\n" + "    end\n"
-                + "    redis.call(\"hset\", messageBodyHashKey, ARGV[i+2],ARGV[i+3] )\n" + "end\n" + "return size;";
         pushMessage.setQueue(RedisMQConstant.getVQueueNameByVQueue(pushMessage.getQueue()));
+        boolean streamStorage = QueueStorage.isStream(queue.getStorage());
+        LuaScript script;
         List<String> list = new ArrayList<>();
-        // 消息详情key名字 doSendMessage  发送的队列名称增加分组名group   2024-11-27
-        Set<String> group = redisMQClientUtil.getGroups();
-        String queueGroups = group.stream().map(g -> pushMessage.getQueue() + SPLITE + g).collect(Collectors.joining(","));
-        list.add(queueGroups);
-        list.add(pushMessage.getQueue() + ":body");
-        Long size = -2L;
+        if (streamStorage) {
+            //stream消息体直接存在消息里 消费者阻塞读取
+            script = ScriptRegistry.PUT_STREAM_MESSAGE;
+            list.add(pushMessage.getQueue() + ":stream");
+        } else if (QueueStorage.isLog(queue.getStorage())) {
+            //共享日志只写一次 和消费组数量无关
+            script = ScriptRegistry.PUT_LOG_MESSAGE;
+            list.add(pushMessage.getQueue() + ":log");
+            list.add(pushMessage.getQueue() + ":body");
+        } else {
+            script = ScriptRegistry.PUT_MESSAGE;
+            // 消息详情key名字 doSendMessage  发送的队列名称增加分组名group   2024-11-27
+            Set<String> group = redisMQClientUtil.getGroups();
+            String queueGroups = group.stream().map(g -> pushMessage.getQueue() + SPLITE + g).collect(Collectors.joining(","));
+            list.add(queueGroups);
+            list.add(pushMessage.getQueue() + ":body");
+            list.add(pushMessage.getQueue() + ":refs");
+        }
+        //共享日志和stream按偏移量读取 偏移量必须在写入脚本里分配保证顺序
+        boolean scriptOffset = streamStorage || QueueStorage.isLog(queue.getStorage());
+        List<Message> allocated = Collections.emptyList();
+        if (scriptOffset) {
+            //偏移量在虚拟队列内分配 和消息在同一个slot
+            list.add(pushMessage.getQueue() + ":offset");
+            if (!streamStorage) {
+                list.add(pushMessage.getQueue() + ":cursor");
+            }
+        } else {
+            allocated = allocateOffsets(queue, messages);
+            if (allocated == null) {
+                log.error("RedisMQ Producer allocate offset error queue:{}", pushMessage.getQueue());
+                return PUT_ERROR;
+            }
+        }
+        Long size;
+        
+        //超过阈值的主体单独存储 消息中只保留引用
+        Map<Message, Object> offloaded = BodyOffloads.offload(messages);
+        Map<String, List<String>> payloads = BodyOffloads.chunks(pushMessage.getQueue(), offloaded);
+        if (!payloads.isEmpty()) {
+            redisMQClientUtil.putPayloads(payloads);
+        }
+        //写入前同步到服务端 主体已经拆出不再发送大主体 等待重试的消息已经同步过
+        if (!allocated.isEmpty()) {
+            try {
+                createRemoteMessage(allocated, false);
+            } catch (RuntimeException e) {
+                if (!payloads.isEmpty()) {
+                    redisMQClientUtil.deletePayloads(payloads.keySet());
+                    BodyOffloads.restore(offloaded);
+                }
+                throw e;
+            }
+        }
         
         //第一个参数是发布订阅的消息
         List<Object> paramsList = new ArrayList<>();
         //队列最大值
         paramsList.add(queueMaxSize);
         for (Message param : messages) {
-            //执行时间
-            paramsList.add(param.getExecuteScope());
+            //执行时间 脚本分配偏移量的消息使用偏移量
+            paramsList.add(param.getExecuteScope() == null ? -1L : param.getExecuteScope());
             //消息
             paramsList.add(param.getId());
-            paramsList.add(param.getId());
-            paramsList.add(param);
+            paramsList.add(MessageCodecs.encode(param));
         }
         Object[] objects = paramsList.toArray();
         
+        //只有redis异常才原地重试 队列满了由调用方按策略处理
         int count = 0;
-        boolean success = false;
-        while (size == null || count < PRODUCER_CONFIG.producerRetryCount) {
-            size = redisMQClientUtil.executeLua(lua, list, objects);
-            if (size == null || size < 0) {
-                try {
-                    Thread.sleep(PRODUCER_CONFIG.producerRetrySleep);
-                } catch (InterruptedException ignored) {
-                }
-                count++;
-                log.warn("RedisMQ sendMessage retry");
-            } else {
-                if (PRODUCER_CONFIG.printProducerLog) {
-                    log.info("RedisMQ sendMessage success  message:{}", RedisMQStringMapper.toJsonStr(paramsList));
-                }
-                //发布订阅
-                redisMQClientUtil.publishPullMessage(pushMessage);
-                success = true;
+        while (true) {
+            size = redisMQClientUtil.executeLua(script, list, objects);
+            if (size != null || ++count >= PRODUCER_CONFIG.producerRetryCount) {
                 break;
             }
+            try {
+                Thread.sleep(PRODUCER_CONFIG.producerRetrySleep);
+            } catch (InterruptedException ignored) {
+            }
+            log.warn("RedisMQ sendMessage retry");
         }
         
-        if (!success) {
-            log.error("RedisMQ Producer Queue Full");
+        boolean success = size != null && size >= 0;
+        if (success) {
+            capacity.available();
+            if (scriptOffset) {
+                //脚本返回本批次分配的最大偏移量
+                long offset = size - messages.size();
+                for (Message message : messages) {
+                    message.setOffset(++offset);
+                    if (message.getExecuteScope() == null) {
+                        message.setExecuteScope(offset);
+                    }
+                }
+                createRemoteMessage(messages, true);
+            }
+            if (PRODUCER_CONFIG.printProducerLog) {
+                log.info("RedisMQ sendMessage success  message:{}", RedisMQStringMapper.toJsonStr(paramsList));
+            }
+            //发布订阅 stream由消费者阻塞读取不需要通知
+            if (!streamStorage) {
+                redisMQClientUtil.publishPullMessage(pushMessage);
+            }
+            return size;
         }
         
+        if (!payloads.isEmpty()) {
+            redisMQClientUtil.deletePayloads(payloads.keySet());
+            BodyOffloads.restore(offloaded);
+        }
+        if (size == null) {
+            log.error("RedisMQ Producer put message error queue:{}", pushMessage.getQueue());
+            return PUT_ERROR;
+        }
+        //脚本返回 -1-队列长度
+        capacity.full(-size - 1, PRODUCER_CONFIG.producerRetrySleep);
+        log.warn("RedisMQ Producer Queue Full queue:{} size:{}", pushMessage.getQueue(), capacity.getDepth());
+        return QUEUE_FULL;
+    }
+    
+    /**
+     * 写入前分配偏移量 偏移量所在的key和虚拟队列不在同一个slot,不能放在写入脚本里。
+     * 所以普通队列一批消息需要两次往返: allocateOffset分配偏移量,再由putMessage写入。
+     * 队列满了等待重试的消息沿用第一次分配的偏移量
+     *
+     * @return 本次分配了偏移量的消息 分配失败返回null
+     */
+    private List<Message> allocateOffsets(Queue queue, List<Message> messages) {
+        List<Message> unallocated = messages.stream().filter(m -> m.getOffset() == null).collect(Collectors.toList());
+        if (unallocated.isEmpty()) {
+            return unallocated;
+        }
+        Long last = redisMQClientUtil.allocateOffset(queue.getQueueName(), unallocated.size());
+        if (last == null) {
+            return null;
+        }
+        long offset = last - unallocated.size();
+        for (Message message : unallocated) {
+            message.setOffset(++offset);
+            //普通消息的执行范围就是偏移量
+            if (message.getExecuteScope() == null) {
+                message.setExecuteScope(offset);
+            }
+        }
+        return unallocated;
+    }
+    
+    /**
+     * 同步到服务端 确认发送结果 完成future
+     */
+    private void completeSend(List<Message> messages, boolean success) {
         // 如果是异步确认
         if (PRODUCER_CONFIG.getProductAck().equals(ProducerAck.ASYNC)) {
             for (Message message : messages) {
@@ -447,8 +962,6 @@ public class RedisMQProducer {
         
         // 发送后钩子函数
         afterSend(messages, success);
-        
-        return success;
     }
     
     /**
@@ -465,14 +978,6 @@ public class RedisMQProducer {
         }
     }
     
-    private Long increment(Queue queue) {
-        String queueOffset = PREFIX + NAMESPACE + SPLITE + "QUEUE_OFFSET" + SPLITE + queue.getQueueName();
-        String lua = "local count = redis.call('incrBy',KEYS[1],1) " + "if tonumber(count) >= tonumber(ARGV[1]) then "
-                + "redis.call('set',KEYS[1],0) " + "count = redis.call('incrBy',KEYS[1],1)" + "end " + "return count;";
-        Long num = redisMQClientUtil.executeLua(lua, Lists.newArrayList(queueOffset), System.currentTimeMillis());
-        return num;
-    }
-    
     /**
      * 发送成功后
      *
@@ -579,27 +1084,80 @@ public class RedisMQProducer {
     }
     
     
-    private class MergedSendRunnable implements Runnable {
+    /**
+     * 合并发送通道,每个通道一个线程。同一个虚拟队列只会落在一个通道上,通道内按入队顺序发送
+     */
+    private class MergedSendLane implements Runnable {
+        
+        private final ConcurrentLinkedQueue<Message> buffer = new ConcurrentLinkedQueue<>();
+        
+        private final Object mergeLock = new Object();
+        
+        private volatile boolean isSending = false;
+        
+        /**
+         * 队列满了等待重试的消息 虚拟队列->消息 只有通道线程访问
+         */
+        private final Map<String, ParkedMessages> parked = new LinkedHashMap<>();
+        
+        /**
+         * 放入通道
+         *
+         * @param message 消息
+         * @param block   满了是否等待
+         * @return 是否放入成功
+         */
+        private boolean offer(Message message, boolean block) {
+            while (true) {
+                int current = basketSize.get();
+                if (current < basketCapacity) {
+                    if (basketSize.compareAndSet(current, current + 1)) {
+                        break;
+                    }
+                } else if (block) {
+                    //队列满了的话阻塞等待
+                    wakeup();
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                    if (Thread.currentThread().isInterrupted()) {
+                        return false;
+                    }
+                } else {
+                    return false;
+                }
+            }
+            buffer.offer(message);
+            if (!isSending) {
+                wakeup();
+            }
+            return true;
+        }
+        
+        private void wakeup() {
+            synchronized (mergeLock) {
+                mergeLock.notifyAll();
+            }
+        }
         
         @Override
         public void run() {
-            while (true) {
+            while (!Thread.currentThread().isInterrupted()) {
                 synchronized (mergeLock) {
                     try {
-                        mergeLock.wait(MAX_MERGE_SEND_MILLS);
+                        if (buffer.isEmpty()) {
+                            mergeLock.wait(MAX_MERGE_SEND_MILLS);
+                        }
                     } catch (InterruptedException e) {
+                        return;
                     }
                 }
                 
                 isSending = true;
                 
-                Map<String, MergedWarpMessage> map = new HashMap<>();
+                Map<String, MergedWarpMessage> map = new LinkedHashMap<>();
                 
-                while (!basket.isEmpty()) {
-                    Message msg = basket.poll();
-                    if (msg == null) {
-                        continue;
-                    }
+                Message msg;
+                while ((msg = buffer.poll()) != null) {
+                    basketSize.decrementAndGet();
                     MergedWarpMessage mergedWarpMessage = map
                             .computeIfAbsent(msg.getVirtualQueueName(), a -> new MergedWarpMessage());
                     List<Message> messages = mergedWarpMessage.getMessages();
@@ -610,33 +1168,109 @@ public class RedisMQProducer {
                     }
                 }
                 
+                long deadline = System.currentTimeMillis()
+                        + (long) PRODUCER_CONFIG.producerRetryCount * PRODUCER_CONFIG.producerRetrySleep;
                 map.forEach((queue, mergeMsg) -> {
-                    try {
-                        PushMessage pushMessage = new PushMessage();
-                        pushMessage.setQueue(queue);
-                        pushMessage.setTimestamp(0L);
-                        //订阅推送设置最早执行的时间
-                        mergeMsg.getMessages().stream().map(Message::getExecuteScope).min(Long::compareTo)
-                                .ifPresent(pushMessage::setTimestamp);
-                        mergeMsg.setPushMessage(pushMessage);
-                        //拆分队列发送
-                        doSend(mergeMsg);
-                    } catch (Throwable e) {
-                        log.error("mergeSend call failed: {}", e.getMessage(), e);
-                        for (Message message : mergeMsg.getMessages()) {
-                            String id = message.getId();
-                            MessageFuture messageFuture = FUTURES.remove(id);
-                            if (messageFuture != null) {
-                                messageFuture.setResultMessage(
-                                        new RedisMqException(String.format("%s mergedSend error", id), e));
-                            }
-                        }
+                    List<Message> messages = mergeMsg.getMessages();
+                    //发送前操作
+                    beforeSend(messages);
+                    //虚拟队列有等待重试的消息 排在后面保证顺序
+                    ParkedMessages parkedMessages = parked.get(queue);
+                    if (parkedMessages != null) {
+                        parkedMessages.messages.addAll(messages);
+                        //等待重试的消息继续占用篮子容量,让发送方感知到队列满了
+                        basketSize.addAndGet(messages.size());
+                        return;
                     }
-                    ;
+                    //拆分队列发送
+                    send(queue, messages, deadline);
                 });
+                retryParked();
                 isSending = false;
             }
         }
+        
+        /**
+         * 退避时间到了或者超过等待时间的虚拟队列重新发送
+         */
+        private void retryParked() {
+            if (parked.isEmpty()) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            Iterator<Map.Entry<String, ParkedMessages>> iterator = parked.entrySet().iterator();
+            List<Map.Entry<String, ParkedMessages>> due = new ArrayList<>();
+            while (iterator.hasNext()) {
+                Map.Entry<String, ParkedMessages> entry = iterator.next();
+                QueueCapacity capacity = capacities.get(entry.getKey());
+                if (now >= entry.getValue().deadline || capacity == null || !capacity.isFull(now)) {
+                    iterator.remove();
+                    basketSize.addAndGet(-entry.getValue().messages.size());
+                    due.add(entry);
+                }
+            }
+            for (Map.Entry<String, ParkedMessages> entry : due) {
+                send(entry.getKey(), entry.getValue().messages, entry.getValue().deadline);
+            }
+        }
+        
+        /**
+         * 按最大批次发送一个虚拟队列的消息。队列满了按策略处理,退避重试的消息停放在通道内,不阻塞其他虚拟队列
+         *
+         * @param deadline 退避重试的截止时间
+         */
+        private void send(String queue, List<Message> messages, long deadline) {
+            int maxBatchSize = Math.max(1, PRODUCER_CONFIG.producerMaxBatchSize);
+            for (int from = 0; from < messages.size(); from += maxBatchSize) {
+                List<Message> batch = new ArrayList<>(
+                        messages.subList(from, Math.min(messages.size(), from + maxBatchSize)));
+                MergedWarpMessage mergedWarpMessage = new MergedWarpMessage();
+                mergedWarpMessage.setMessages(batch);
+                mergedWarpMessage.setPushMessage(pushMessage(queue, batch));
+                try {
+                    long result = putMessages(mergedWarpMessage);
+                    if (result == QUEUE_FULL) {
+                        QueueFullPolicy policy = PRODUCER_CONFIG.getQueueFullPolicy();
+                        if (policy == QueueFullPolicy.BLOCK && System.currentTimeMillis() < deadline) {
+                            List<Message> rest = new ArrayList<>(messages.subList(from, messages.size()));
+                            parked.put(queue, new ParkedMessages(rest, deadline));
+                            basketSize.addAndGet(rest.size());
+                            return;
+                        }
+                        if (policy == QueueFullPolicy.SPILL) {
+                            spill(batch);
+                            continue;
+                        }
+                    }
+                    completeSend(batch, result >= 0);
+                } catch (Throwable e) {
+                    log.error("mergeSend call failed: {}", e.getMessage(), e);
+                    for (Message message : batch) {
+                        String id = message.getId();
+                        MessageFuture messageFuture = FUTURES.remove(id);
+                        if (messageFuture != null) {
+                            messageFuture.setResultMessage(
+                                    new RedisMqException(String.format("%s mergedSend error", id), e));
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * 等待队列有空位重新发送的消息
+     */
+    private static class ParkedMessages {
+        
+        private final List<Message> messages;
+        
+        private final long deadline;
+        
+        private ParkedMessages(List<Message> messages, long deadline) {
+            this.messages = messages;
+            this.deadline = deadline;
+        }
     }
     
     
@@ -6,7 +6,6 @@ import com.redismq.common.config.GlobalConfigCache;
 import com.redismq.common.connection.RedisMQClientUtil;
 import com.redismq.common.constant.RedisMQConstant;
 import com.redismq.common.pojo.Client;
-import com.redismq.common.pojo.PushMessage;
 import com.redismq.common.pojo.Queue;
 import com.redismq.container.RedisMQListenerContainer;
 import com.redismq.id.MsgIDGenerator;
@@ -18,14 +17,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
 import org.springframework.util.CollectionUtils;
 
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -95,9 +96,14 @@ public class RedisMqClient {
     private RedisMessageListenerContainer redisMessageListenerContainer;
     
     /**
-     * 是否订阅消息
+     * 消息通知监听
      */
-    private boolean isSub;
+    private final RedisPullListener redisPullListener;
+    
+    /**
+     * 已经订阅通知通道的虚拟队列
+     */
+    private final Set<String> subscribedVirtualQueues = new HashSet<>();
     public RedisMqClient(RedisMQClientUtil redisMQStoreUtil, RedisListenerContainerManager redisListenerContainerManager,
             QueueRebalanceImpl rebalance,String applicationName,WorkIdGenerator workIdGenerator) {
         this.redisMQStoreUtil = redisMQStoreUtil;
@@ -106,6 +112,7 @@ public class RedisMqClient {
         this.rebalance = rebalance;
         this.applicationName = applicationName;
         this.workIdGenerator = workIdGenerator;
+        this.redisPullListener = new RedisPullListener(this);
     }
     
     public void setRedisMessageListenerContainer(RedisMessageListenerContainer redisMessageListenerContainer) {
@@ -193,6 +200,8 @@ public class RedisMqClient {
         rebalanceSubscribe();
         // 订阅服务器消息
         serverSubscribe();
+        // 订阅消费者组变更
+        groupSubscribe();
         // 重平衡
         rebalance();
         // 30秒自动注册
@@ -213,9 +222,20 @@ public class RedisMqClient {
                 new ChannelTopic(RedisMQConstant.getServerTopic()));
     }
     
+    private void groupSubscribe() {
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> redisMQStoreUtil.refreshGroups(),
+                new ChannelTopic(RedisMQConstant.getGroupTopic()));
+    }
+    
     
     // 多个服务应该只有一个执行重平衡
     public void rebalanceTask() {
+        // 兜底刷新本地缓存的消费者组 防止错过变更通知
+        try {
+            redisMQStoreUtil.refreshGroups();
+        } catch (Exception e) {
+            log.error("redismq refreshGroups error", e);
+        }
         String lockKey = getRebalanceLock();
         Boolean success = redisMQStoreUtil.lock(lockKey, Duration.ofSeconds(CLIENT_RABALANCE_TIME));
         if (success != null && success) {
@@ -300,45 +320,44 @@ public class RedisMqClient {
         
             //获取虚拟队列重新推送到阻塞队列
             virtualQueues.forEach(vq -> {
-                PushMessage pushMessage = new PushMessage();
-                pushMessage.setQueue(vq);
-                pushMessage.setTimestamp(System.currentTimeMillis());
-                
-                //推送到指定的队列
-                LinkedBlockingQueue<PushMessage> delayBlockingQueue = redisListenerContainerManager
-                        .getDelayBlockingQueue();
-                LinkedBlockingQueue<String> linkedBlockingQueue = redisListenerContainerManager
-                        .getLinkedBlockingQueue();
                 if (queue.isDelayState()) {
-                    delayBlockingQueue.add(pushMessage);
+                    redisListenerContainerManager.notifyDelayQueue(vq, System.currentTimeMillis());
                 } else {
-                    linkedBlockingQueue.add(vq);
+                    redisListenerContainerManager.notifyQueue(vq);
                 }
             });
         });
     }
     
     /**
-     * 监听队列消息的订阅
+     * 监听队列消息的订阅  按当前分配到的虚拟队列订阅各自的通道,取消已经不属于自己的虚拟队列
      */
     public synchronized void subscribe() {
-        if (!isSub) {
-            RedisMqClient redisMqClient = this;
-            redisMessageListenerContainer.addMessageListener(new RedisPullListener(redisMqClient),
-                    new ChannelTopic(RedisMQConstant.getTopic()));
-            isSub = true;
+        Set<String> current = QueueManager.getCurrentVirtualQueues().values().stream().filter(Objects::nonNull)
+                .flatMap(List::stream).collect(Collectors.toSet());
+        List<Topic> removed = subscribedVirtualQueues.stream().filter(vq -> !current.contains(vq))
+                .map(vq -> new ChannelTopic(RedisMQConstant.getPushTopic(vq))).collect(Collectors.toList());
+        List<Topic> added = current.stream().filter(vq -> !subscribedVirtualQueues.contains(vq))
+                .map(vq -> new ChannelTopic(RedisMQConstant.getPushTopic(vq))).collect(Collectors.toList());
+        if (!removed.isEmpty()) {
+            redisMessageListenerContainer.removeMessageListener(redisPullListener, removed);
+        }
+        if (!added.isEmpty()) {
+            redisMessageListenerContainer.addMessageListener(redisPullListener, added);
         }
+        subscribedVirtualQueues.retainAll(current);
+        subscribedVirtualQueues.addAll(current);
     }
     
     /**
      * 取消监听队列消息的订阅
      */
     public synchronized void unSubscribe() {
-        if (isSub) {
-            RedisMqClient redisMqClient = this;
-            redisMessageListenerContainer.removeMessageListener(new RedisPullListener(redisMqClient),
-                    new ChannelTopic(RedisMQConstant.getTopic()));
-            isSub = false;
+        if (!subscribedVirtualQueues.isEmpty()) {
+            List<Topic> topics = subscribedVirtualQueues.stream()
+                    .map(vq -> new ChannelTopic(RedisMQConstant.getPushTopic(vq))).collect(Collectors.toList());
+            redisMessageListenerContainer.removeMessageListener(redisPullListener, topics);
+            subscribedVirtualQueues.clear();
         }
     }
     
@@ -12,7 +12,6 @@ import org.slf4j.LoggerFactory;
 import org.springframework.data.redis.connection.Message;
 
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
 
 
 /**
@@ -50,17 +49,10 @@ public class RedisPullListener extends AbstractRedisPushListener {
             
             //延时队列和普通队列分开处理
             if (delayState) {
-                LinkedBlockingQueue<PushMessage> delayBlockingQueue = redisMqClient.getRedisListenerContainerManager()
-                        .getDelayBlockingQueue();
-                if (!delayBlockingQueue.contains(pushMessage)) {
-                    delayBlockingQueue.add(pushMessage);
-                }
+                redisMqClient.getRedisListenerContainerManager()
+                        .notifyDelayQueue(vQueueName, pushMessage.getTimestamp());
             } else {
-                LinkedBlockingQueue<String> linkedBlockingQueue = redisMqClient.getRedisListenerContainerManager()
-                        .getLinkedBlockingQueue();
-                if (!linkedBlockingQueue.contains(vQueueName)) {
-                    linkedBlockingQueue.add(vQueueName);
-                }
+                redisMqClient.getRedisListenerContainerManager().notifyQueue(vQueueName);
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -0,0 +1,50 @@
+package com.redismq.core;
+
+import com.redismq.common.exception.RedisMqException;
+import com.redismq.common.pojo.Message;
+import com.redismq.common.pojo.SendResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 事务内发送的消息缓冲。一个事务只注册一次提交回调,提交后整批交给合并发送线程
+ *
+ * @author hzh
+ * @date 2024/12/14
+ */
+class TransactionMessageBuffer {
+    
+    private final List<Message> messages = new ArrayList<>();
+    
+    /**
+     * 异步发送的future 同步发送的为null
+     */
+    private final List<CompletableFuture<SendResult>> futures = new ArrayList<>();
+    
+    void add(Message message, CompletableFuture<SendResult> future) {
+        messages.add(message);
+        futures.add(future);
+    }
+    
+    List<Message> getMessages() {
+        return messages;
+    }
+    
+    List<CompletableFuture<SendResult>> getFutures() {
+        return futures;
+    }
+    
+    /**
+     * 事务回滚 异步发送的future直接失败
+     */
+    void rollback(String reason) {
+        for (int i = 0; i < messages.size(); i++) {
+            CompletableFuture<SendResult> future = futures.get(i);
+            if (future != null) {
+                future.completeExceptionally(new RedisMqException(reason + " queue: " + messages.get(i).getQueue()));
+            }
+        }
+    }
+}
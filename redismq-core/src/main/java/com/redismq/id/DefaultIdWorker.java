@@ -3,6 +3,9 @@ package com.redismq.id;
 import com.redismq.common.config.GlobalConfigCache;
 
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * <p>名称：IdWorker.java</p>
@@ -24,6 +27,9 @@ import java.util.concurrent.ThreadLocalRandom;
  * <p>
  * 共计机器32台X32 版本
  * 标准版
+ * <p>
+ * 时间戳和毫秒内序列合成一个long用CAS推进,不加锁。序列用完时借用下一毫秒不自旋等待,
+ * 借用超过{@link #MAX_BORROW_MILLS}毫秒才等待时间追上。批量发送可以一次预留一段连续的id
  */
 public class DefaultIdWorker {
     // 时间起始标记点，作为基准，一般取系统的最近时间（一旦确定不能变动）
@@ -43,10 +49,16 @@ public class DefaultIdWorker {
     private final long timestampLeftShift = sequenceBits + workerIdBits ;
     
     private final long sequenceMask = -1L ^ (-1L << sequenceBits);
-    /* 上次生产id时间戳 */
-    private long lastTimestamp = -1L;
-    // 0，并发控制
-    private long sequence = 0L;
+    
+    /**
+     * 最多借用的未来毫秒数 时钟回滚在这个范围内也不报错
+     */
+    private static final long MAX_BORROW_MILLS = 10L;
+    
+    /**
+     * 上次生成的 (时间戳-起始时间)<<序列位 | 序列
+     */
+    private final AtomicLong state = new AtomicLong();
     
     private final long workerId;
     
@@ -65,49 +77,72 @@ public class DefaultIdWorker {
      * 获取下一个ID
      *
      */
-    public synchronized long nextId() {
-        long timestamp = timeGen();
-        if (timestamp < lastTimestamp) {
-            long offset = lastTimestamp - timestamp;
-            if (offset <= 10) {
-                try {
-                    wait(offset << 1);
-                    timestamp = timeGen();
-                    if (timestamp < lastTimestamp) {
-                        throw new RuntimeException(String.format("雪花算法时钟回滚 距离当前时间还差%d milliseconds", offset));
+    public long nextId() {
+        return toId(reserve(1));
+    }
+    
+    /**
+     * 预留n个ID 每一毫秒的序列只做一次CAS
+     *
+     * @param n 数量
+     * @return 按生成顺序的ID
+     */
+    public long[] nextIds(int n) {
+        long[] ids = new long[n];
+        if (n <= 0) {
+            return ids;
+        }
+        // 每次最多预留一毫秒的序列 大批量时和单个生成一样受时钟限制
+        int maxReserve = (int) sequenceMask + 1;
+        int index = 0;
+        while (index < n) {
+            int size = Math.min(n - index, maxReserve);
+            long first = reserve(size);
+            for (int i = 0; i < size; i++) {
+                ids[index++] = toId(first + i);
+            }
+        }
+        return ids;
+    }
+    
+    /**
+     * 推进n个序列
+     *
+     * @return 预留的第一个状态值
+     */
+    private long reserve(int n) {
+        while (true) {
+            // 先读状态再读时间 状态最多领先当前时间借用的毫秒数
+            long current = state.get();
+            long timestamp = timeGen() - twepoch;
+            long lastTimestamp = current >>> sequenceBits;
+            long first;
+            if (timestamp > lastTimestamp) {
+                // 不同毫秒内，序列号置为 1 - 3 随机数
+                first = (timestamp << sequenceBits) | ThreadLocalRandom.current().nextLong(1, 3);
+            } else {
+                // 当前毫秒内，则+1 计数满了进位到下一毫秒
+                first = current + 1;
+                long borrow = ((first + n - 1) >>> sequenceBits) - timestamp;
+                if (borrow > MAX_BORROW_MILLS) {
+                    if (lastTimestamp - timestamp > MAX_BORROW_MILLS + 1) {
+                        throw new RuntimeException(String.format("雪花算法时钟回滚 距离当前时间还差%d milliseconds",
+                                lastTimestamp - timestamp));
                     }
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+                    // 借用太多 等待时间追上
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                    continue;
                 }
-            } else {
-                throw new RuntimeException(String.format("雪花算法时钟回滚 距离当前时间还差%d milliseconds", offset));
             }
-        }
-        
-        if (lastTimestamp == timestamp) {
-            // 当前毫秒内，则+1
-            sequence = (sequence + 1) & sequenceMask;
-            if (sequence == 0) {
-                // 当前毫秒内计数满了，则等待下一秒
-                timestamp = tilNextMillis(lastTimestamp);
+            if (state.compareAndSet(current, first + n - 1)) {
+                return first;
             }
-        } else {
-            // 不同毫秒内，序列号置为 1 - 3 随机数
-            sequence = ThreadLocalRandom.current().nextLong(1, 3);
         }
-        
-        lastTimestamp = timestamp;
-        
-        // ID偏移组合生成最终的ID，并返回ID
-        return ((timestamp - twepoch) << timestampLeftShift)   | (workerId << workerIdShift) | sequence;
     }
     
-    private long tilNextMillis(final long lastTimestamp) {
-        long timestamp = this.timeGen();
-        while (timestamp <= lastTimestamp) {
-            timestamp = this.timeGen();
-        }
-        return timestamp;
+    private long toId(long value) {
+        // ID偏移组合生成最终的ID，并返回ID
+        return ((value >>> sequenceBits) << timestampLeftShift) | (workerId << workerIdShift) | (value & sequenceMask);
     }
     
     private long timeGen() {
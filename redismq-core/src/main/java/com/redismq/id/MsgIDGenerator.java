@@ -1,8 +1,20 @@
 package com.redismq.id;
 
 
+import com.redismq.common.config.GlobalConfigCache;
+
 public class MsgIDGenerator {
 
+    /**
+     * base62 字符按ASCII顺序排列 定长的字符串顺序和数值顺序一致
+     */
+    private static final char[] BASE62 = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".toCharArray();
+
+    /**
+     * long最大值的base62长度
+     */
+    private static final int BASE62_LENGTH = 11;
+
     private static volatile DefaultIdWorker defaultIdWorker;
 
     /**
@@ -10,16 +22,58 @@ public class MsgIDGenerator {
      * @return UUID
      */
     public static long generateId() {
-        if (defaultIdWorker == null) {
-            synchronized (MsgIDGenerator.class) {
-                if (defaultIdWorker == null) {
-                    init(1);
-                }
-            }
-        }
-        return defaultIdWorker.nextId();
+        return worker().nextId();
     }
+
     public static String generateIdStr() {
+        return format(worker().nextId());
+    }
+
+    /**
+     * 批量生成id
+     *
+     * @param n 数量
+     * @return 按生成顺序的id
+     */
+    public static long[] generateIds(int n) {
+        return worker().nextIds(n);
+    }
+
+    /**
+     * 批量生成字符串id 格式由idFormat配置
+     *
+     * @param n 数量
+     * @return 按生成顺序的id
+     */
+    public static String[] generateIdStrs(int n) {
+        long[] ids = worker().nextIds(n);
+        String[] strs = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            strs[i] = format(ids[i]);
+        }
+        return strs;
+    }
+
+    /**
+     * 定长11位的base62 比十进制短8位
+     */
+    public static String toBase62(long id) {
+        char[] chars = new char[BASE62_LENGTH];
+        for (int i = BASE62_LENGTH - 1; i >= 0; i--) {
+            chars[i] = BASE62[(int) (id % 62)];
+            id /= 62;
+        }
+        return new String(chars);
+    }
+
+    private static String format(long id) {
+        if ("base62".equals(GlobalConfigCache.GLOBAL_CONFIG.idFormat)) {
+            return toBase62(id);
+        }
+        return Long.toString(id);
+    }
+
+    private static DefaultIdWorker worker() {
         if (defaultIdWorker == null) {
             synchronized (MsgIDGenerator.class) {
                 if (defaultIdWorker == null) {
@@ -27,11 +81,11 @@ public class MsgIDGenerator {
                 }
             }
         }
-        return String.valueOf(defaultIdWorker.nextId());
+        return defaultIdWorker;
     }
-    
+
     public static void init(Integer workId) {
         defaultIdWorker = new DefaultIdWorker(workId);
     }
-  
+
 }
@@ -1,6 +1,7 @@
 package com.redismq.id;
 
 import com.redismq.common.constant.RedisMQConstant;
+import com.redismq.common.connection.RedisBatch;
 import com.redismq.common.connection.RedisClient;
 import org.springframework.util.CollectionUtils;
 
@@ -46,8 +47,11 @@ public class WorkIdGenerator {
     }
     
     public void init() {
+        RedisBatch batch = redisClient.batch();
+        long now = System.currentTimeMillis();
         for (int i = 0; i < maxWorkId; i++) {
-            redisClient.zAdd(WORK_ID_ZSET, i, System.currentTimeMillis());
+            batch.zAdd(WORK_ID_ZSET, i, now);
         }
+        batch.execute();
     }
 }
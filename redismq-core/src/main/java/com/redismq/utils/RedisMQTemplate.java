@@ -1,9 +1,13 @@
 package com.redismq.utils;
 
+import com.redismq.common.pojo.BatchSendResult;
 import com.redismq.common.pojo.Message;
+import com.redismq.common.pojo.SendResult;
 import com.redismq.core.RedisMQProducer;
 
 import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 
@@ -119,7 +123,81 @@ public class RedisMQTemplate {
     public boolean sendTimingMessage(Object obj, String queue, Long executorTime) {
         return redisMQProducer.sendTimingMessage(obj, queue, "","", executorTime);
     }
-   
+
+    /**
+     * 异步队列消息
+     */
+    public CompletableFuture<SendResult> sendAsync(Message message) {
+        return redisMQProducer.sendAsync(message);
+    }
+
+    /**
+     * 异步队列消息
+     */
+    public CompletableFuture<SendResult> sendAsync(Object obj, String queue) {
+        return redisMQProducer.sendAsync(obj, queue, "", "");
+    }
+
+    /**
+     * 带tag的异步队列消息
+     */
+    public CompletableFuture<SendResult> sendAsync(Object obj, String queue, String tag) {
+        return redisMQProducer.sendAsync(obj, queue, tag, "");
+    }
+
+    /**
+     * 带tag和key的异步队列消息
+     */
+    public CompletableFuture<SendResult> sendAsync(Object obj, String queue, String tag, String key) {
+        return redisMQProducer.sendAsync(obj, queue, tag, key);
+    }
+
+    /**
+     * 异步延时消息
+     */
+    public CompletableFuture<SendResult> sendDelayAsync(Message message, Long delayTime, TimeUnit timeUnit) {
+        long millis = timeUnit.toMillis(delayTime);
+        return redisMQProducer.sendDelayAsync(message, millis);
+    }
+
+    /**
+     * 异步延时消息
+     */
+    public CompletableFuture<SendResult> sendDelayAsync(Message message, Duration duration) {
+        return redisMQProducer.sendDelayAsync(message, duration.toMillis());
+    }
+
+    /**
+     * 异步延时消息
+     */
+    public CompletableFuture<SendResult> sendDelayAsync(Object obj, String queue, Duration duration) {
+        Message message = new Message();
+        message.setQueue(queue);
+        message.setBody(obj);
+        return redisMQProducer.sendDelayAsync(message, duration.toMillis());
+    }
+
+    /**
+     * 异步定时消息
+     */
+    public CompletableFuture<SendResult> sendTimingAsync(Message message, Long executorTime) {
+        return redisMQProducer.sendTimingAsync(message, executorTime);
+    }
+
+
+    /**
+     * 批量发送队列消息 按虚拟队列分组写入,返回每条消息的结果
+     */
+    public BatchSendResult sendBatch(Collection<Message> messages) {
+        return redisMQProducer.sendBatch(messages);
+    }
+
+    /**
+     * 异步批量发送队列消息
+     */
+    public CompletableFuture<BatchSendResult> sendBatchAsync(Collection<Message> messages) {
+        return redisMQProducer.sendBatchAsync(messages);
+    }
 
     /*
      * redis的发布订阅  直接传递实际数据即可
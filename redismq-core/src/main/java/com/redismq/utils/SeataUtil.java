@@ -14,4 +14,19 @@ public class SeataUtil {
         //seata事务提交后执行的方法
         TransactionHookManager.registerHook(adapter);
     }
+    
+    public void registerHook(Runnable commit, Runnable rollback) {
+        TransactionHookAdapter adapter = new TransactionHookAdapter() {
+            @Override
+            public void afterCommit() {
+                commit.run();
+            }
+            
+            @Override
+            public void afterRollback() {
+                rollback.run();
+            }
+        };
+        TransactionHookManager.registerHook(adapter);
+    }
 }
@@ -0,0 +1,129 @@
+package com.redismq.container;
+
+import com.redismq.common.pojo.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author hzh
+ * @date 2024/12/15 消费窗口
+ */
+class ConsumeWindowTest {
+    
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    
+    private final CountDownLatch slow = new CountDownLatch(1);
+    
+    @AfterEach
+    void tearDown() {
+        slow.countDown();
+        executor.shutdownNow();
+    }
+    
+    private static Message message(String id, long offset) {
+        Message message = new Message();
+        message.setId(id);
+        message.setOffset(offset);
+        return message;
+    }
+    
+    private void submitSlow(ConsumeWindow window, Message message) {
+        window.submit(() -> {
+            slow.await();
+            return message;
+        }, message);
+    }
+    
+    @Test
+    void completesOutOfOrderButCommitsInPullOrder() {
+        ConsumeWindow window = new ConsumeWindow(executor, 4, 1, 60000L);
+        Message m1 = message("m1", 1);
+        Message m2 = message("m2", 2);
+        submitSlow(window, m1);
+        window.submit(() -> m2, m2);
+        
+        ConsumeWindow.AckBatch first = window.poll(1000L);
+        //慢任务不挡住后面完成的任务 但偏移量不能越过它
+        assertThat(first.getMessages()).containsExactly(m2);
+        assertThat(first.getOffset()).isEqualTo(-1L);
+        assertThat(window.free()).isEqualTo(3);
+        
+        slow.countDown();
+        ConsumeWindow.AckBatch second = window.poll(1000L);
+        assertThat(second.getMessages()).containsExactly(m1);
+        assertThat(second.getOffset()).isEqualTo(2L);
+        assertThat(window.isEmpty()).isTrue();
+    }
+    
+    @Test
+    void expiredTaskFreesSlotButBlocksOffsetUntilDone() throws Exception {
+        ConsumeWindow window = new ConsumeWindow(executor, 2, 1, 50L);
+        Message m1 = message("m1", 1);
+        Message m2 = message("m2", 2);
+        submitSlow(window, m1);
+        window.submit(() -> m2, m2);
+        window.poll(1000L);
+        
+        TimeUnit.MILLISECONDS.sleep(100L);
+        ConsumeWindow.AckBatch expired = window.poll(0L);
+        //超时的任务不再占用窗口 还在执行所以不能提交偏移量
+        assertThat(window.free()).isEqualTo(2);
+        assertThat(window.isEmpty()).isTrue();
+        assertThat(expired.getOffset()).isEqualTo(-1L);
+        
+        slow.countDown();
+        ConsumeWindow.AckBatch done = window.poll(1000L);
+        assertThat(done.getMessages()).containsExactly(m1);
+        assertThat(done.getOffset()).isEqualTo(2L);
+        assertThat(window.free()).isEqualTo(2);
+    }
+    
+    @Test
+    void pullSizeFollowsLastCompletedAndFreeSlots() throws Exception {
+        ConsumeWindow window = new ConsumeWindow(executor, 8, 2, 60000L);
+        assertThat(window.pullSize()).isEqualTo(4);
+        for (int i = 1; i <= 3; i++) {
+            Message message = message("m" + i, i);
+            window.submit(() -> message, message);
+        }
+        TimeUnit.MILLISECONDS.sleep(200L);
+        assertThat(window.poll(0L).getMessages()).hasSize(3);
+        assertThat(window.pullSize()).isEqualTo(6);
+        submitSlow(window, message("m4", 4));
+        submitSlow(window, message("m5", 5));
+        submitSlow(window, message("m6", 6));
+        assertThat(window.pullSize()).isEqualTo(5);
+    }
+    
+    @Test
+    void failedTaskReleasesSlotWithoutAck() {
+        ConsumeWindow window = new ConsumeWindow(executor, 2, 1, 60000L);
+        Message m1 = message("m1", 1);
+        window.submit(() -> {
+            throw new IllegalStateException("listener error");
+        }, m1);
+        ConsumeWindow.AckBatch batch = window.poll(1000L);
+        //失败的消息不确认 由重试或者下一次拉取处理,窗口不会卡住
+        assertThat(batch.getMessages()).isEmpty();
+        assertThat(window.free()).isEqualTo(2);
+        assertThat(window.isEmpty()).isTrue();
+    }
+    
+    @Test
+    void pollWithoutWaitReturnsImmediately() {
+        ConsumeWindow window = new ConsumeWindow(executor, 2, 1, 60000L);
+        submitSlow(window, message("m1", 1));
+        long start = System.currentTimeMillis();
+        ConsumeWindow.AckBatch batch = window.poll(0L);
+        assertThat(System.currentTimeMillis() - start).isLessThan(500L);
+        assertThat(batch.getMessages()).isEmpty();
+        assertThat(window.free()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,80 @@
+package com.redismq.core;
+
+import com.redismq.common.config.ConsumserConfig;
+import com.redismq.common.config.GlobalConfig;
+import com.redismq.common.config.GlobalConfigCache;
+import com.redismq.common.config.NettyConfig;
+import com.redismq.common.config.ProducerConfig;
+import com.redismq.common.connection.LuaScript;
+import com.redismq.common.connection.RedisMQClientUtil;
+import com.redismq.common.pojo.Queue;
+import com.redismq.queue.QueueManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 生产者测试的公共部分 每个用例使用新的全局配置,结束后还原,不影响其他测试类
+ *
+ * @author hzh
+ * @date 2024/12/15
+ */
+public abstract class ProducerTestSupport {
+    
+    protected final String queueName;
+    
+    private GlobalConfig globalConfig;
+    
+    private ConsumserConfig consumerConfig;
+    
+    private NettyConfig nettyConfig;
+    
+    private ProducerConfig producerConfig;
+    
+    protected ProducerTestSupport(String queueName) {
+        this.queueName = queueName;
+    }
+    
+    @BeforeEach
+    void setUpConfig() {
+        globalConfig = GlobalConfigCache.GLOBAL_CONFIG;
+        consumerConfig = GlobalConfigCache.CONSUMER_CONFIG;
+        nettyConfig = GlobalConfigCache.NETTY_CONFIG;
+        producerConfig = GlobalConfigCache.PRODUCER_CONFIG;
+        GlobalConfigCache.GLOBAL_CONFIG = new GlobalConfig();
+        GlobalConfigCache.CONSUMER_CONFIG = new ConsumserConfig();
+        GlobalConfigCache.NETTY_CONFIG = new NettyConfig();
+        GlobalConfigCache.PRODUCER_CONFIG = new ProducerConfig();
+        Queue queue = new Queue(queueName);
+        queue.setVirtual(1);
+        QueueManager.registerRedisQueue(queue);
+    }
+    
+    @AfterEach
+    void restoreConfig() {
+        QueueManager.REDIS_QUEUES.remove(queueName);
+        GlobalConfigCache.GLOBAL_CONFIG = globalConfig;
+        GlobalConfigCache.CONSUMER_CONFIG = consumerConfig;
+        GlobalConfigCache.NETTY_CONFIG = nettyConfig;
+        GlobalConfigCache.PRODUCER_CONFIG = producerConfig;
+    }
+    
+    /**
+     * 写入都成功的redis客户端 偏移量固定分配到10
+     */
+    protected static RedisMQClientUtil redisMQClientUtil() {
+        RedisMQClientUtil redisMQClientUtil = mock(RedisMQClientUtil.class);
+        when(redisMQClientUtil.getGroups()).thenReturn(Collections.singleton("group1"));
+        when(redisMQClientUtil.allocateOffset(anyString(), anyInt())).thenReturn(10L);
+        when(redisMQClientUtil.executeLua(any(LuaScript.class), anyList(), any())).thenReturn(1L);
+        return redisMQClientUtil;
+    }
+}
@@ -0,0 +1,78 @@
+package com.redismq.core;
+
+import com.redismq.container.RedisMQListenerContainer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author hzh
+ * @date 2024/12/15 合并拉取通知
+ */
+class RedisListenerContainerManagerTest {
+    
+    private static final String QUEUE = "manager-test";
+    
+    private RedisListenerContainerManager manager;
+    
+    private RedisMQListenerContainer container;
+    
+    @BeforeEach
+    void setUp() {
+        manager = new RedisListenerContainerManager();
+        container = mock(RedisMQListenerContainer.class);
+        when(container.getQueueName()).thenReturn(QUEUE);
+        manager.registerContainer(container, Collections.emptyList());
+    }
+    
+    @AfterEach
+    void tearDown() {
+        manager.stopAll();
+    }
+    
+    @Test
+    void repeatedNotificationsPullOnce() throws Exception {
+        manager.notifyQueue(QUEUE + "$0");
+        manager.notifyQueue(QUEUE + "$0");
+        manager.notifyQueue(QUEUE + "$1");
+        manager.startRedisListener();
+        
+        verify(container, timeout(1000)).start(eq(QUEUE + "$0"), anyLong());
+        verify(container, timeout(1000)).start(eq(QUEUE + "$1"), anyLong());
+        TimeUnit.MILLISECONDS.sleep(200);
+        verify(container, times(1)).start(eq(QUEUE + "$0"), anyLong());
+    }
+    
+    @Test
+    void notificationDuringPullSchedulesAnotherPull() {
+        manager.startRedisListener();
+        manager.notifyQueue(QUEUE + "$0");
+        verify(container, timeout(1000)).start(eq(QUEUE + "$0"), anyLong());
+        //已经出队的虚拟队列重新通知会再次拉取
+        manager.notifyQueue(QUEUE + "$0");
+        verify(container, timeout(1000).times(2)).start(eq(QUEUE + "$0"), anyLong());
+    }
+    
+    @Test
+    void delayNotificationsKeepEarliestTime() throws Exception {
+        manager.notifyDelayQueue(QUEUE + "$0", 300L);
+        manager.notifyDelayQueue(QUEUE + "$0", 100L);
+        manager.notifyDelayQueue(QUEUE + "$0", 200L);
+        manager.startDelayRedisListener();
+        
+        verify(container, timeout(1000)).start(QUEUE + "$0", 100L);
+        TimeUnit.MILLISECONDS.sleep(200);
+        verify(container, times(1)).start(eq(QUEUE + "$0"), anyLong());
+    }
+}
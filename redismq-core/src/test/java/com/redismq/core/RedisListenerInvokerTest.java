@@ -0,0 +1,158 @@
+package com.redismq.core;
+
+import com.redismq.common.exception.RedisMqException;
+import com.redismq.common.pojo.Message;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author hzh
+ * @date 2024/12/15 监听方法调用器
+ */
+class RedisListenerInvokerTest {
+    
+    @Test
+    void invokesMessageParameter() throws Throwable {
+        Listener listener = new Listener();
+        RedisListenerInvoker invoker = new RedisListenerInvoker(listener, method("onMessage", Message.class));
+        Message message = message("hello");
+        
+        invoker.invoke(message);
+        
+        assertThat(invoker.isMessageParameter()).isTrue();
+        assertThat(listener.received).containsExactly(message);
+    }
+    
+    @Test
+    void invokesStringParameter() throws Throwable {
+        Listener listener = new Listener();
+        RedisListenerInvoker invoker = new RedisListenerInvoker(listener, method("onString", String.class));
+        
+        invoker.invoke(message("hello"));
+        
+        assertThat(invoker.isMessageParameter()).isFalse();
+        assertThat(listener.received).containsExactly("hello");
+    }
+    
+    @Test
+    void convertsBodyToParameterType() throws Throwable {
+        Listener listener = new Listener();
+        RedisListenerInvoker invoker = new RedisListenerInvoker(listener, method("onOrder", Order.class));
+        
+        invoker.invoke(message("{\"id\":7,\"name\":\"book\"}"));
+        
+        assertThat(listener.received).hasSize(1);
+        Order order = (Order) listener.received.get(0);
+        assertThat(order.getId()).isEqualTo(7L);
+        assertThat(order.getName()).isEqualTo("book");
+    }
+    
+    @Test
+    void passesSameTypeBodyDirectly() throws Throwable {
+        Listener listener = new Listener();
+        RedisListenerInvoker invoker = new RedisListenerInvoker(listener, method("onOrder", Order.class));
+        Order order = new Order();
+        order.setId(1L);
+        
+        invoker.invoke(message(order));
+        
+        assertThat(listener.received).containsExactly(order);
+    }
+    
+    @Test
+    void invokesPrivateMethod() throws Throwable {
+        Listener listener = new Listener();
+        RedisListenerInvoker invoker = new RedisListenerInvoker(listener, method("onPrivate", String.class));
+        
+        invoker.invoke(message("secret"));
+        
+        assertThat(listener.received).containsExactly("secret");
+    }
+    
+    @Test
+    void rethrowsListenerException() {
+        RedisListenerInvoker invoker = new RedisListenerInvoker(new Listener(), method("onFail", String.class));
+        
+        assertThatThrownBy(() -> invoker.invoke(message("x"))).isInstanceOf(IllegalStateException.class)
+                .hasMessage("fail x");
+    }
+    
+    @Test
+    void rejectsMethodWithoutParameter() {
+        assertThatThrownBy(() -> new RedisListenerInvoker(new Listener(), method("noArgs"))).isInstanceOf(
+                RedisMqException.class);
+    }
+    
+    private static Method method(String name, Class<?>... parameterTypes) {
+        try {
+            return Listener.class.getDeclaredMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static Message message(Object body) {
+        Message message = new Message();
+        message.setId("m1");
+        message.setQueue("invoker");
+        message.setBody(body);
+        return message;
+    }
+    
+    public static class Order {
+        
+        private Long id;
+        
+        private String name;
+        
+        public Long getId() {
+            return id;
+        }
+        
+        public void setId(Long id) {
+            this.id = id;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+    
+    static class Listener {
+        
+        private final List<Object> received = new ArrayList<>();
+        
+        public void onMessage(Message message) {
+            received.add(message);
+        }
+        
+        public void onString(String body) {
+            received.add(body);
+        }
+        
+        public void onOrder(Order order) {
+            received.add(order);
+        }
+        
+        private void onPrivate(String body) {
+            received.add(body);
+        }
+        
+        public void onFail(String body) {
+            throw new IllegalStateException("fail " + body);
+        }
+        
+        public void noArgs() {
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.redismq.core;
+
+import com.redismq.common.config.GlobalConfigCache;
+import com.redismq.common.connection.RedisMQClientUtil;
+import com.redismq.common.connection.ScriptRegistry;
+import com.redismq.common.constant.MessageType;
+import com.redismq.common.constant.QueueFullPolicy;
+import com.redismq.common.exception.MessageSpilledException;
+import com.redismq.common.exception.QueueFullException;
+import com.redismq.common.exception.RedisMqException;
+import com.redismq.common.offload.BodyOffloads;
+import com.redismq.common.pojo.BatchSendResult;
+import com.redismq.common.pojo.Message;
+import com.redismq.common.pojo.Queue;
+import com.redismq.common.pojo.SendResult;
+import com.redismq.queue.QueueManager;
+import com.redismq.rpc.client.RemotingClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author hzh
+ * @date 2024/12/15 生产者篮子容量和写入
+ */
+class RedisMQProducerTest extends ProducerTestSupport {
+    
+    private static final String QUEUE = "producer-test";
+    
+    RedisMQProducerTest() {
+        super(QUEUE);
+    }
+    
+    @BeforeEach
+    void setUp() {
+        GlobalConfigCache.PRODUCER_CONFIG.setProducerBasketSize(3);
+        GlobalConfigCache.PRODUCER_CONFIG.setProducerSendLanes(4);
+    }
+    
+    @Test
+    void singleVirtualQueueUsesWholeBasket() {
+        //不调用init 通道线程不消费 消息都留在篮子里
+        RedisMQProducer producer = new RedisMQProducer(mock(RedisMQClientUtil.class), mock(RemotingClient.class));
+        List<CompletableFuture<SendResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(producer.sendAsync("body" + i, QUEUE, null, null));
+        }
+        assertThat(futures).noneMatch(CompletableFuture::isDone);
+        
+        CompletableFuture<SendResult> full = producer.sendAsync("body3", QUEUE, null, null);
+        ExecutionException e = assertThrows(ExecutionException.class, full::get);
+        assertThat(e.getCause()).hasRootCauseInstanceOf(QueueFullException.class);
+    }
+    
+    @Test
+    void putKeysShareVirtualQueueSlotAndServerSyncsFirst() throws Exception {
+        RedisMQClientUtil redisMQClientUtil = redisMQClientUtil();
+        RemotingClient remotingClient = mock(RemotingClient.class);
+        RedisMQProducer producer = new RedisMQProducer(redisMQClientUtil, remotingClient);
+        producer.init();
+        try {
+            SendResult result = producer.sendAsync("body", QUEUE, null, null).get(5, TimeUnit.SECONDS);
+            assertThat(result).isNotNull();
+            
+            @SuppressWarnings("unchecked")
+            ArgumentCaptor<List<String>> keys = ArgumentCaptor.forClass(List.class);
+            InOrder inOrder = inOrder(redisMQClientUtil, remotingClient);
+            inOrder.verify(redisMQClientUtil).allocateOffset(QUEUE, 1);
+            inOrder.verify(remotingClient).sendAsync(any(Message.class), eq(MessageType.CREATE_MESSAGE));
+            inOrder.verify(redisMQClientUtil).executeLua(eq(ScriptRegistry.PUT_MESSAGE), keys.capture(),
+                    any());
+            //集群下一次脚本的key必须在同一个slot
+            assertThat(keys.getValue()).allMatch(key -> key.contains("{" + QUEUE + "$0}"));
+        } finally {
+            producer.destroy();
+        }
+    }
+    
+    @Test
+    void offloadedBodyIsNotSentToServer() throws Exception {
+        GlobalConfigCache.GLOBAL_CONFIG.offloadThreshold = 10;
+        RedisMQClientUtil redisMQClientUtil = redisMQClientUtil();
+        RemotingClient remotingClient = mock(RemotingClient.class);
+        RedisMQProducer producer = new RedisMQProducer(redisMQClientUtil, remotingClient);
+        producer.init();
+        try {
+            producer.sendAsync("0123456789ab", QUEUE, null, null).get(5, TimeUnit.SECONDS);
+            
+            ArgumentCaptor<Message> synced = ArgumentCaptor.forClass(Message.class);
+            InOrder inOrder = inOrder(redisMQClientUtil, remotingClient);
+            inOrder.verify(redisMQClientUtil).putPayloads(any());
+            inOrder.verify(remotingClient).sendAsync(synced.capture(), eq(MessageType.CREATE_MESSAGE));
+            inOrder.verify(redisMQClientUtil).executeLua(eq(ScriptRegistry.PUT_MESSAGE), anyList(), any());
+            //服务端只拿到引用 不再接收大主体
+            assertThat(synced.getValue().getBody()).isNull();
+            assertThat(synced.getValue().getHeader()).containsKey(BodyOffloads.HEADER);
+        } finally {
+            producer.destroy();
+        }
+    }
+    
+    @Test
+    void serverSyncFailureBeforePutFailsSend() {
+        GlobalConfigCache.PRODUCER_CONFIG.setIgnoreRpcError(false);
+        RedisMQClientUtil redisMQClientUtil = redisMQClientUtil();
+        RemotingClient remotingClient = mock(RemotingClient.class);
+        doThrow(new RedisMqException("rpc down")).when(remotingClient)
+                .sendAsync(any(Message.class), eq(MessageType.CREATE_MESSAGE));
+        RedisMQProducer producer = new RedisMQProducer(redisMQClientUtil, remotingClient);
+        producer.init();
+        try {
+            CompletableFuture<SendResult> future = producer.sendAsync("body", QUEUE, null, null);
+            assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            //没有写入redis 调用方重发不会重复
+            verify(redisMQClientUtil, never()).executeLua(eq(ScriptRegistry.PUT_MESSAGE), anyList(),
+                    any());
+        } finally {
+            producer.destroy();
+        }
+    }
+    
+    @Test
+    void spilledMessageFailsWithSpilledException() {
+        GlobalConfigCache.PRODUCER_CONFIG.queueFullPolicy = QueueFullPolicy.SPILL;
+        RedisMQClientUtil redisMQClientUtil = redisMQClientUtil();
+        //脚本返回 -1-队列长度
+        when(redisMQClientUtil.executeLua(eq(ScriptRegistry.PUT_MESSAGE), anyList(), any())).thenReturn(-11L);
+        RemotingClient remotingClient = mock(RemotingClient.class);
+        when(remotingClient.sendBatchSync(anyList(), anyInt())).thenReturn(true);
+        RedisMQProducer producer = new RedisMQProducer(redisMQClientUtil, remotingClient);
+        producer.init();
+        try {
+            CompletableFuture<SendResult> future = producer.sendAsync("body", QUEUE, null, null);
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertThat(e.getCause()).hasRootCauseInstanceOf(MessageSpilledException.class);
+            verify(remotingClient).sendBatchSync(anyList(), eq(MessageType.SEND_MESSAGE_FAIL));
+        } finally {
+            producer.destroy();
+        }
+    }
+    
+    @Test
+    void spillWithoutServerFailsWithQueueFull() {
+        GlobalConfigCache.PRODUCER_CONFIG.queueFullPolicy = QueueFullPolicy.SPILL;
+        RedisMQClientUtil redisMQClientUtil = redisMQClientUtil();
+        when(redisMQClientUtil.executeLua(eq(ScriptRegistry.PUT_MESSAGE), anyList(), any())).thenReturn(-11L);
+        RedisMQProducer producer = new RedisMQProducer(redisMQClientUtil, null);
+        producer.init();
+        try {
+            CompletableFuture<SendResult> future = producer.sendAsync("body", QUEUE, null, null);
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertThat(e.getCause()).hasRootCauseExactlyInstanceOf(QueueFullException.class);
+        } finally {
+            producer.destroy();
+        }
+    }
+    
+    @Test
+    void sendAsyncReturnsBeforeWriteAndCompletesWithResult() throws Exception {
+        RedisMQClientUtil redisMQClientUtil = redisMQClientUtil();
+        CountDownLatch written = new CountDownLatch(1);
+        when(redisMQClientUtil.executeLua(eq(ScriptRegistry.PUT_MESSAGE), anyList(), any())).thenAnswer(invocation -> {
+            written.await(5, TimeUnit.SECONDS);
+            return 1L;
+        });
+        RedisMQProducer producer = new RedisMQProducer(redisMQClientUtil, mock(RemotingClient.class));
+        producer.init();
+        try {
+            CompletableFuture<SendResult> future = producer.sendAsync("body", QUEUE, null, null);
+            //调用线程不等待写入redis
+            assertThat(future).isNotDone();
+            written.countDown();
+            SendResult result = future.get(5, TimeUnit.SECONDS);
+            assertThat(result.getMsgId()).isNotBlank();
+            assertThat(result.getQueue()).isEqualTo(QUEUE);
+            assertThat(result.getVirtualQueueName()).isEqualTo(QUEUE + "$0");
+            assertThat(result.getOffset()).isEqualTo(10L);
+        } finally {
+            written.countDown();
+            producer.destroy();
+        }
+    }
+    
+    @Test
+    void sendAsyncFailsWhenPutFails() {
+        GlobalConfigCache.PRODUCER_CONFIG.producerRetryCount = 1;
+        RedisMQClientUtil redisMQClientUtil = redisMQClientUtil();
+        when(redisMQClientUtil.executeLua(eq(ScriptRegistry.PUT_MESSAGE), anyList(), any())).thenReturn(null);
+        RedisMQProducer producer = new RedisMQProducer(redisMQClientUtil, mock(RemotingClient.class));
+        producer.init();
+        try {
+            CompletableFuture<SendResult> future = producer.sendAsync("body", QUEUE, null, null);
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertThat(e.getCause()).isInstanceOf(RedisMqException.class);
+        } finally {
+            producer.destroy();
+        }
+    }
+    
+    @Test
+    void sendBatchSplitsByMaxBatchSize() {
+        GlobalConfigCache.PRODUCER_CONFIG.producerMaxBatchSize = 2;
+        RedisMQClientUtil redisMQClientUtil = redisMQClientUtil();
+        RedisMQProducer producer = new RedisMQProducer(redisMQClientUtil, mock(RemotingClient.class));
+        producer.init();
+        try {
+            List<Message> messages = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                messages.add(batchMessage("body" + i, QUEUE + "$0"));
+            }
+            BatchSendResult result = producer.sendBatch(messages);
+            
+            assertThat(result.isAllSuccess()).isTrue();
+            assertThat(result.getSendResults()).hasSize(5);
+            //整批一次预留id 每条消息的id都不一样
+            assertThat(result.getSendResults()).extracting(SendResult::getMsgId).doesNotHaveDuplicates();
+            verify(redisMQClientUtil, times(3)).executeLua(eq(ScriptRegistry.PUT_MESSAGE), anyList(), any());
+        } finally {
+            producer.destroy();
+        }
+    }
+    
+    @Test
+    void sendBatchFailureOnlyAffectsItsVirtualQueue() throws Exception {
+        GlobalConfigCache.PRODUCER_CONFIG.producerRetryCount = 1;
+        Queue queue = new Queue(QUEUE);
+        queue.setVirtual(2);
+        QueueManager.registerRedisQueue(queue);
+        RedisMQClientUtil redisMQClientUtil = redisMQClientUtil();
+        when(redisMQClientUtil.executeLua(eq(ScriptRegistry.PUT_MESSAGE),
+                argThat(keys -> keys != null && keys.stream().anyMatch(key -> key.toString().contains("$1"))),
+                any())).thenReturn(null);
+        RedisMQProducer producer = new RedisMQProducer(redisMQClientUtil, mock(RemotingClient.class));
+        producer.init();
+        try {
+            Message ok = batchMessage("ok", QUEUE + "$0");
+            Message failed = batchMessage("failed", QUEUE + "$1");
+            List<Message> messages = new ArrayList<>();
+            messages.add(ok);
+            messages.add(failed);
+            
+            BatchSendResult result = producer.sendBatchAsync(messages).get(5, TimeUnit.SECONDS);
+            
+            assertThat(result.isAllSuccess()).isFalse();
+            assertThat(result.getSendResults()).extracting(SendResult::getMsgId).containsExactly(ok.getId());
+            assertThat(result.getFailedMessages()).containsExactly(failed);
+        } finally {
+            producer.destroy();
+        }
+    }
+    
+    private static Message batchMessage(String body, String virtualQueueName) {
+        Message message = new Message();
+        message.setQueue(QUEUE);
+        message.setBody(body);
+        message.setVirtualQueueName(virtualQueueName);
+        return message;
+    }
+}
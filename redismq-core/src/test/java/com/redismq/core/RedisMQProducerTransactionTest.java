@@ -0,0 +1,164 @@
+package com.redismq.core;
+
+import com.redismq.common.config.GlobalConfigCache;
+import com.redismq.common.pojo.SendResult;
+import com.redismq.rpc.client.RemotingClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author hzh
+ * @date 2024/12/15 事务提交后发送
+ */
+class RedisMQProducerTransactionTest extends ProducerTestSupport {
+    
+    private static final String QUEUE = "producer-tx-test";
+    
+    private RedisMQProducer producer;
+    
+    private TransactionTemplate outer;
+    
+    private TransactionTemplate requiresNew;
+    
+    RedisMQProducerTransactionTest() {
+        super(QUEUE);
+    }
+    
+    @BeforeEach
+    void setUp() {
+        GlobalConfigCache.GLOBAL_CONFIG.sendAfterCommit = true;
+        producer = new RedisMQProducer(redisMQClientUtil(), mock(RemotingClient.class));
+        producer.init();
+        
+        TestTransactionManager transactionManager = new TestTransactionManager();
+        outer = new TransactionTemplate(transactionManager);
+        requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        producer.destroy();
+    }
+    
+    @Test
+    void sendWaitsForCommit() throws Exception {
+        AtomicReference<CompletableFuture<SendResult>> future = new AtomicReference<>();
+        outer.executeWithoutResult(status -> {
+            future.set(producer.sendAsync("body", QUEUE, null, null));
+            assertThat(future.get()).isNotDone();
+        });
+        assertThat(future.get().get(5, TimeUnit.SECONDS).getMsgId()).isNotNull();
+    }
+    
+    @Test
+    void rollbackFailsBufferedSend() {
+        AtomicReference<CompletableFuture<SendResult>> future = new AtomicReference<>();
+        outer.executeWithoutResult(status -> {
+            future.set(producer.sendAsync("body", QUEUE, null, null));
+            status.setRollbackOnly();
+        });
+        assertThrows(ExecutionException.class, () -> future.get().get(5, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    void requiresNewFlushesWithInnerTransaction() throws Exception {
+        AtomicReference<CompletableFuture<SendResult>> outerFuture = new AtomicReference<>();
+        AtomicReference<CompletableFuture<SendResult>> innerFuture = new AtomicReference<>();
+        outer.executeWithoutResult(status -> {
+            outerFuture.set(producer.sendAsync("outer", QUEUE, null, null));
+            requiresNew.executeWithoutResult(
+                    innerStatus -> innerFuture.set(producer.sendAsync("inner", QUEUE, null, null)));
+            //内部事务提交后就发送 不等外部事务
+            try {
+                assertThat(innerFuture.get().get(5, TimeUnit.SECONDS)).isNotNull();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            assertThat(outerFuture.get()).isNotDone();
+            status.setRollbackOnly();
+        });
+        //外部事务回滚只影响外部的消息
+        assertThrows(ExecutionException.class, () -> outerFuture.get().get(5, TimeUnit.SECONDS));
+        assertThat(innerFuture.get().isCompletedExceptionally()).isFalse();
+    }
+    
+    @Test
+    void requiresNewRollbackKeepsOuterMessages() throws Exception {
+        AtomicReference<CompletableFuture<SendResult>> outerFuture = new AtomicReference<>();
+        AtomicReference<CompletableFuture<SendResult>> innerFuture = new AtomicReference<>();
+        outer.executeWithoutResult(status -> {
+            outerFuture.set(producer.sendAsync("outer", QUEUE, null, null));
+            requiresNew.executeWithoutResult(innerStatus -> {
+                innerFuture.set(producer.sendAsync("inner", QUEUE, null, null));
+                innerStatus.setRollbackOnly();
+            });
+            //恢复后继续使用外部事务的缓冲
+            outerFuture.set(outerFuture.get().thenCombine(producer.sendAsync("outer2", QUEUE, null, null),
+                    (a, b) -> b));
+        });
+        assertThrows(ExecutionException.class, () -> innerFuture.get().get(5, TimeUnit.SECONDS));
+        assertThat(outerFuture.get().get(5, TimeUnit.SECONDS)).isNotNull();
+    }
+    
+    /**
+     * 只维护事务状态的事务管理器 支持挂起和恢复
+     */
+    private static class TestTransactionManager extends AbstractPlatformTransactionManager {
+        
+        private final ThreadLocal<Boolean> active = ThreadLocal.withInitial(() -> false);
+        
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+        
+        @Override
+        protected boolean isExistingTransaction(Object transaction) {
+            return active.get();
+        }
+        
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            active.set(true);
+        }
+        
+        @Override
+        protected Object doSuspend(Object transaction) {
+            active.set(false);
+            return Boolean.TRUE;
+        }
+        
+        @Override
+        protected void doResume(Object transaction, Object suspendedResources) {
+            active.set(true);
+        }
+        
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+        
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+        
+        @Override
+        protected void doCleanupAfterCompletion(Object transaction) {
+            active.set(false);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.redismq.core;
+
+import com.redismq.common.connection.RedisClient;
+import com.redismq.common.connection.RedisMQClientUtil;
+import com.redismq.common.constant.RedisMQConstant;
+import com.redismq.common.pojo.PushMessage;
+import com.redismq.queue.QueueManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author hzh
+ * @date 2024/12/15 按虚拟队列订阅拉取通知
+ */
+class RedisMqClientTest {
+    
+    private static final String QUEUE = "client-test";
+    
+    private RedisMessageListenerContainer listenerContainer;
+    
+    private RedisMqClient redisMqClient;
+    
+    @BeforeEach
+    void setUp() {
+        RedisMQConstant.NAMESPACE = "test";
+        listenerContainer = mock(RedisMessageListenerContainer.class);
+        redisMqClient = new RedisMqClient(mock(RedisMQClientUtil.class), new RedisListenerContainerManager(), null,
+                "app", null);
+        redisMqClient.setRedisMessageListenerContainer(listenerContainer);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        QueueManager.getCurrentVirtualQueues().remove(QUEUE);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static List<String> channels(ArgumentCaptor<Collection> captor) {
+        return ((Collection<Topic>) captor.getValue()).stream().map(Topic::getTopic).collect(Collectors.toList());
+    }
+    
+    @Test
+    void subscribesOnlyAssignedVirtualQueues() {
+        QueueManager.putCurrentVirtualQueues(QUEUE, Arrays.asList(QUEUE + "$0", QUEUE + "$1"));
+        redisMqClient.subscribe();
+        ArgumentCaptor<Collection> added = ArgumentCaptor.forClass(Collection.class);
+        verify(listenerContainer).addMessageListener(any(), added.capture());
+        assertThat(channels(added)).containsExactlyInAnyOrder(RedisMQConstant.getPushTopic(QUEUE + "$0"),
+                RedisMQConstant.getPushTopic(QUEUE + "$1"));
+        verify(listenerContainer, never()).removeMessageListener(any(), anyCollection());
+    }
+    
+    @Test
+    void rebalanceUnsubscribesLostVirtualQueues() {
+        QueueManager.putCurrentVirtualQueues(QUEUE, Arrays.asList(QUEUE + "$0", QUEUE + "$1"));
+        redisMqClient.subscribe();
+        QueueManager.putCurrentVirtualQueues(QUEUE, Collections.singletonList(QUEUE + "$1"));
+        redisMqClient.subscribe();
+        
+        ArgumentCaptor<Collection> removed = ArgumentCaptor.forClass(Collection.class);
+        verify(listenerContainer).removeMessageListener(any(), removed.capture());
+        assertThat(channels(removed)).containsExactly(RedisMQConstant.getPushTopic(QUEUE + "$0"));
+    }
+    
+    @Test
+    void publishUsesVirtualQueueChannel() {
+        RedisClient redisClient = mock(RedisClient.class);
+        PushMessage pushMessage = new PushMessage();
+        pushMessage.setQueue(RedisMQConstant.getVQueueNameByVQueue(QUEUE + "$0"));
+        new RedisMQClientUtil(redisClient).publishPullMessage(pushMessage);
+        verify(redisClient).convertAndSend(eq(RedisMQConstant.getPushTopic(QUEUE + "$0")), eq(pushMessage));
+    }
+}
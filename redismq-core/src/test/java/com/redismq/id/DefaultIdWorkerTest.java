@@ -0,0 +1,115 @@
+package com.redismq.id;
+
+import com.redismq.common.config.GlobalConfig;
+import com.redismq.common.config.GlobalConfigCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author hzh
+ * @date 2024/12/15 雪花id
+ */
+class DefaultIdWorkerTest {
+    
+    @BeforeEach
+    void setUp() {
+        GlobalConfigCache.GLOBAL_CONFIG = new GlobalConfig();
+    }
+    
+    @Test
+    void reservedRangeIsIncreasingAndBorrowsFutureMillis() {
+        DefaultIdWorker worker = new DefaultIdWorker(1);
+        //超过一毫秒的序列 借用后面的毫秒
+        long[] ids = worker.nextIds(5000);
+        
+        for (int i = 1; i < ids.length; i++) {
+            assertThat(ids[i]).isGreaterThan(ids[i - 1]);
+        }
+        assertThat(worker.nextId()).isGreaterThan(ids[ids.length - 1]);
+    }
+    
+    @Test
+    void concurrentIdsAreUnique() throws Exception {
+        DefaultIdWorker worker = new DefaultIdWorker(1);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < 8; t++) {
+                boolean batch = t % 2 == 0;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 500; i++) {
+                        if (batch) {
+                            for (long id : worker.nextIds(3)) {
+                                ids.add(id);
+                            }
+                        } else {
+                            ids.add(worker.nextId());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(ids).hasSize(4 * 500 * 3 + 4 * 500);
+    }
+    
+    @Test
+    void workerIdIsEncoded() {
+        DefaultIdWorker worker1 = new DefaultIdWorker(1);
+        DefaultIdWorker worker2 = new DefaultIdWorker(2);
+        long maxWorkerId = ~(-1L << GlobalConfigCache.GLOBAL_CONFIG.maxWorkerIdBits);
+        
+        assertThat((worker1.nextId() >>> 10) & maxWorkerId).isEqualTo(1L);
+        assertThat((worker2.nextId() >>> 10) & maxWorkerId).isEqualTo(2L);
+        assertThatThrownBy(() -> new DefaultIdWorker(maxWorkerId + 1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new DefaultIdWorker(-1)).isInstanceOf(IllegalArgumentException.class);
+    }
+    
+    @Test
+    void base62KeepsNumericOrder() {
+        long[] ids = new DefaultIdWorker(1).nextIds(100);
+        Set<String> strs = new HashSet<>();
+        String last = "";
+        for (long id : ids) {
+            String str = MsgIDGenerator.toBase62(id);
+            assertThat(str).hasSize(11);
+            assertThat(str).isGreaterThan(last);
+            strs.add(str);
+            last = str;
+        }
+        assertThat(strs).hasSize(100);
+        assertThat(MsgIDGenerator.toBase62(Long.MAX_VALUE).compareTo(MsgIDGenerator.toBase62(0L))).isPositive();
+    }
+    
+    @Test
+    void generateIdStrsUsesConfiguredFormat() {
+        GlobalConfigCache.GLOBAL_CONFIG.idFormat = "base62";
+        
+        String[] ids = MsgIDGenerator.generateIdStrs(3);
+        
+        assertThat(ids).hasSize(3).doesNotHaveDuplicates().allMatch(id -> id.length() == 11);
+    }
+}
@@ -1,9 +1,15 @@
 package com.redismq.rpc.cache;
 
+import com.redismq.common.pojo.Message;
 import com.redismq.common.pojo.MessageFuture;
+import com.redismq.common.pojo.RemoteMessage;
 import com.redismq.common.pojo.RemoteMessageFuture;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.concurrent.DefaultThreadFactory;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * rpc全局缓存
@@ -17,4 +23,38 @@ public class RpcGlobalCache {
     
     public static final ConcurrentHashMap<String, RemoteMessageFuture> REMOTE_FUTURES = new ConcurrentHashMap<>();
     
+    /**
+     * future超时时间轮 完成时取消,不再定时扫描整个map
+     */
+    private static final HashedWheelTimer TIMEOUT_TIMER = new HashedWheelTimer(
+            new DefaultThreadFactory("REDISMQ-FUTURE-TIMEOUT", true), 10, TimeUnit.MILLISECONDS, 512);
+    
+    /**
+     * 登记发送future 超时后移除并返回超时异常
+     */
+    public static void putFuture(String id, MessageFuture future) {
+        FUTURES.put(id, future);
+        future.setTimeoutHandle(TIMEOUT_TIMER.newTimeout(timeout -> {
+            if (FUTURES.remove(id, future)) {
+                Message message = future.getMessage();
+                future.setResultMessage(new TimeoutException(
+                        String.format("msgId: %s ,queue: %s ,request timeout", id, message.getQueue())));
+            }
+        }, future.getTimeout(), TimeUnit.MILLISECONDS));
+    }
+    
+    /**
+     * 登记rpc请求future 超时后移除并返回超时异常
+     */
+    public static void putRemoteFuture(String id, RemoteMessageFuture future) {
+        REMOTE_FUTURES.put(id, future);
+        future.setTimeoutHandle(TIMEOUT_TIMER.newTimeout(timeout -> {
+            if (REMOTE_FUTURES.remove(id, future)) {
+                RemoteMessage rpcMessage = future.getRequestMessage();
+                future.setResultMessage(new TimeoutException(
+                        String.format("msgId: %s ,msgType: %s ,request timeout", id, rpcMessage.getMessageType())));
+            }
+        }, future.getTimeout(), TimeUnit.MILLISECONDS));
+    }
+    
 }
@@ -25,20 +25,18 @@ import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 import static com.redismq.rpc.cache.RpcGlobalCache.REMOTE_FUTURES;
+import static com.redismq.rpc.cache.RpcGlobalCache.putRemoteFuture;
 
 @Slf4j
 public class AbstractNettyRemoting implements RemotingClient {
@@ -57,8 +55,6 @@ public class AbstractNettyRemoting implements RemotingClient {
     
     protected final ServerSelectBalance selectBalance = new RandomBalance();
     
-    private final ScheduledExecutorService timerExecutor = new ScheduledThreadPoolExecutor(1);
-    
     private ExecutorService mergeSendExecutorService;
     
     
@@ -74,25 +70,10 @@ public class AbstractNettyRemoting implements RemotingClient {
         mergeSendExecutorService = new ThreadPoolExecutor(1, 1, 60, TimeUnit.MILLISECONDS,
                 new LinkedBlockingQueue<>(1000));
         mergeSendExecutorService.submit(new MergedSendRunnable());
-        
-        // 清理超时任务
-        timerExecutor.scheduleAtFixedRate(() -> {
-            for (Map.Entry<String, RemoteMessageFuture> entry : REMOTE_FUTURES.entrySet()) {
-                RemoteMessageFuture future = entry.getValue();
-                if (future.isTimeout()) {
-                    REMOTE_FUTURES.remove(entry.getKey());
-                    RemoteMessage rpcMessage = future.getRequestMessage();
-                    future.setResultMessage(new TimeoutException(
-                            String.format("msgId: %s ,msgType: %s ,msg: %s ,request timeout", rpcMessage.getId(),
-                                    rpcMessage.getBody().toString())));
-                }
-            }
-        }, 5000, 5000, TimeUnit.MILLISECONDS);
     }
     
     @PreDestroy
     public void destroy() {
-        timerExecutor.shutdown();
         mergeSendExecutorService.shutdown();
     }
     
@@ -119,7 +100,7 @@ public class AbstractNettyRemoting implements RemotingClient {
         RemoteMessageFuture messageFuture = new RemoteMessageFuture();
         messageFuture.setRequestMessage(remoteMessage);
         messageFuture.setTimeout(timeoutMillis);
-        REMOTE_FUTURES.put(remoteMessage.getId(), messageFuture);
+        putRemoteFuture(remoteMessage.getId(), messageFuture);
         
         // put message into basketMap
         BlockingQueue<RemoteMessage> basket = basketMap
@@ -172,7 +153,7 @@ public class AbstractNettyRemoting implements RemotingClient {
         //        RemoteMessageFuture messageFuture = new RemoteMessageFuture();
         //        messageFuture.setRequestMessage(remoteMessage);
         //        messageFuture.setTimeout(timeoutMillis);
-        //        REMOTE_FUTURES.put(remoteMessage.getId(), messageFuture);
+        //        putRemoteFuture(remoteMessage.getId(), messageFuture);
         
         // put message into basketMap
         BlockingQueue<RemoteMessage> basket = basketMap
@@ -258,7 +239,7 @@ public class AbstractNettyRemoting implements RemotingClient {
             future.setTimeout(timeoutMillis);
             remoteMessageFutures.add(future);
             
-            REMOTE_FUTURES.put(message.getId(), future);
+            putRemoteFuture(message.getId(), future);
             if (!basket.offer(message)) {
                 log.error("put message into basketMap offer failed, serverAddress:{},remoteMessage:{}", serverAddress,
                         message);
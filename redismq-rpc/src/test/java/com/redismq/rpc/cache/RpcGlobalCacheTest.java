@@ -0,0 +1,83 @@
+package com.redismq.rpc.cache;
+
+import com.redismq.common.pojo.Message;
+import com.redismq.common.pojo.MessageFuture;
+import com.redismq.common.pojo.RemoteMessage;
+import com.redismq.common.pojo.RemoteMessageFuture;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author hzh
+ * @date 2024/12/15 future超时时间轮
+ */
+class RpcGlobalCacheTest {
+    
+    @Test
+    void expiredFutureIsRemovedAndTimesOut() {
+        MessageFuture future = messageFuture(50L);
+        long start = System.currentTimeMillis();
+        
+        RpcGlobalCache.putFuture("expire-1", future);
+        
+        assertThatThrownBy(() -> future.get(2, TimeUnit.SECONDS)).isInstanceOf(TimeoutException.class)
+                .hasMessageContaining("expire-1");
+        //按时间轮的刻度超时 不再等待定时扫描
+        assertThat(System.currentTimeMillis() - start).isLessThan(1000L);
+        assertThat(RpcGlobalCache.FUTURES).doesNotContainKey("expire-1");
+    }
+    
+    @Test
+    void completedFutureCancelsTimeout() throws Exception {
+        MessageFuture future = messageFuture(50L);
+        RpcGlobalCache.putFuture("complete-1", future);
+        
+        RpcGlobalCache.FUTURES.remove("complete-1");
+        future.setResultMessage(true);
+        Thread.sleep(150L);
+        
+        assertThat(future.get(1, TimeUnit.SECONDS)).isEqualTo(true);
+    }
+    
+    @Test
+    void resultBeforeRegisterCancelsTimeout() throws Exception {
+        MessageFuture future = messageFuture(50L);
+        future.setResultMessage(true);
+        
+        RpcGlobalCache.putFuture("complete-2", future);
+        RpcGlobalCache.FUTURES.remove("complete-2");
+        Thread.sleep(150L);
+        
+        assertThat(future.get(1, TimeUnit.SECONDS)).isEqualTo(true);
+    }
+    
+    @Test
+    void expiredRemoteFutureTimesOut() {
+        RemoteMessage remoteMessage = new RemoteMessage();
+        remoteMessage.setId("remote-1");
+        remoteMessage.setMessageType(1);
+        RemoteMessageFuture future = new RemoteMessageFuture();
+        future.setRequestMessage(remoteMessage);
+        future.setTimeout(50L);
+        
+        RpcGlobalCache.putRemoteFuture("remote-1", future);
+        
+        assertThatThrownBy(() -> future.get(2, TimeUnit.SECONDS)).isInstanceOf(TimeoutException.class)
+                .hasMessageContaining("remote-1");
+        assertThat(RpcGlobalCache.REMOTE_FUTURES).doesNotContainKey("remote-1");
+    }
+    
+    private static MessageFuture messageFuture(long timeout) {
+        Message message = new Message();
+        message.setQueue("timer");
+        MessageFuture future = new MessageFuture();
+        future.setMessage(message);
+        future.setTimeout(timeout);
+        return future;
+    }
+}
@@ -2,6 +2,7 @@ package com.redismq.server.controller;
 
 import com.redismq.common.connection.RedisMQClientUtil;
 import com.redismq.common.pojo.Group;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -10,13 +11,19 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.annotation.PreDestroy;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import static com.redismq.common.constant.GlobalConstant.CLIENT_RABALANCE_TIME;
+
 /**
  * 消费者组管理
  */
+@Slf4j
 @RestController
 @RequestMapping("/consumer/group")
 public class ConsumerGroupController {
@@ -24,12 +31,17 @@ public class ConsumerGroupController {
     @Autowired
     private RedisMQClientUtil redisMQClientUtil;
     
+    /**
+     * 删除分组后延迟再清理一次
+     */
+    private final ScheduledThreadPoolExecutor deleteGroupThread = new ScheduledThreadPoolExecutor(1);
+    
     /**
      * 消费者组列表
      */
     @GetMapping("list")
     public ResponseEntity<List<Group>> list() {
-        Set<String> groups = redisMQClientUtil.getGroups();
+        Set<String> groups = redisMQClientUtil.refreshGroups();
         List<Group> groupList = groups.stream().map(a -> {
             Group group = new Group();
             group.setGroupId(a);
@@ -44,8 +56,25 @@ public class ConsumerGroupController {
     @DeleteMapping("delete")
     public ResponseEntity  delete(String groupId) {
         redisMQClientUtil.deleteGroup(groupId);
+        //客户端最晚在下一次重平衡任务刷新分组缓存 之前按旧缓存写入的消息再清理一次
+        deleteGroupThread.schedule(() -> deleteGroupMessage(groupId), CLIENT_RABALANCE_TIME * 2L, TimeUnit.SECONDS);
         return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
     
- 
+    private void deleteGroupMessage(String groupId) {
+        try {
+            //期间同名的分组重新注册 消息属于新的消费者 不能删除
+            if (redisMQClientUtil.refreshGroups().contains(groupId)) {
+                return;
+            }
+            redisMQClientUtil.deleteGroupMessage(groupId);
+        } catch (Exception e) {
+            log.error("redismq deleteGroupMessage error groupId:{}", groupId, e);
+        }
+    }
+    
+    @PreDestroy
+    public void destroy() {
+        deleteGroupThread.shutdownNow();
+    }
 }
@@ -58,13 +58,17 @@ public class QueueController {
     //根据队列名称查询虚拟队列
     @GetMapping("vQueueList")
     public ResponseEntity<List<VQueue>> vQueueList(String queueName, Integer virtual) {
-        List<VQueue> virtualQueues = new ArrayList<>();
+        List<String> vQueueNames = new ArrayList<>();
         for (int i = 0; i < virtual; i++) {
+            vQueueNames.add(queueName + V_QUEUE_SPLITE + i);
+        }
+        //一次pipeline获取所有虚拟队列大小
+        List<Long> sizes = redisMQClientUtil.queueSizes(vQueueNames);
+        List<VQueue> virtualQueues = new ArrayList<>();
+        for (int i = 0; i < vQueueNames.size(); i++) {
             VQueue vQueue = new VQueue();
-            String virtualQueue = queueName + V_QUEUE_SPLITE + i;
-            Long size = redisMQClientUtil.queueSize(virtualQueue);
-            vQueue.setQueueName(virtualQueue);
-            vQueue.setSize(size == null ? 0 : size);
+            vQueue.setQueueName(vQueueNames.get(i));
+            vQueue.setSize(sizes.get(i));
             virtualQueues.add(vQueue);
         }
         return ResponseEntity.ok(virtualQueues);
@@ -5,7 +5,7 @@ import com.redismq.common.constant.MessageType;
 import com.redismq.common.pojo.Message;
 import com.redismq.common.pojo.RemoteMessage;
 import com.redismq.common.pojo.RemoteResponse;
-import com.redismq.common.serializer.RedisMQStringMapper;
+import com.redismq.common.serializer.MessageCodecs;
 
 import com.redismq.rpc.proccess.AbstractMessageProcessor;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -31,7 +31,7 @@ public class MQMessageProcessor extends AbstractMessageProcessor {
         
         List<Message> list = new ArrayList<>();
         for (RemoteMessage message : remoteMessages) {
-            Message msg = RedisMQStringMapper.toBean(message.getBody(), Message.class);
+            Message msg = MessageCodecs.decode(message.getBody());
             list.add(msg);
         }
 